@@ -4,15 +4,6 @@ import org.camunda.bpm.model.bpmn.Bpmn;
 import org.camunda.bpm.model.bpmn.BpmnModelException;
 import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.builder.ProcessBuilder;
-import org.camunda.bpm.model.bpmn.impl.instance.*;
-import org.camunda.bpm.model.bpmn.impl.instance.ExtensionImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.ProcessImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.bpmndi.*;
-import org.camunda.bpm.model.bpmn.impl.instance.camunda.*;
-import org.camunda.bpm.model.bpmn.impl.instance.dc.BoundsImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.dc.FontImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.dc.PointImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.di.*;
 import org.camunda.bpm.model.bpmn.instance.*;
 import org.camunda.bpm.model.bpmn.instance.Process;
 import org.camunda.bpm.model.xml.Model;
@@ -25,19 +16,39 @@ import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.*;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.constant.BpmntExtensionAttributes;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnElementSearcher;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnHelper;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnTypeRegistry;
+import org.prisma.processhub.bpmn.manipulation.util.ByteBufferInputStream;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 
 public class Bpmnt {
     public static Bpmnt INSTANCE = new Bpmnt();
-    private BpmntParser bpmntParser = new BpmntParser();
-    private final ModelBuilder bpmntModelBuilder = ModelBuilder.createInstance("Tailorable BPMN Model");
-    private Model BpmntModel;
+    // Smaller files are read faster through a buffered stream than mapped, see doReadModelFromPath
+    private static final long MAPPED_READ_THRESHOLD = 1 << 20;
+    // One parser per thread, see BpmnTypeRegistry
+    private final ThreadLocal<BpmntParser> bpmntParser = new ThreadLocal<BpmntParser>() {
+        @Override
+        protected BpmntParser initialValue() {
+            return new BpmntParser();
+        }
+    };
+    private final ModelBuilder bpmntModelBuilder = BpmnTypeRegistry.getModelBuilder();
+    private Model BpmntModel = BpmnTypeRegistry.getModel();
 
 //    public static BpmnModelInstance executeBpmnt (BpmnModelInstance modelInstance, List<BpmntOperation> bpmntList) {
 //
@@ -83,20 +94,17 @@ public class Bpmnt {
 
         // Add extensions
         for (BpmntOperation op: bpmntList) {
-            op.generateExtensionElement(process);
+            BpmntOperationCodecs.encode(op, process);
         }
 
         return modelInstance;
     }
 
     public static List<BpmntOperation> convertBpmntFromModelToList (BpmnModelInstance bpmntModel) {
-        Process process = BpmnElementSearcher.findFirstProcess(bpmntModel);
-
-        //Collection<ModelElementInstance> extentionElements = process.getExtensionElements().getElements();
         Collection<ExtensionElements> extensionElementsCollection = bpmntModel.getModelElementsByType(ExtensionElements.class);
-        //Collection<ModelElementInstance> extentionElements = bpmntModel.getModelElementsByType(ExtensionElements.class);
         List<BpmntOperation> operations = new ArrayList<BpmntOperation>();
 
+        // Operations are looked up by name in BpmntOperationCodecs
         for (ExtensionElements extensionElements: extensionElementsCollection) {
             ModelElementInstance parent = extensionElements.getParentElement();
 
@@ -104,202 +112,68 @@ public class Bpmnt {
                 Collection<ModelElementInstance> extensions = ((Process) parent).getExtensionElements().getElements();
 
                 for (ModelElementInstance extension: extensions) {
-                    String operationName = extension.getElementType().getTypeName();
-
-                    if (operationName.equals(Extend.class.getSimpleName())) {
-                        Extend extend = new Extend(extension.getAttributeValue(BpmntExtensionAttributes.BASE_PROCESS_ID));
-                        extend.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(extend);
-                    }
-                    else if (operationName.equals(Suppress.class.getSimpleName())) {
-                        Suppress suppress = new Suppress(extension.getAttributeValue(BpmntExtensionAttributes.SUPPRESSED_ELEMENT_ID));
-                        suppress.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(suppress);
-                    }
-                    else if (operationName.equals(Modify.class.getSimpleName())) {
-                        Modify modify = new Modify(
-                                extension.getAttributeValue(BpmntExtensionAttributes.MODIFIED_ELEMENT_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.PROPERTY),
-                                extension.getAttributeValue(BpmntExtensionAttributes.VALUE)
-                        );
-                        modify.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(modify);
-                    }
-                    else if (operationName.equals(Rename.class.getSimpleName())) {
-                        Rename rename = new Rename(
-                                extension.getAttributeValue(BpmntExtensionAttributes.ELEMENT_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.NEW_NAME)
-                        );
-                        rename.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(rename);
-                    }
-                    else if (operationName.equals(DeleteNode.class.getSimpleName())) {
-                        DeleteNode deleteNode = new DeleteNode(
-                                extension.getAttributeValue(BpmntExtensionAttributes.NODE_ID)
-                        );
-                        deleteNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(deleteNode);
-                    }
-                    else if (operationName.equals(DeleteFragment.class.getSimpleName())) {
-                        DeleteFragment deleteFragment = new DeleteFragment(
-                                extension.getAttributeValue(BpmntExtensionAttributes.STARTING_NODE_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.ENDING_NODE_ID)
-                        );
-                        deleteFragment.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(deleteFragment);
-                    }
-                    else if (operationName.equals(MoveNode.class.getSimpleName())) {
-                        MoveNode moveNode = new MoveNode(
-                                extension.getAttributeValue(BpmntExtensionAttributes.NODE_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.NEW_POSITION_AFTER_OF_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.NEW_POSITION_BEFORE_OF_ID)
-                        );
-                        moveNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(moveNode);
-                    }
-                    else if (operationName.equals(MoveFragment.class.getSimpleName())) {
-                        MoveFragment moveFragment = new MoveFragment(
-                                extension.getAttributeValue(BpmntExtensionAttributes.STARTING_NODE_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.ENDING_NODE_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.NEW_POSITION_AFTER_OF_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.NEW_POSITION_BEFORE_OF_ID)
-                        );
-                        moveFragment.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(moveFragment);
-                    }
-                    else if (operationName.equals(Parallelize.class.getSimpleName())) {
-                        Parallelize parallelize = new Parallelize(
-                                extension.getAttributeValue(BpmntExtensionAttributes.STARTING_NODE_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.ENDING_NODE_ID)
-                        );
-                        parallelize.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(parallelize);
+                    BpmntOperation operation = BpmntOperationCodecs.decodeProcessExtension(
+                            extension.getElementType().getTypeName(), extensionAttributes(extension));
+                    if (operation != null) {
+                        operations.add(operation);
                     }
                 }
             }
             else if (parent instanceof SubProcess) {
                 if (extensionElements.getElementsQuery().count() == 1) {
                     ModelElementInstance extension = extensionElements.getElementsQuery().singleResult();
+                    String operationName = extension.getElementType().getTypeName();
 
-                    if (extension.getElementType().getTypeName().equals(Contribute.class.getSimpleName())) {
-                        Contribute contribute = new Contribute(((SubProcess) parent).getFlowElements().iterator().next());
-                        contribute.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(contribute);
-                    }
-                    else if (extension.getElementType().getTypeName().equals(ContributeToParent.class.getSimpleName())) {
-                        ContributeToParent contributeToParent = new ContributeToParent(
-                                extension.getAttributeValue(BpmntExtensionAttributes.PARENT_ELEMENT_ID),
-                                ((SubProcess) parent).getFlowElements().iterator().next()
-                        );
-                        contributeToParent.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(contributeToParent);
-                    }
-                    else if (extension.getElementType().getTypeName().equals(InsertNode.class.getSimpleName())) {
-                        InsertNode insertNode = new InsertNode(
-                                extension.getAttributeValue(BpmntExtensionAttributes.AFTER_OF_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.BEFORE_OF_ID),
-                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next()
-                        );
-                        insertNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(insertNode);
+                    // Operations that are only encoded, such as InsertFragment, are skipped
+                    BpmntOperation operation = BpmntOperationCodecs.decodeContainerExtension(operationName,
+                            extensionAttributes(extension), ((SubProcess) parent).getFlowElements().iterator().next());
+                    if (operation != null) {
+                        operations.add(operation);
                     }
-//                    else if (extension.getElementType().getTypeName().equals(InsertFragment.class.getSimpleName())) {
-//                        InsertFragment insertFragment = new InsertFragment(
-//                                extension.getAttributeValue(BpmntExtensionAttributes.AFTER_OF_ID),
-//                                extension.getAttributeValue(BpmntExtensionAttributes.BEFORE_OF_ID),
-//                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next()
-//                        );
-//                        insertNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-//                        operations.add(insertNode);
-//                    }
-                    else if (extension.getElementType().getTypeName().equals(ConditionalInsertNode.class.getSimpleName())) {
-                        ConditionalInsertNode conditionalInsertNode = new ConditionalInsertNode(
-                                extension.getAttributeValue(BpmntExtensionAttributes.AFTER_OF_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.BEFORE_OF_ID),
-                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next(),
-                                extension.getAttributeValue(BpmntExtensionAttributes.CONDITION),
-                                Boolean.parseBoolean(extension.getAttributeValue(BpmntExtensionAttributes.IN_LOOP))
-                        );
-                        conditionalInsertNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(conditionalInsertNode);
-                    }
-//                    else if (extension.getElementType().getTypeName().equals(ConditionalInsertNode.class.getSimpleName())) {
-//                        ConditionalInsertNode conditionalInsertNode = new ConditionalInsertNode(
-//                                extension.getAttributeValue(BpmntExtensionAttributes.AFTER_OF_ID),
-//                                extension.getAttributeValue(BpmntExtensionAttributes.BEFORE_OF_ID),
-//                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next(),
-//                                extension.getAttributeValue(BpmntExtensionAttributes.CONDITION),
-//                                Boolean.parseBoolean(extension.getAttributeValue(BpmntExtensionAttributes.IN_LOOP))
-//                        );
-//                        conditionalInsertNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-//                        operations.add(conditionalInsertNode);
-//                    }
-                    else if (extension.getElementType().getTypeName().equals(ReplaceNodeWithNode.class.getSimpleName())) {
-                        ReplaceNodeWithNode replaceNodeWithNode = new ReplaceNodeWithNode(
-                                extension.getAttributeValue(BpmntExtensionAttributes.REPLACED_NODE_ID),
-                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next()
-                        );
-                        replaceNodeWithNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(replaceNodeWithNode);
-                    }
-//                    else if (extension.getElementType().getTypeName().equals(ReplaceNodeWithNode.class.getSimpleName())) {
-//                        ReplaceNodeWithNode replaceNodeWithNode = new ReplaceNodeWithNode(
-//                                extension.getAttributeValue(BpmntExtensionAttributes.REPLACED_NODE_ID),
-//                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next()
-//                        );
-//                        replaceNodeWithNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-//                        operations.add(replaceNodeWithNode);
-//                    }
-                    else if (extension.getElementType().getTypeName().equals(ReplaceFragmentWithNode.class.getSimpleName())) {
-                        ReplaceFragmentWithNode replaceFragmentWithNode = new ReplaceFragmentWithNode(
-                                extension.getAttributeValue(BpmntExtensionAttributes.STARTING_NODE_ID),
-                                extension.getAttributeValue(BpmntExtensionAttributes.ENDING_NODE_ID),
-                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next()
-                        );
-                        replaceFragmentWithNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-                        operations.add(replaceFragmentWithNode);
-                    }
-//                    else if (extension.getElementType().getTypeName().equals(ReplaceFragmentWithNode.class.getSimpleName())) {
-//                        ReplaceFragmentWithNode replaceFragmentWithNode = new ReplaceFragmentWithNode(
-//                                extension.getAttributeValue(BpmntExtensionAttributes.STARTING_NODE_ID),
-//                                extension.getAttributeValue(BpmntExtensionAttributes.ENDING_NODE_ID),
-//                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next()
-//                        );
-//                        replaceFragmentWithNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-//                        operations.add(replaceFragmentWithNode);
-//                    }
-
-                    // Split
-//                    else if (extension.getElementType().getTypeName().equals(ReplaceFragmentWithNode.class.getSimpleName())) {
-//                        ReplaceFragmentWithNode replaceFragmentWithNode = new ReplaceFragmentWithNode(
-//                                extension.getAttributeValue(BpmntExtensionAttributes.STARTING_NODE_ID),
-//                                extension.getAttributeValue(BpmntExtensionAttributes.ENDING_NODE_ID),
-//                                (FlowNode) ((SubProcess) parent).getFlowElements().iterator().next()
-//                        );
-//                        replaceFragmentWithNode.setExecutionOrder(Integer.parseInt(extension.getAttributeValue(BpmntExtensionAttributes.ORDER)));
-//                        operations.add(replaceFragmentWithNode);
-//
                 }
             }
-
-
-//            else if (operationName.equals("Extend")) {
-//
-//            }
         }
 
         return operations;
     }
 
-    public static BpmntModelInstance readModelAndBpmntFromStrings(String modelXml, String bpmntXml) {
-        BpmntModelInstance model = readModelFromStream(new ByteArrayInputStream(modelXml.getBytes(StandardCharsets.UTF_8)));
-        BpmnModelInstance bpmntModel = readModelFromStream(new ByteArrayInputStream(bpmntXml.getBytes(StandardCharsets.UTF_8)));
+    // Decodes a BPMNt log straight from its XML, without parsing it as a model first, see BpmntLogReader
+    public static List<BpmntOperation> convertBpmntFromStreamToList (InputStream stream) {
+        BpmnHelper.checkNotNull(stream, "Argument stream must not be null");
+        return BpmntLogReader.read(stream);
+    }
 
-        model.setBpmntLog(convertBpmntFromModelToList(bpmntModel));
+    private static BpmntOperationCodec.ExtensionAttributes extensionAttributes(final ModelElementInstance extension) {
+        return new BpmntOperationCodec.ExtensionAttributes() {
+            @Override
+            public String get(String name) {
+                return extension.getAttributeValue(name);
+            }
+        };
+    }
+
+    // Both documents are parsed from their characters, without being encoded to bytes first
+    public static BpmntModelInstance readModelAndBpmntFromStrings(String modelXml, String bpmntXml) {
+        BpmnHelper.checkNotNull(modelXml, "Argument modelXml must not be null");
+        BpmnHelper.checkNotNull(bpmntXml, "Argument bpmntXml must not be null");
+        BpmntModelInstance model = INSTANCE.doReadModelFromReader(new StringReader(modelXml), true);
+        model.setBpmntLog(BpmntLogReader.read(new StringReader(bpmntXml)));
 
         return model;
     }
 
+    // Model and BPMNt log in the compact binary format of BpmntBinaryFormat, read back without parsing XML
+    public static void writeModelAndBpmntToBinaryStream(OutputStream stream, BpmntModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(stream, "Argument stream must not be null");
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        BpmntBinaryFormat.write(modelInstance, stream);
+    }
+
+    public static BpmntModelInstance readModelAndBpmntFromBinaryStream(InputStream stream) {
+        BpmnHelper.checkNotNull(stream, "Argument stream must not be null");
+        return BpmntBinaryFormat.read(stream);
+    }
+
     public static BpmntModelInstance readModelFromFile(File file) {
         return INSTANCE.doReadModelFromFile(file);
     }
@@ -308,6 +182,16 @@ public class Bpmnt {
         return INSTANCE.doReadModelFromInputStream(stream);
     }
 
+    // Reads a model without checking it against the BPMN schema if validate is false
+    // Meant for models written by this library; validateModel or validateModelInBackground can check them later.
+    public static BpmntModelInstance readModelFromFile(File file, boolean validate) {
+        return INSTANCE.doReadModelFromFile(file, validate);
+    }
+
+    public static BpmntModelInstance readModelFromStream(InputStream stream, boolean validate) {
+        return INSTANCE.doReadModelFromInputStream(stream, validate);
+    }
+
     public static void writeModelToFile(File file, BpmntModelInstance modelInstance) {
         INSTANCE.doWriteModelToFile(file, modelInstance);
     }
@@ -316,6 +200,40 @@ public class Bpmnt {
         INSTANCE.doWriteModelToOutputStream(stream, modelInstance);
     }
 
+    // Large files are mapped in memory and parsed straight from the mapping, see doReadModelFromPath
+    public static BpmntModelInstance readModelFromFile(Path path) {
+        return INSTANCE.doReadModelFromPath(path, true);
+    }
+
+    public static BpmntModelInstance readModelFromFile(Path path, boolean validate) {
+        return INSTANCE.doReadModelFromPath(path, validate);
+    }
+
+    public static BpmntModelInstance readModelFromChannel(ReadableByteChannel channel) {
+        BpmnHelper.checkNotNull(channel, "Argument channel must not be null");
+        return INSTANCE.doReadModelFromInputStream(Channels.newInputStream(channel));
+    }
+
+    // Reads the remaining bytes of the buffer, whose position is left untouched
+    public static BpmntModelInstance readModelFromBuffer(ByteBuffer buffer) {
+        return INSTANCE.doReadModelFromInputStream(new ByteBufferInputStream(buffer));
+    }
+
+    public static BpmntModelInstance readModelFromReader(Reader reader) {
+        BpmnHelper.checkNotNull(reader, "Argument reader must not be null");
+        return INSTANCE.doReadModelFromReader(reader, true);
+    }
+
+    public static void writeModelToFile(Path path, BpmntModelInstance modelInstance) {
+        INSTANCE.doWriteModelToPath(path, modelInstance);
+    }
+
+    // The channel is left open
+    public static void writeModelToChannel(WritableByteChannel channel, BpmntModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(channel, "Argument channel must not be null");
+        INSTANCE.doWriteModelToChannel(channel, modelInstance);
+    }
+
     public static String convertToString(BpmntModelInstance modelInstance) {
         return INSTANCE.doConvertToString(modelInstance);
     }
@@ -325,6 +243,19 @@ public class Bpmnt {
         INSTANCE.doValidateModel(modelInstance);
     }
 
+    // Validates the model on the given executor; the future fails with the validation error, if any
+    // The model must not be changed until the validation is done.
+    public static Future<?> validateModelInBackground(final BpmntModelInstance modelInstance, ExecutorService executor) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        BpmnHelper.checkNotNull(executor, "Argument executor must not be null");
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                INSTANCE.doValidateModel(modelInstance);
+            }
+        });
+    }
+
     public static BpmntModelInstance createEmptyModel() {
         return INSTANCE.doCreateEmptyModel();
     }
@@ -354,18 +285,21 @@ public class Bpmnt {
         return (ProcessBuilder)createProcess(processId).executable();
     }
 
+    // The type model is shared with the other facades, see BpmnTypeRegistry
     protected Bpmnt() {
-        this.doRegisterTypes(this.bpmntModelBuilder);
-        this.BpmntModel = this.bpmntModelBuilder.build();
     }
 
     protected BpmntModelInstance doReadModelFromFile(File file) {
+        return this.doReadModelFromFile(file, true);
+    }
+
+    protected BpmntModelInstance doReadModelFromFile(File file, boolean validate) {
         FileInputStream is = null;
 
         BpmntModelInstance e;
         try {
             is = new FileInputStream(file);
-            e = this.doReadModelFromInputStream(is);
+            e = this.doReadModelFromInputStream(is, validate);
         } catch (FileNotFoundException var7) {
             throw new BpmnModelException("Cannot read model from file " + file + ": file does not exist.");
         } finally {
@@ -376,7 +310,38 @@ public class Bpmnt {
     }
 
     protected BpmntModelInstance doReadModelFromInputStream(InputStream is) {
-        return this.bpmntParser.parseModelFromStream(is);
+        return this.bpmntParser.get().parseModelFromStream(is);
+    }
+
+    protected BpmntModelInstance doReadModelFromInputStream(InputStream is, boolean validate) {
+        return this.bpmntParser.get().parseModelFromStream(is, validate);
+    }
+
+    // Files of at least MAPPED_READ_THRESHOLD bytes that fit in a single mapping are parsed from the page cache, without
+    // being copied through the buffers of a stream first. The mapping is released once garbage collected, which may keep
+    // the file locked on Windows until then; smaller files, i.e. most models, are read through the channel and released
+    // when it's closed.
+    protected BpmntModelInstance doReadModelFromPath(Path path, boolean validate) {
+        FileChannel channel = null;
+
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            long size = channel.size();
+            InputStream is = size >= MAPPED_READ_THRESHOLD && size <= Integer.MAX_VALUE
+                    ? new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size))
+                    : new BufferedInputStream(Channels.newInputStream(channel));
+            return this.doReadModelFromInputStream(is, validate);
+        } catch (NoSuchFileException e) {
+            throw new BpmnModelException("Cannot read model from file " + path + ": file does not exist.");
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot read model from file " + path + ": " + e.getMessage(), e);
+        } finally {
+            IoUtil.closeSilently(channel);
+        }
+    }
+
+    protected BpmntModelInstance doReadModelFromReader(Reader reader, boolean validate) {
+        return this.bpmntParser.get().parseModelFromReader(reader, validate);
     }
 
     protected void doWriteModelToFile(File file, BpmntModelInstance modelInstance) {
@@ -393,6 +358,31 @@ public class Bpmnt {
 
     }
 
+    // The document is serialized straight into a buffered stream over the file, without an intermediate String
+    protected void doWriteModelToPath(Path path, BpmntModelInstance modelInstance) {
+        OutputStream os = null;
+
+        try {
+            os = new BufferedOutputStream(Files.newOutputStream(path));
+            this.doWriteModelToOutputStream(os, modelInstance);
+            os.flush();
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot write model to file " + path + ": " + e.getMessage(), e);
+        } finally {
+            IoUtil.closeSilently(os);
+        }
+    }
+
+    protected void doWriteModelToChannel(WritableByteChannel channel, BpmntModelInstance modelInstance) {
+        try {
+            OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+            this.doWriteModelToOutputStream(os, modelInstance);
+            os.flush();
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot write model to channel: " + e.getMessage(), e);
+        }
+    }
+
     protected void doWriteModelToOutputStream(OutputStream os, BpmntModelInstance modelInstance) {
         this.doValidateModel(modelInstance);
         IoUtil.writeDocumentToOutputStream(modelInstance.getDocument(), os);
@@ -404,227 +394,11 @@ public class Bpmnt {
     }
 
     protected void doValidateModel(BpmntModelInstance modelInstance) {
-        this.bpmntParser.validateModel(modelInstance.getDocument());
+        this.bpmntParser.get().validateModel(modelInstance.getDocument());
     }
 
     protected BpmntModelInstance doCreateEmptyModel() {
-        return this.bpmntParser.getEmptyModel();
-    }
-
-    protected void doRegisterTypes(ModelBuilder bpmnModelBuilder) {
-        ActivationConditionImpl.registerType(bpmnModelBuilder);
-        ActivityImpl.registerType(bpmnModelBuilder);
-        ArtifactImpl.registerType(bpmnModelBuilder);
-        AssignmentImpl.registerType(bpmnModelBuilder);
-        AssociationImpl.registerType(bpmnModelBuilder);
-        AuditingImpl.registerType(bpmnModelBuilder);
-        BaseElementImpl.registerType(bpmnModelBuilder);
-        BoundaryEventImpl.registerType(bpmnModelBuilder);
-        BusinessRuleTaskImpl.registerType(bpmnModelBuilder);
-        CallableElementImpl.registerType(bpmnModelBuilder);
-        CallActivityImpl.registerType(bpmnModelBuilder);
-        CallConversationImpl.registerType(bpmnModelBuilder);
-        CancelEventDefinitionImpl.registerType(bpmnModelBuilder);
-        CatchEventImpl.registerType(bpmnModelBuilder);
-        CategoryValueImpl.registerType(bpmnModelBuilder);
-        CategoryValueRef.registerType(bpmnModelBuilder);
-        ChildLaneSet.registerType(bpmnModelBuilder);
-        CollaborationImpl.registerType(bpmnModelBuilder);
-        CompensateEventDefinitionImpl.registerType(bpmnModelBuilder);
-        ConditionImpl.registerType(bpmnModelBuilder);
-        ConditionalEventDefinitionImpl.registerType(bpmnModelBuilder);
-        CompletionConditionImpl.registerType(bpmnModelBuilder);
-        ComplexBehaviorDefinitionImpl.registerType(bpmnModelBuilder);
-        ComplexGatewayImpl.registerType(bpmnModelBuilder);
-        ConditionExpressionImpl.registerType(bpmnModelBuilder);
-        ConversationAssociationImpl.registerType(bpmnModelBuilder);
-        ConversationImpl.registerType(bpmnModelBuilder);
-        ConversationLinkImpl.registerType(bpmnModelBuilder);
-        ConversationNodeImpl.registerType(bpmnModelBuilder);
-        CorrelationKeyImpl.registerType(bpmnModelBuilder);
-        CorrelationPropertyBindingImpl.registerType(bpmnModelBuilder);
-        CorrelationPropertyImpl.registerType(bpmnModelBuilder);
-        CorrelationPropertyRef.registerType(bpmnModelBuilder);
-        CorrelationPropertyRetrievalExpressionImpl.registerType(bpmnModelBuilder);
-        CorrelationSubscriptionImpl.registerType(bpmnModelBuilder);
-        DataAssociationImpl.registerType(bpmnModelBuilder);
-        DataInputAssociationImpl.registerType(bpmnModelBuilder);
-        DataInputImpl.registerType(bpmnModelBuilder);
-        DataInputRefs.registerType(bpmnModelBuilder);
-        DataOutputAssociationImpl.registerType(bpmnModelBuilder);
-        DataOutputImpl.registerType(bpmnModelBuilder);
-        DataOutputRefs.registerType(bpmnModelBuilder);
-        DataPath.registerType(bpmnModelBuilder);
-        DataStateImpl.registerType(bpmnModelBuilder);
-        DataObjectImpl.registerType(bpmnModelBuilder);
-        DataObjectReferenceImpl.registerType(bpmnModelBuilder);
-        DefinitionsImpl.registerType(bpmnModelBuilder);
-        DocumentationImpl.registerType(bpmnModelBuilder);
-        EndEventImpl.registerType(bpmnModelBuilder);
-        EndPointImpl.registerType(bpmnModelBuilder);
-        EndPointRef.registerType(bpmnModelBuilder);
-        ErrorEventDefinitionImpl.registerType(bpmnModelBuilder);
-        ErrorImpl.registerType(bpmnModelBuilder);
-        ErrorRef.registerType(bpmnModelBuilder);
-        EscalationImpl.registerType(bpmnModelBuilder);
-        EscalationEventDefinitionImpl.registerType(bpmnModelBuilder);
-        EventBasedGatewayImpl.registerType(bpmnModelBuilder);
-        EventDefinitionImpl.registerType(bpmnModelBuilder);
-        EventDefinitionRef.registerType(bpmnModelBuilder);
-        EventImpl.registerType(bpmnModelBuilder);
-        ExclusiveGatewayImpl.registerType(bpmnModelBuilder);
-        ExpressionImpl.registerType(bpmnModelBuilder);
-        ExtensionElementsImpl.registerType(bpmnModelBuilder);
-        ExtensionImpl.registerType(bpmnModelBuilder);
-        FlowElementImpl.registerType(bpmnModelBuilder);
-        FlowNodeImpl.registerType(bpmnModelBuilder);
-        FlowNodeRef.registerType(bpmnModelBuilder);
-        FormalExpressionImpl.registerType(bpmnModelBuilder);
-        From.registerType(bpmnModelBuilder);
-        GatewayImpl.registerType(bpmnModelBuilder);
-        GlobalConversationImpl.registerType(bpmnModelBuilder);
-        HumanPerformerImpl.registerType(bpmnModelBuilder);
-        ImportImpl.registerType(bpmnModelBuilder);
-        InclusiveGatewayImpl.registerType(bpmnModelBuilder);
-        Incoming.registerType(bpmnModelBuilder);
-        InMessageRef.registerType(bpmnModelBuilder);
-        InnerParticipantRef.registerType(bpmnModelBuilder);
-        InputDataItemImpl.registerType(bpmnModelBuilder);
-        InputSetImpl.registerType(bpmnModelBuilder);
-        InputSetRefs.registerType(bpmnModelBuilder);
-        InteractionNodeImpl.registerType(bpmnModelBuilder);
-        InterfaceImpl.registerType(bpmnModelBuilder);
-        InterfaceRef.registerType(bpmnModelBuilder);
-        IntermediateCatchEventImpl.registerType(bpmnModelBuilder);
-        IntermediateThrowEventImpl.registerType(bpmnModelBuilder);
-        IoBindingImpl.registerType(bpmnModelBuilder);
-        IoSpecificationImpl.registerType(bpmnModelBuilder);
-        ItemAwareElementImpl.registerType(bpmnModelBuilder);
-        ItemDefinitionImpl.registerType(bpmnModelBuilder);
-        LaneImpl.registerType(bpmnModelBuilder);
-        LaneSetImpl.registerType(bpmnModelBuilder);
-        LinkEventDefinitionImpl.registerType(bpmnModelBuilder);
-        LoopCardinalityImpl.registerType(bpmnModelBuilder);
-        LoopCharacteristicsImpl.registerType(bpmnModelBuilder);
-        LoopDataInputRef.registerType(bpmnModelBuilder);
-        LoopDataOutputRef.registerType(bpmnModelBuilder);
-        ManualTaskImpl.registerType(bpmnModelBuilder);
-        MessageEventDefinitionImpl.registerType(bpmnModelBuilder);
-        MessageFlowAssociationImpl.registerType(bpmnModelBuilder);
-        MessageFlowImpl.registerType(bpmnModelBuilder);
-        MessageFlowRef.registerType(bpmnModelBuilder);
-        MessageImpl.registerType(bpmnModelBuilder);
-        MessagePath.registerType(bpmnModelBuilder);
-        ModelElementInstanceImpl.registerType(bpmnModelBuilder);
-        MonitoringImpl.registerType(bpmnModelBuilder);
-        MultiInstanceLoopCharacteristicsImpl.registerType(bpmnModelBuilder);
-        OperationImpl.registerType(bpmnModelBuilder);
-        OperationRef.registerType(bpmnModelBuilder);
-        OptionalInputRefs.registerType(bpmnModelBuilder);
-        OptionalOutputRefs.registerType(bpmnModelBuilder);
-        OuterParticipantRef.registerType(bpmnModelBuilder);
-        OutMessageRef.registerType(bpmnModelBuilder);
-        Outgoing.registerType(bpmnModelBuilder);
-        OutputDataItemImpl.registerType(bpmnModelBuilder);
-        OutputSetImpl.registerType(bpmnModelBuilder);
-        OutputSetRefs.registerType(bpmnModelBuilder);
-        ParallelGatewayImpl.registerType(bpmnModelBuilder);
-        ParticipantAssociationImpl.registerType(bpmnModelBuilder);
-        ParticipantImpl.registerType(bpmnModelBuilder);
-        ParticipantMultiplicityImpl.registerType(bpmnModelBuilder);
-        ParticipantRef.registerType(bpmnModelBuilder);
-        PartitionElement.registerType(bpmnModelBuilder);
-        PerformerImpl.registerType(bpmnModelBuilder);
-        PotentialOwnerImpl.registerType(bpmnModelBuilder);
-        ProcessImpl.registerType(bpmnModelBuilder);
-        PropertyImpl.registerType(bpmnModelBuilder);
-        ReceiveTaskImpl.registerType(bpmnModelBuilder);
-        RelationshipImpl.registerType(bpmnModelBuilder);
-        RenderingImpl.registerType(bpmnModelBuilder);
-        ResourceAssignmentExpressionImpl.registerType(bpmnModelBuilder);
-        ResourceImpl.registerType(bpmnModelBuilder);
-        ResourceParameterBindingImpl.registerType(bpmnModelBuilder);
-        ResourceParameterImpl.registerType(bpmnModelBuilder);
-        ResourceRef.registerType(bpmnModelBuilder);
-        ResourceRoleImpl.registerType(bpmnModelBuilder);
-        RootElementImpl.registerType(bpmnModelBuilder);
-        ScriptImpl.registerType(bpmnModelBuilder);
-        ScriptTaskImpl.registerType(bpmnModelBuilder);
-        SendTaskImpl.registerType(bpmnModelBuilder);
-        SequenceFlowImpl.registerType(bpmnModelBuilder);
-        ServiceTaskImpl.registerType(bpmnModelBuilder);
-        SignalEventDefinitionImpl.registerType(bpmnModelBuilder);
-        SignalImpl.registerType(bpmnModelBuilder);
-        Source.registerType(bpmnModelBuilder);
-        SourceRef.registerType(bpmnModelBuilder);
-        StartEventImpl.registerType(bpmnModelBuilder);
-        SubConversationImpl.registerType(bpmnModelBuilder);
-        SubProcessImpl.registerType(bpmnModelBuilder);
-        SupportedInterfaceRef.registerType(bpmnModelBuilder);
-        Supports.registerType(bpmnModelBuilder);
-        Target.registerType(bpmnModelBuilder);
-        TargetRef.registerType(bpmnModelBuilder);
-        TaskImpl.registerType(bpmnModelBuilder);
-        TerminateEventDefinitionImpl.registerType(bpmnModelBuilder);
-        TextImpl.registerType(bpmnModelBuilder);
-        TextAnnotationImpl.registerType(bpmnModelBuilder);
-        ThrowEventImpl.registerType(bpmnModelBuilder);
-        TimeCycleImpl.registerType(bpmnModelBuilder);
-        TimeDateImpl.registerType(bpmnModelBuilder);
-        TimeDurationImpl.registerType(bpmnModelBuilder);
-        TimerEventDefinitionImpl.registerType(bpmnModelBuilder);
-        To.registerType(bpmnModelBuilder);
-        Transformation.registerType(bpmnModelBuilder);
-        UserTaskImpl.registerType(bpmnModelBuilder);
-        WhileExecutingInputRefs.registerType(bpmnModelBuilder);
-        WhileExecutingOutputRefs.registerType(bpmnModelBuilder);
-        FontImpl.registerType(bpmnModelBuilder);
-        PointImpl.registerType(bpmnModelBuilder);
-        BoundsImpl.registerType(bpmnModelBuilder);
-        DiagramImpl.registerType(bpmnModelBuilder);
-        DiagramElementImpl.registerType(bpmnModelBuilder);
-        EdgeImpl.registerType(bpmnModelBuilder);
-        org.camunda.bpm.model.bpmn.impl.instance.di.ExtensionImpl.registerType(bpmnModelBuilder);
-        LabelImpl.registerType(bpmnModelBuilder);
-        LabeledEdgeImpl.registerType(bpmnModelBuilder);
-        LabeledShapeImpl.registerType(bpmnModelBuilder);
-        NodeImpl.registerType(bpmnModelBuilder);
-        PlaneImpl.registerType(bpmnModelBuilder);
-        ShapeImpl.registerType(bpmnModelBuilder);
-        StyleImpl.registerType(bpmnModelBuilder);
-        WaypointImpl.registerType(bpmnModelBuilder);
-        BpmnDiagramImpl.registerType(bpmnModelBuilder);
-        BpmnEdgeImpl.registerType(bpmnModelBuilder);
-        BpmnLabelImpl.registerType(bpmnModelBuilder);
-        BpmnLabelStyleImpl.registerType(bpmnModelBuilder);
-        BpmnPlaneImpl.registerType(bpmnModelBuilder);
-        BpmnShapeImpl.registerType(bpmnModelBuilder);
-        CamundaConnectorImpl.registerType(bpmnModelBuilder);
-        CamundaConnectorIdImpl.registerType(bpmnModelBuilder);
-        CamundaConstraintImpl.registerType(bpmnModelBuilder);
-        CamundaEntryImpl.registerType(bpmnModelBuilder);
-        CamundaExecutionListenerImpl.registerType(bpmnModelBuilder);
-        CamundaExpressionImpl.registerType(bpmnModelBuilder);
-        CamundaFailedJobRetryTimeCycleImpl.registerType(bpmnModelBuilder);
-        CamundaFieldImpl.registerType(bpmnModelBuilder);
-        CamundaFormDataImpl.registerType(bpmnModelBuilder);
-        CamundaFormFieldImpl.registerType(bpmnModelBuilder);
-        CamundaFormPropertyImpl.registerType(bpmnModelBuilder);
-        CamundaInImpl.registerType(bpmnModelBuilder);
-        CamundaInputOutputImpl.registerType(bpmnModelBuilder);
-        CamundaInputParameterImpl.registerType(bpmnModelBuilder);
-        CamundaListImpl.registerType(bpmnModelBuilder);
-        CamundaMapImpl.registerType(bpmnModelBuilder);
-        CamundaOutputParameterImpl.registerType(bpmnModelBuilder);
-        CamundaOutImpl.registerType(bpmnModelBuilder);
-        CamundaPotentialStarterImpl.registerType(bpmnModelBuilder);
-        CamundaPropertiesImpl.registerType(bpmnModelBuilder);
-        CamundaPropertyImpl.registerType(bpmnModelBuilder);
-        CamundaScriptImpl.registerType(bpmnModelBuilder);
-        CamundaStringImpl.registerType(bpmnModelBuilder);
-        CamundaTaskListenerImpl.registerType(bpmnModelBuilder);
-        CamundaValidationImpl.registerType(bpmnModelBuilder);
-        CamundaValueImpl.registerType(bpmnModelBuilder);
+        return this.bpmntParser.get().getEmptyModel();
     }
 
     public Model getBpmntModel() {
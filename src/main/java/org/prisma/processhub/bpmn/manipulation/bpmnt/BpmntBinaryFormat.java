@@ -0,0 +1,301 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelException;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.impl.BpmnModelInstanceImpl;
+import org.camunda.bpm.model.xml.impl.ModelImpl;
+import org.camunda.bpm.model.xml.impl.instance.DomDocumentImpl;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
+import org.prisma.processhub.bpmn.manipulation.impl.bpmnt.BpmntModelInstanceImpl;
+import org.w3c.dom.*;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Versioned binary format of a BpmntModelInstance and its BPMNt log
+// Both the model and the log, as the model Bpmnt.convertBpmntFromListToModel generates, are stored as DOM trees, so
+// flow elements, their attributes and the DI are kept as they are. Every name, namespace, attribute value and text is
+// written once to a string table and referenced by its varint index, sequence flows included, which refer to their
+// nodes by id. Reading builds the DOM directly, without parsing nor validating XML, and types the id attributes.
+final class BpmntBinaryFormat {
+
+    private static final int MAGIC = 0x42504d42;
+    private static final int VERSION = 1;
+
+    private static final int ELEMENT_NODE = 1;
+    private static final int TEXT_NODE = 2;
+    private static final int CDATA_NODE = 3;
+    private static final int COMMENT_NODE = 4;
+
+    // Strings longer than this are read in chunks
+    private static final int STRING_CHUNK_SIZE = 8192;
+
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            try {
+                return dbf.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new BpmnModelException("Cannot create DOM document builder", e);
+            }
+        }
+    };
+
+    private BpmntBinaryFormat() {}
+
+    // Writing
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    static void write(BpmntModelInstance modelInstance, OutputStream stream) {
+        Document logDocument = null;
+        if (modelInstance.getBpmntLog() != null) {
+            BpmnModelInstance logModel = Bpmnt.convertBpmntFromListToModel(modelInstance.getBpmntLog());
+            if (logModel != null) {
+                logDocument = documentOf(logModel);
+            }
+        }
+
+        // Trees are encoded first, filling the string table written before them
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream trees = new ByteArrayOutputStream();
+        try {
+            writeElement(documentOf(modelInstance).getDocumentElement(), strings, trees);
+            writeVarint(trees, logDocument == null ? 0 : 1);
+            if (logDocument != null) {
+                writeElement(logDocument.getDocumentElement(), strings, trees);
+            }
+
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeInt(MAGIC);
+            writeVarint(output, VERSION);
+            writeVarint(output, strings.values.size());
+            for (String value: strings.values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(output, bytes.length);
+                output.write(bytes);
+            }
+            trees.writeTo(output);
+            output.flush();
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot write binary BPMNt model: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeElement(Element element, StringTable strings, OutputStream output) throws IOException {
+        writeVarint(output, strings.indexOf(element.getNamespaceURI()));
+        writeVarint(output, strings.indexOf(element.getNodeName()));
+
+        NamedNodeMap attributes = element.getAttributes();
+        writeVarint(output, attributes.getLength());
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            writeVarint(output, strings.indexOf(attribute.getNamespaceURI()));
+            writeVarint(output, strings.indexOf(attribute.getNodeName()));
+            writeVarint(output, strings.indexOf(attribute.getNodeValue()));
+        }
+
+        NodeList children = element.getChildNodes();
+        int childCount = 0;
+        for (int i = 0; i < children.getLength(); i++) {
+            if (nodeKind(children.item(i)) != 0) {
+                childCount++;
+            }
+        }
+        writeVarint(output, childCount);
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            int kind = nodeKind(child);
+            if (kind == 0) {
+                continue;
+            }
+            writeVarint(output, kind);
+            if (kind == ELEMENT_NODE) {
+                writeElement((Element) child, strings, output);
+            }
+            else {
+                writeVarint(output, strings.indexOf(child.getNodeValue()));
+            }
+        }
+    }
+
+    // Kind of a child node, 0 for the ones that aren't kept, such as processing instructions
+    private static int nodeKind(Node node) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                return ELEMENT_NODE;
+            case Node.TEXT_NODE:
+                return TEXT_NODE;
+            case Node.CDATA_SECTION_NODE:
+                return CDATA_NODE;
+            case Node.COMMENT_NODE:
+                return COMMENT_NODE;
+            default:
+                return 0;
+        }
+    }
+
+    // Strings by index, null being index 0
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final List<String> values = new ArrayList<String>();
+
+        int indexOf(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                values.add(value);
+                index = values.size();
+                indexes.put(value, index);
+            }
+            return index;
+        }
+    }
+
+    // Reading
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    static BpmntModelInstance read(InputStream stream) {
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+            if (input.readInt() != MAGIC) {
+                throw new BpmnModelException("Not a binary BPMNt model");
+            }
+            int version = readVarint(input);
+            if (version != VERSION) {
+                throw new BpmnModelException("Unsupported binary BPMNt model version " + version);
+            }
+
+            // Counts and lengths come from the input, so nothing is allocated for more than what is actually read
+            int stringCount = readLength(input);
+            List<String> stringTable = new ArrayList<String>();
+            stringTable.add(null);
+            for (int i = 0; i < stringCount; i++) {
+                stringTable.add(readString(input));
+            }
+            String[] strings = stringTable.toArray(new String[stringTable.size()]);
+
+            Document document = DOCUMENT_BUILDER.get().newDocument();
+            document.appendChild(readElement(document, strings, input));
+            BpmntModelInstance modelInstance = new BpmntModelInstanceImpl((ModelImpl) Bpmnt.INSTANCE.getBpmntModel(),
+                    Bpmnt.INSTANCE.getBpmntModelBuilder(), new DomDocumentImpl(document));
+
+            if (readVarint(input) == 1) {
+                Document logDocument = DOCUMENT_BUILDER.get().newDocument();
+                logDocument.appendChild(readElement(logDocument, strings, input));
+                BpmnModelInstance logModel = new BpmnModelInstanceImpl((ModelImpl) Bpmn.INSTANCE.getBpmnModel(),
+                        Bpmn.INSTANCE.getBpmnModelBuilder(), new DomDocumentImpl(logDocument));
+                modelInstance.setBpmntLog(new ArrayList<BpmntOperation>(Bpmnt.convertBpmntFromModelToList(logModel)));
+            }
+            return modelInstance;
+        } catch (EOFException e) {
+            throw new BpmnModelException("Corrupt binary BPMNt model", e);
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot read binary BPMNt model: " + e.getMessage(), e);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new BpmnModelException("Corrupt binary BPMNt model", e);
+        }
+    }
+
+    private static Element readElement(Document document, String[] strings, DataInputStream input) throws IOException {
+        Element element = document.createElementNS(strings[readVarint(input)], strings[readVarint(input)]);
+
+        int attributeCount = readVarint(input);
+        for (int i = 0; i < attributeCount; i++) {
+            String namespace = strings[readVarint(input)];
+            String name = strings[readVarint(input)];
+            element.setAttributeNS(namespace, name, strings[readVarint(input)]);
+        }
+        // As in a validated document, so that elements are found by id
+        if (element.hasAttribute("id")) {
+            element.setIdAttribute("id", true);
+        }
+
+        int childCount = readVarint(input);
+        for (int i = 0; i < childCount; i++) {
+            int kind = readVarint(input);
+            switch (kind) {
+                case ELEMENT_NODE:
+                    element.appendChild(readElement(document, strings, input));
+                    break;
+                case TEXT_NODE:
+                    element.appendChild(document.createTextNode(strings[readVarint(input)]));
+                    break;
+                case CDATA_NODE:
+                    element.appendChild(document.createCDATASection(strings[readVarint(input)]));
+                    break;
+                case COMMENT_NODE:
+                    element.appendChild(document.createComment(strings[readVarint(input)]));
+                    break;
+                default:
+                    throw new BpmnModelException("Corrupt binary BPMNt model, unknown node kind " + kind);
+            }
+        }
+        return element;
+    }
+
+    // Varints
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Unsigned LEB128: 7 bits per byte, least significant first, high bit set on all bytes but the last
+    private static void writeVarint(OutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readLength(DataInputStream input) throws IOException {
+        int length = readVarint(input);
+        if (length < 0) {
+            throw new BpmnModelException("Corrupt binary BPMNt model");
+        }
+        return length;
+    }
+
+    // A corrupt length ends the input before much is allocated
+    private static String readString(DataInputStream input) throws IOException {
+        int length = readLength(input);
+        if (length <= STRING_CHUNK_SIZE) {
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(STRING_CHUNK_SIZE);
+        byte[] chunk = new byte[STRING_CHUNK_SIZE];
+        for (int remaining = length; remaining > 0; remaining -= chunk.length) {
+            int chunkLength = Math.min(remaining, chunk.length);
+            input.readFully(chunk, 0, chunkLength);
+            bytes.write(chunk, 0, chunkLength);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static int readVarint(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BpmnModelException("Corrupt binary BPMNt model, varint too long");
+    }
+
+    private static Document documentOf(BpmnModelInstance modelInstance) {
+        return (Document) modelInstance.getDocument().getDomSource().getNode();
+    }
+}
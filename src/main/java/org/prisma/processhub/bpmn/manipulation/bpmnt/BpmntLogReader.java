@@ -0,0 +1,281 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.camunda.bpm.model.bpmn.BpmnModelException;
+import org.camunda.bpm.model.bpmn.instance.Definitions;
+import org.camunda.bpm.model.bpmn.instance.FlowElement;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.camunda.bpm.model.xml.impl.ModelInstanceImpl;
+import org.camunda.bpm.model.xml.impl.instance.DomElementImpl;
+import org.camunda.bpm.model.xml.impl.util.ModelUtil;
+import org.camunda.bpm.model.xml.type.ModelElementType;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.constant.BpmntExtensionAttributes;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streaming decoder of BPMNt logs, as written by Bpmnt.convertBpmntFromListToModel
+// Operations stored as process extensions are decoded straight from the StAX events. Only the subprocess containers
+// of insertion dependent operations are built as DOM, all in one fragment model the inserted elements then belong to.
+// Containers are the subprocesses directly in a process, and the log is not validated against the BPMN schema.
+final class BpmntLogReader {
+
+    private static final String BPMN_NAMESPACE = "http://www.omg.org/spec/BPMN/20100524/MODEL";
+
+    // Factories are kept per thread, as they are not guaranteed to be thread-safe
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+            inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            return inputFactory;
+        }
+    };
+
+    private final XMLStreamReader reader;
+    private final List<BpmntOperation> operations = new ArrayList<BpmntOperation>();
+    private BpmntModelInstance fragmentModel;
+    private Element fragmentProcess;
+
+    private BpmntLogReader(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    static List<BpmntOperation> read(InputStream stream) {
+        try {
+            return read(INPUT_FACTORY.get().createXMLStreamReader(stream));
+        } catch (XMLStreamException e) {
+            throw new BpmnModelException("Cannot read BPMNt log: " + e.getMessage(), e);
+        }
+    }
+
+    // Reads characters, e.g. of a log already held as a String, without encoding them back to bytes first
+    static List<BpmntOperation> read(Reader characters) {
+        try {
+            return read(INPUT_FACTORY.get().createXMLStreamReader(characters));
+        } catch (XMLStreamException e) {
+            throw new BpmnModelException("Cannot read BPMNt log: " + e.getMessage(), e);
+        }
+    }
+
+    private static List<BpmntOperation> read(XMLStreamReader reader) throws XMLStreamException {
+        try {
+            return new BpmntLogReader(reader).readOperations();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private List<BpmntOperation> readOperations() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && isBpmnElement("process")) {
+                readProcess();
+            }
+        }
+        return operations;
+    }
+
+    private void readProcess() throws XMLStreamException {
+        int depth = 0;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (depth == 0 && isBpmnElement("extensionElements")) {
+                    readProcessExtensions();
+                }
+                else if (depth == 0 && isBpmnElement("subProcess")) {
+                    readContainer();
+                }
+                else {
+                    depth++;
+                }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    return;
+                }
+                depth--;
+            }
+        }
+    }
+
+    // Process extensions
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private void readProcessExtensions() throws XMLStreamException {
+        BpmntOperationCodec.ExtensionAttributes attributes = new BpmntOperationCodec.ExtensionAttributes() {
+            @Override
+            public String get(String name) {
+                return reader.getAttributeValue(null, name);
+            }
+        };
+
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                BpmntOperation operation = BpmntOperationCodecs.decodeProcessExtension(reader.getLocalName(), attributes);
+                if (operation != null) {
+                    operations.add(operation);
+                }
+                skipElement();
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                return;
+            }
+        }
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    // Subprocess containers
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private void readContainer() throws XMLStreamException {
+        if (fragmentModel == null) {
+            initFragmentModel();
+        }
+        Element container = readElement(fragmentProcess.getOwnerDocument());
+        fragmentProcess.appendChild(container);
+
+        Element extension = singleExtension(container);
+        String operationName = extension == null ? null : extension.getLocalName();
+        if (operationName == null || !BpmntOperationCodecs.isContainerExtension(operationName)) {
+            fragmentProcess.removeChild(container);
+            return;
+        }
+        // Operations that are only encoded, such as InsertFragment, are skipped
+        BpmntOperation operation = BpmntOperationCodecs.decodeContainerExtension(operationName,
+                extensionAttributes(extension), firstFlowElement(container));
+        if (operation == null) {
+            fragmentProcess.removeChild(container);
+            return;
+        }
+        operations.add(operation);
+    }
+
+    private void initFragmentModel() {
+        fragmentModel = Bpmnt.createEmptyModel();
+        Definitions definitions = fragmentModel.newInstance(Definitions.class);
+        definitions.setTargetNamespace(BpmntExtensionAttributes.DOMAIN);
+        fragmentModel.setDefinitions(definitions);
+        Process process = fragmentModel.newInstance(Process.class);
+        definitions.addChildElement(process);
+
+        Document document = (Document) fragmentModel.getDocument().getDomSource().getNode();
+        fragmentProcess = (Element) document.getElementsByTagNameNS(BPMN_NAMESPACE, "process").item(0);
+    }
+
+    // Builds the element the reader is at, and its content, as DOM; id attributes are typed as in a validated document
+    private Element readElement(Document document) throws XMLStreamException {
+        Element element = document.createElementNS(reader.getNamespaceURI(), qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                    prefix == null || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+                    reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String namespace = reader.getAttributeNamespace(i);
+            if (namespace == null || namespace.isEmpty()) {
+                element.setAttributeNS(null, reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+            else {
+                element.setAttributeNS(namespace, qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                        reader.getAttributeValue(i));
+            }
+        }
+        if (element.hasAttribute("id")) {
+            element.setIdAttribute("id", true);
+        }
+
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                element.appendChild(readElement(document));
+            }
+            else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE) {
+                element.appendChild(document.createTextNode(reader.getText()));
+            }
+            else if (event == XMLStreamConstants.CDATA) {
+                element.appendChild(document.createCDATASection(reader.getText()));
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                return element;
+            }
+        }
+    }
+
+    // Only extension of the container, or null if it has none or several
+    private static Element singleExtension(Element container) {
+        for (Node child = container.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && BPMN_NAMESPACE.equals(child.getNamespaceURI())
+                    && "extensionElements".equals(child.getLocalName())) {
+                Element extension = null;
+                for (Node grandChild = child.getFirstChild(); grandChild != null; grandChild = grandChild.getNextSibling()) {
+                    if (grandChild.getNodeType() == Node.ELEMENT_NODE) {
+                        if (extension != null) {
+                            return null;
+                        }
+                        extension = (Element) grandChild;
+                    }
+                }
+                return extension;
+            }
+        }
+        return null;
+    }
+
+    private FlowElement firstFlowElement(Element container) {
+        for (Node child = container.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            ModelElementType type = fragmentModel.getModel().getTypeForName(child.getNamespaceURI(), child.getLocalName());
+            if (type != null && FlowElement.class.isAssignableFrom(type.getInstanceType())) {
+                return (FlowElement) ModelUtil.getModelElement(new DomElementImpl((Element) child), (ModelInstanceImpl) fragmentModel);
+            }
+        }
+        throw new BpmnModelException("Subprocess container " + container.getAttribute("id") + " holds no flow element");
+    }
+
+    private static BpmntOperationCodec.ExtensionAttributes extensionAttributes(final Element extension) {
+        return new BpmntOperationCodec.ExtensionAttributes() {
+            @Override
+            public String get(String name) {
+                return extension.hasAttribute(name) ? extension.getAttribute(name) : null;
+            }
+        };
+    }
+
+    private boolean isBpmnElement(String localName) {
+        return BPMN_NAMESPACE.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+}
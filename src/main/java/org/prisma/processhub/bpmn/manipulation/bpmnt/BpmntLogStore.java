@@ -0,0 +1,272 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelException;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.Definitions;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.camunda.bpm.model.xml.impl.util.IoUtil;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.constant.BpmntExtensionAttributes;
+import org.prisma.processhub.bpmn.manipulation.impl.bpmnt.BpmntModelInstanceImpl;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnHelper;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only persistence of a BPMNt log
+// Operations are kept in two files: a snapshot in the standard BPMNt XML and a log of the operations appended since,
+// one record each, written and forced to disk as they're appended. A record holds the length and CRC32 of its payload,
+// the single operation as BPMNt XML, so a record left partial by a crash is detected and truncated on open.
+// Compacting writes every operation to a new snapshot, which replaces the old one, and then empties the log. Records
+// whose execution order is already in the snapshot are skipped on open, in case the log wasn't emptied.
+public final class BpmntLogStore implements Closeable {
+
+    private static final int MAGIC = 0x42504c47;
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final File snapshotFile;
+    private final FileChannel log;
+    private final List<BpmntOperation> operations = new ArrayList<BpmntOperation>();
+    // Offset of each record of the log
+    private final List<Long> recordOffsets = new ArrayList<Long>();
+
+    private BpmntLogStore(File snapshotFile, FileChannel log) {
+        this.snapshotFile = snapshotFile;
+        this.log = log;
+    }
+
+    // Opens the store, creating the log if it doesn't exist yet; the snapshot may not exist until the first compaction
+    public static BpmntLogStore open(File snapshotFile, File logFile) {
+        BpmnHelper.checkNotNull(snapshotFile, "Argument snapshotFile must not be null");
+        BpmnHelper.checkNotNull(logFile, "Argument logFile must not be null");
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(logFile, "rw");
+            BpmntLogStore store = new BpmntLogStore(snapshotFile, file.getChannel());
+            store.load();
+            return store;
+        } catch (IOException e) {
+            IoUtil.closeSilently(file);
+            throw new BpmnModelException("Cannot open BPMNt log " + logFile + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            IoUtil.closeSilently(file);
+            throw e;
+        }
+    }
+
+    // Operations of the snapshot and the log, by execution order
+    public synchronized List<BpmntOperation> getOperations() {
+        return new ArrayList<BpmntOperation>(operations);
+    }
+
+    public synchronized int size() {
+        return operations.size();
+    }
+
+    // Number of records in the log, appended since the last compaction
+    public synchronized int getRecordCount() {
+        return recordOffsets.size();
+    }
+
+    // Appends the operations of the model's BPMNt log that aren't in the store yet
+    public synchronized void appendNewOperations(BpmntModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        if (modelInstance.getBpmntLog() == null) {
+            return;
+        }
+        int lastOrder = lastExecutionOrder();
+        for (BpmntOperation operation: BpmntModelInstanceImpl.sortByExecutionOrder(modelInstance.getBpmntLog())) {
+            if (operation.getExecutionOrder() > lastOrder) {
+                append(operation);
+            }
+        }
+    }
+
+    public synchronized void append(BpmntOperation operation) {
+        BpmnHelper.checkNotNull(operation, "Argument operation must not be null");
+        BpmnHelper.checkInvalidArgument(operation.getExecutionOrder() <= lastExecutionOrder(),
+                "Execution order " + operation.getExecutionOrder() + " of operation " + operation.getName() +
+                " is not after the last one in the store, " + lastExecutionOrder());
+
+        byte[] payload = encode(operation);
+        // Operations that can't be decoded, such as those holding a whole model, would make the log unreadable
+        decode(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+
+        try {
+            long offset = log.size();
+            try {
+                log.position(offset);
+                while (record.hasRemaining()) {
+                    log.write(record);
+                }
+                log.force(false);
+            } catch (IOException e) {
+                // A partial record left at the end would hide every record appended after it once the log is read again
+                try {
+                    truncateLog(offset);
+                } catch (IOException truncateException) {
+                    e.addSuppressed(truncateException);
+                }
+                throw e;
+            }
+            recordOffsets.add(offset);
+            operations.add(operation);
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot append operation " + operation.getName() + " to BPMNt log: " + e.getMessage(), e);
+        }
+    }
+
+    // Writes every operation to a new snapshot and empties the log
+    // The snapshot needs the Extend operation every BPMNt log starts with.
+    public synchronized void compact() {
+        if (recordOffsets.isEmpty()) {
+            return;
+        }
+        BpmnModelInstance bpmntModel = Bpmnt.convertBpmntFromListToModel(operations);
+        if (bpmntModel == null) {
+            throw new BpmnModelException("Cannot compact a BPMNt log without an Extend operation");
+        }
+
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            Bpmn.writeModelToFile(tempFile, bpmntModel);
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            truncateLog(HEADER_SIZE);
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot compact BPMNt log into " + snapshotFile + ": " + e.getMessage(), e);
+        }
+        recordOffsets.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    // Loading
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private void load() throws IOException {
+        if (snapshotFile.exists()) {
+            InputStream stream = new BufferedInputStream(new FileInputStream(snapshotFile));
+            try {
+                operations.addAll(BpmntModelInstanceImpl.sortByExecutionOrder(Bpmnt.convertBpmntFromStreamToList(stream)));
+            }
+            finally {
+                IoUtil.closeSilently(stream);
+            }
+        }
+        if (log.size() < HEADER_SIZE) {
+            // New log, or one whose header was cut short
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).flip();
+            truncateLog(0);
+            log.write(header, 0);
+            log.force(false);
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new BpmnModelException("Not a BPMNt log");
+        }
+        readRecords();
+    }
+
+    // Reads records up to the end of the log, or to the first partial or corrupt one, which is truncated with the rest
+    private void readRecords() throws IOException {
+        long size = log.size();
+        long offset = HEADER_SIZE;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        int lastOrder = lastExecutionOrder();
+
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            recordHeader.clear();
+            readFully(recordHeader, offset);
+            int length = recordHeader.getInt(0);
+            int checksum = recordHeader.getInt(4);
+            if (length < 0 || offset + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + RECORD_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            BpmntOperation operation = decode(payload.array());
+            if (operation.getExecutionOrder() > lastOrder) {
+                // Otherwise already compacted into the snapshot
+                recordOffsets.add(offset);
+                operations.add(operation);
+                lastOrder = operation.getExecutionOrder();
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        if (offset < size) {
+            truncateLog(offset);
+        }
+        if (recordOffsets.isEmpty() && offset > HEADER_SIZE) {
+            // Every record was in the snapshot
+            truncateLog(HEADER_SIZE);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private void truncateLog(long size) throws IOException {
+        log.truncate(size);
+        log.force(false);
+    }
+
+    // Records
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // A BPMNt XML document with the extension of the operation alone
+    private static byte[] encode(BpmntOperation operation) {
+        BpmnModelInstance recordModel = Bpmn.createEmptyModel();
+        Definitions definitions = recordModel.newInstance(Definitions.class);
+        definitions.setTargetNamespace(BpmntExtensionAttributes.DOMAIN);
+        recordModel.setDefinitions(definitions);
+        Process process = recordModel.newInstance(Process.class);
+        process.setId(operation.getName());
+        definitions.addChildElement(process);
+        BpmntOperationCodecs.encode(operation, process);
+        return Bpmn.convertToString(recordModel).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static BpmntOperation decode(byte[] payload) {
+        List<BpmntOperation> decoded = BpmntLogReader.read(new ByteArrayInputStream(payload));
+        if (decoded.size() != 1 || decoded.get(0) == null) {
+            throw new BpmnModelException("BPMNt log record doesn't hold a single decodable operation");
+        }
+        return decoded.get(0);
+    }
+
+    private int lastExecutionOrder() {
+        return operations.isEmpty() ? 0 : operations.get(operations.size() - 1).getExecutionOrder();
+    }
+}
@@ -18,6 +18,11 @@ public interface BpmntModelInstance extends BpmnModelInstance {
     String setUniqueId(FlowElement element);
     void generateUniqueIds();
 
+    // Operations run between beginBatch() and commitBatch() defer model validation until the batch is committed
+    void beginBatch();
+    void commitBatch();
+    boolean isInBatch();
+
     // BPMNt log operations
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
     List<BpmntOperation> getBpmntLog();
@@ -25,8 +30,16 @@ public interface BpmntModelInstance extends BpmnModelInstance {
     int getNumberOperations();
     void init(Extend extend);
     void execute(BpmntOperation operation);
-    void execute(List<BpmntOperation> operations);
-    void executeOwnBpmnt();
+    BpmntReplayReport execute(List<BpmntOperation> operations);
+    BpmntReplayReport executeOwnBpmnt();
+    BpmntReplayReport executeOwnBpmnt(int fromOrder);
+
+    // Snapshots of the model are taken every checkpointInterval operations (0 disables them),
+    // within the given memory budget, so that a replay can resume from the nearest one
+    void setCheckpointInterval(int checkpointInterval);
+    void setCheckpointMemoryBudget(long bytes);
+    void setCheckpointStorage(BpmntSnapshotStorage storage);
+    int getNumberCheckpoints();
 
     // Low-level operations
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
@@ -55,6 +68,8 @@ public interface BpmntModelInstance extends BpmnModelInstance {
     // Delete
     void delete(FlowNode node);
     void delete(String nodeId);
+    void delete(FlowNode node, boolean validate);
+    void delete(String nodeId, boolean validate);
 
     void delete(FlowNode startingNode, FlowNode endingNode);
     void delete(String startingNodeId, String endingNodeId);
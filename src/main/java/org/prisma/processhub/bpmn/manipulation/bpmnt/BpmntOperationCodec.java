@@ -0,0 +1,32 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.camunda.bpm.model.bpmn.instance.FlowElement;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
+
+// Encodes one type of BPMNt operation as an extension element of a BPMNt log and decodes it back
+// Codecs are looked up by operation name, the local name of the extension element, in BpmntOperationCodecs. Besides
+// the built-in ones, codecs can be registered there or listed in
+// META-INF/services/org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntOperationCodec to be found by ServiceLoader.
+public interface BpmntOperationCodec {
+
+    // Attributes of an extension element, whatever it's read from
+    interface ExtensionAttributes {
+        // Value of the attribute, or null if it's missing
+        String get(String name);
+    }
+
+    // Name of the operations handled by the codec, as returned by BpmntOperation.getName
+    String getOperationName();
+
+    // Whether the operation is stored as the extension of a subprocess container instead of one of the process
+    // The first flow element of the container is then the element the operation inserts.
+    boolean isContainerExtension();
+
+    // Adds the extension of the operation to the process of a BPMNt log
+    void encode(BpmntOperation operation, Process process);
+
+    // Operation of an extension, without its execution order, or null if it can't be decoded
+    // element is the first flow element of the subprocess container, or null for an extension of the process.
+    BpmntOperation decode(ExtensionAttributes attributes, FlowElement element);
+}
@@ -0,0 +1,270 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.camunda.bpm.model.bpmn.instance.FlowElement;
+import org.camunda.bpm.model.bpmn.instance.FlowNode;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntOperationCodec.ExtensionAttributes;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.*;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.constant.BpmntExtensionAttributes;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnHelper;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registry of the codecs of BPMNt operations, by operation name
+// Every built-in operation has a codec; codecs found by ServiceLoader are registered after them, so they may replace
+// them. Operations stored as a model in their container, such as InsertFragment, are encoded but not decoded.
+public final class BpmntOperationCodecs {
+
+    private static final Map<String, BpmntOperationCodec> CODECS = new ConcurrentHashMap<String, BpmntOperationCodec>();
+
+    private BpmntOperationCodecs() {}
+
+    // Registers a codec, replacing the one with the same operation name if any
+    public static void register(BpmntOperationCodec codec) {
+        BpmnHelper.checkNotNull(codec, "Argument codec must not be null");
+        BpmnHelper.checkNotNull(codec.getOperationName(), "Codecs must have an operation name");
+        CODECS.put(codec.getOperationName(), codec);
+    }
+
+    // Codec of the operation name, or null if there's none
+    public static BpmntOperationCodec get(String operationName) {
+        BpmnHelper.checkNotNull(operationName, "Argument operationName must not be null");
+        return CODECS.get(operationName);
+    }
+
+    // Encoding and decoding
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Operations without a codec generate their extension themselves
+    static void encode(BpmntOperation operation, Process process) {
+        BpmntOperationCodec codec = CODECS.get(operation.getName());
+        if (codec == null) {
+            operation.generateExtensionElement(process);
+        }
+        else {
+            codec.encode(operation, process);
+        }
+    }
+
+    // Operation stored as an extension of a process, or null if no codec decodes it
+    static BpmntOperation decodeProcessExtension(String operationName, ExtensionAttributes attributes) {
+        BpmntOperationCodec codec = CODECS.get(operationName);
+        if (codec == null || codec.isContainerExtension()) {
+            return null;
+        }
+        return withExecutionOrder(codec.decode(attributes, null), attributes);
+    }
+
+    // Operation stored as the extension of a subprocess container, or null if no codec decodes it
+    static BpmntOperation decodeContainerExtension(String operationName, ExtensionAttributes attributes, FlowElement element) {
+        BpmntOperationCodec codec = CODECS.get(operationName);
+        if (codec == null || !codec.isContainerExtension()) {
+            return null;
+        }
+        return withExecutionOrder(codec.decode(attributes, element), attributes);
+    }
+
+    static boolean isContainerExtension(String operationName) {
+        BpmntOperationCodec codec = CODECS.get(operationName);
+        return codec != null && codec.isContainerExtension();
+    }
+
+    private static BpmntOperation withExecutionOrder(BpmntOperation operation, ExtensionAttributes attributes) {
+        if (operation != null) {
+            operation.setExecutionOrder(Integer.parseInt(attributes.get(BpmntExtensionAttributes.ORDER)));
+        }
+        return operation;
+    }
+
+    // Built-in codecs
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Built-in operations generate their extension themselves
+    private abstract static class BuiltInCodec implements BpmntOperationCodec {
+        private final String operationName;
+        private final boolean containerExtension;
+
+        BuiltInCodec(Class<? extends BpmntOperation> operationType, boolean containerExtension) {
+            this.operationName = operationType.getSimpleName();
+            this.containerExtension = containerExtension;
+        }
+
+        @Override
+        public String getOperationName() {
+            return operationName;
+        }
+
+        @Override
+        public boolean isContainerExtension() {
+            return containerExtension;
+        }
+
+        @Override
+        public void encode(BpmntOperation operation, Process process) {
+            operation.generateExtensionElement(process);
+        }
+
+        @Override
+        public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+            return null;
+        }
+    }
+
+    // Process extensions
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    static {
+        register(new BuiltInCodec(Extend.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new Extend(attributes.get(BpmntExtensionAttributes.BASE_PROCESS_ID));
+            }
+        });
+        register(new BuiltInCodec(Suppress.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new Suppress(attributes.get(BpmntExtensionAttributes.SUPPRESSED_ELEMENT_ID));
+            }
+        });
+        register(new BuiltInCodec(Modify.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new Modify(
+                        attributes.get(BpmntExtensionAttributes.MODIFIED_ELEMENT_ID),
+                        attributes.get(BpmntExtensionAttributes.PROPERTY),
+                        attributes.get(BpmntExtensionAttributes.VALUE)
+                );
+            }
+        });
+        register(new BuiltInCodec(Rename.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new Rename(
+                        attributes.get(BpmntExtensionAttributes.ELEMENT_ID),
+                        attributes.get(BpmntExtensionAttributes.NEW_NAME)
+                );
+            }
+        });
+        register(new BuiltInCodec(DeleteNode.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new DeleteNode(attributes.get(BpmntExtensionAttributes.NODE_ID));
+            }
+        });
+        register(new BuiltInCodec(DeleteFragment.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new DeleteFragment(
+                        attributes.get(BpmntExtensionAttributes.STARTING_NODE_ID),
+                        attributes.get(BpmntExtensionAttributes.ENDING_NODE_ID)
+                );
+            }
+        });
+        register(new BuiltInCodec(MoveNode.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new MoveNode(
+                        attributes.get(BpmntExtensionAttributes.NODE_ID),
+                        attributes.get(BpmntExtensionAttributes.NEW_POSITION_AFTER_OF_ID),
+                        attributes.get(BpmntExtensionAttributes.NEW_POSITION_BEFORE_OF_ID)
+                );
+            }
+        });
+        register(new BuiltInCodec(MoveFragment.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new MoveFragment(
+                        attributes.get(BpmntExtensionAttributes.STARTING_NODE_ID),
+                        attributes.get(BpmntExtensionAttributes.ENDING_NODE_ID),
+                        attributes.get(BpmntExtensionAttributes.NEW_POSITION_AFTER_OF_ID),
+                        attributes.get(BpmntExtensionAttributes.NEW_POSITION_BEFORE_OF_ID)
+                );
+            }
+        });
+        register(new BuiltInCodec(Parallelize.class, false) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new Parallelize(
+                        attributes.get(BpmntExtensionAttributes.STARTING_NODE_ID),
+                        attributes.get(BpmntExtensionAttributes.ENDING_NODE_ID)
+                );
+            }
+        });
+    }
+
+    // Container extensions
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    static {
+        register(new BuiltInCodec(Contribute.class, true) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new Contribute(element);
+            }
+        });
+        register(new BuiltInCodec(ContributeToParent.class, true) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new ContributeToParent(attributes.get(BpmntExtensionAttributes.PARENT_ELEMENT_ID), element);
+            }
+        });
+        register(new BuiltInCodec(InsertNode.class, true) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new InsertNode(
+                        attributes.get(BpmntExtensionAttributes.AFTER_OF_ID),
+                        attributes.get(BpmntExtensionAttributes.BEFORE_OF_ID),
+                        (FlowNode) element
+                );
+            }
+        });
+        register(new BuiltInCodec(ConditionalInsertNode.class, true) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new ConditionalInsertNode(
+                        attributes.get(BpmntExtensionAttributes.AFTER_OF_ID),
+                        attributes.get(BpmntExtensionAttributes.BEFORE_OF_ID),
+                        (FlowNode) element,
+                        attributes.get(BpmntExtensionAttributes.CONDITION),
+                        Boolean.parseBoolean(attributes.get(BpmntExtensionAttributes.IN_LOOP))
+                );
+            }
+        });
+        register(new BuiltInCodec(ReplaceNodeWithNode.class, true) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new ReplaceNodeWithNode(attributes.get(BpmntExtensionAttributes.REPLACED_NODE_ID), (FlowNode) element);
+            }
+        });
+        register(new BuiltInCodec(ReplaceFragmentWithNode.class, true) {
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new ReplaceFragmentWithNode(
+                        attributes.get(BpmntExtensionAttributes.STARTING_NODE_ID),
+                        attributes.get(BpmntExtensionAttributes.ENDING_NODE_ID),
+                        (FlowNode) element
+                );
+            }
+        });
+    }
+
+    // Operations stored as a model in their container
+    static {
+        register(new BuiltInCodec(InsertFragment.class, true) {});
+        register(new BuiltInCodec(ConditionalInsertFragment.class, true) {});
+        register(new BuiltInCodec(ReplaceNodeWithFragment.class, true) {});
+        register(new BuiltInCodec(ReplaceFragmentWithFragment.class, true) {});
+        register(new BuiltInCodec(Split.class, true) {});
+    }
+
+    // Discovered codecs
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    static {
+        for (BpmntOperationCodec codec: ServiceLoader.load(BpmntOperationCodec.class)) {
+            register(codec);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Operations applied by a replay of a BPMNt log, in execution order, with the time spent on each of them
+public class BpmntReplayReport {
+
+    private final List<BpmntOperation> operations;
+    private long[] durations;
+
+    public BpmntReplayReport(int expectedNumberOperations) {
+        this.operations = new ArrayList<BpmntOperation>(expectedNumberOperations);
+        this.durations = new long[Math.max(expectedNumberOperations, 1)];
+    }
+
+    public void addOperation(BpmntOperation operation, long durationNanos) {
+        if (operations.size() == durations.length) {
+            durations = Arrays.copyOf(durations, durations.length * 2);
+        }
+        durations[operations.size()] = durationNanos;
+        operations.add(operation);
+    }
+
+    public List<BpmntOperation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    public int getNumberOperations() {
+        return operations.size();
+    }
+
+    // Time spent on the operation at the given position of the replay
+    public long getDurationNanos(int index) {
+        if (index < 0 || index >= operations.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + operations.size());
+        }
+        return durations[index];
+    }
+
+    public long getTotalDurationNanos() {
+        long total = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            total += durations[i];
+        }
+        return total;
+    }
+
+    // Operation that took the longest to apply, or null if the replay was empty
+    public BpmntOperation getSlowestOperation() {
+        int slowest = -1;
+        for (int i = 0; i < operations.size(); i++) {
+            if (slowest < 0 || durations[i] > durations[slowest]) {
+                slowest = i;
+            }
+        }
+        return slowest < 0 ? null : operations.get(slowest);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("BpmntReplayReport[").append(operations.size()).append(" operations, ")
+          .append(getTotalDurationNanos() / 1000000).append(" ms]");
+        for (int i = 0; i < operations.size(); i++) {
+            BpmntOperation operation = operations.get(i);
+            sb.append("\n  ").append(operation.getExecutionOrder()).append(' ').append(operation.getName())
+              .append(": ").append(durations[i] / 1000).append(" us");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,9 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+// How BpmntModelInstance keeps the model snapshots taken while replaying its BPMNt log
+public enum BpmntSnapshotStorage {
+    // Detached copies of the DOM tree, fastest to restore
+    IN_MEMORY,
+    // Deflated XML, several times smaller but restored by parsing
+    COMPRESSED
+}
@@ -0,0 +1,204 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
+import org.prisma.processhub.bpmn.manipulation.impl.bpmnt.BpmntModelInstanceImpl;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnElementHandler;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnHelper;
+import org.prisma.processhub.bpmn.manipulation.util.ContentHash;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Cache of tailored variants materialized from a base model and a BPMNt log
+// Variants are keyed by the content hash of the base model and a rolling hash of the operation signatures,
+// so a log that extends a cached one only replays its new operations.
+// Callers always get a copy of the cached model. The least recently used variants are evicted first.
+public class VariantCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, BpmntModelInstance> variants;
+
+    private long hits;
+    private long partialHits;
+    private long misses;
+    private long evictions;
+
+    public VariantCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public VariantCache(int maxEntries) {
+        BpmnHelper.checkInvalidArgument(maxEntries < 1, "Argument maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.variants = new LinkedHashMap<Key, BpmntModelInstance>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, BpmntModelInstance> eldest) {
+                if (size() > VariantCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Materialization
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Returns the variant obtained by executing the given log on the base model
+    // The base model is left untouched and the returned model may be freely changed by the caller
+    public BpmntModelInstance materialize(BpmnModelInstance baseModel, List<BpmntOperation> bpmntLog) {
+        BpmnHelper.checkNotNull(baseModel, "Argument baseModel must not be null");
+        BpmnHelper.checkNotNull(bpmntLog, "Argument bpmntLog must not be null");
+
+        List<BpmntOperation> operations = BpmntModelInstanceImpl.sortByExecutionOrder(bpmntLog);
+
+        // Key of every prefix of the log, the one at index i covering its first i operations
+        long baseHash = ContentHash.of(baseModel);
+        Key[] keys = new Key[operations.size() + 1];
+        long prefixHash = baseHash;
+        keys[0] = new Key(baseHash, 0, prefixHash);
+        for (int i = 0; i < operations.size(); i++) {
+            prefixHash = ContentHash.combine(prefixHash, operations.get(i).getSignature());
+            keys[i + 1] = new Key(baseHash, i + 1, prefixHash);
+        }
+
+        // Look for the longest cached prefix
+        BpmntModelInstance variant = null;
+        int replayFrom = 0;
+        synchronized (this) {
+            for (int i = operations.size(); i > 0 && variant == null; i--) {
+                BpmntModelInstance cached = variants.get(keys[i]);
+                if (cached != null) {
+                    variant = BpmnElementHandler.copyModelInstance(cached);
+                    replayFrom = i;
+                }
+            }
+            if (replayFrom == operations.size() && variant != null) {
+                hits++;
+            }
+            else if (variant != null) {
+                partialHits++;
+            }
+            else {
+                misses++;
+            }
+        }
+        if (replayFrom == operations.size() && variant != null) {
+            return variant;
+        }
+
+        if (variant == null) {
+            variant = BpmnElementHandler.copyModelInstanceToBpmnt(baseModel);
+        }
+        variant.setBpmntLog(new ArrayList<BpmntOperation>(operations));
+
+        variant.beginBatch();
+        boolean completed = false;
+        try {
+            for (BpmntOperation op: operations.subList(replayFrom, operations.size())) {
+                op.execute(variant);
+            }
+            completed = true;
+        }
+        finally {
+            if (completed) {
+                variant.commitBatch();
+            }
+            else {
+                BpmnElementHandler.commitBatch(variant, false);
+            }
+        }
+
+        BpmntModelInstance cached = BpmnElementHandler.copyModelInstance(variant);
+        synchronized (this) {
+            variants.put(keys[operations.size()], cached);
+        }
+        return variant;
+    }
+
+    // Statistics
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Requests served entirely from the cache
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    // Requests that resumed from a cached prefix of their log
+    public synchronized long getPartialHitCount() {
+        return partialHits;
+    }
+
+    // Requests that replayed their whole log
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = hits + partialHits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public synchronized int size() {
+        return variants.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized void clear() {
+        variants.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "VariantCache[size=" + variants.size() + "/" + maxEntries + ", hits=" + hits +
+                ", partialHits=" + partialHits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    // Internal helpers
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private static final class Key {
+        private final long baseHash;
+        private final int length;
+        private final long prefixHash;
+
+        private Key(long baseHash, int length, long prefixHash) {
+            this.baseHash = baseHash;
+            this.length = length;
+            this.prefixHash = prefixHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return baseHash == key.baseHash && length == key.length && prefixHash == key.prefixHash;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (baseHash ^ (baseHash >>> 32));
+            result = 31 * result + length;
+            result = 31 * result + (int) (prefixHash ^ (prefixHash >>> 32));
+            return result;
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package org.prisma.processhub.bpmn.manipulation.bpmnt.operation;
 
+import org.camunda.bpm.model.bpmn.Bpmn;
 import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.instance.BaseElement;
 import org.camunda.bpm.model.bpmn.instance.BpmnModelElementInstance;
+import org.camunda.bpm.model.bpmn.instance.Definitions;
+import org.camunda.bpm.model.bpmn.instance.ExtensionElements;
 import org.camunda.bpm.model.bpmn.instance.Process;
 import org.camunda.bpm.model.xml.instance.ModelElementInstance;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.constant.BpmntExtensionAttributes;
+import org.prisma.processhub.bpmn.manipulation.util.ContentHash;
 
-public abstract class BpmntOperation {
+public abstract class BpmntOperation implements Cloneable {
 
     protected int executionOrder;
 
+    private long signature;
+    private boolean signatureComputed;
+
     public String getName() { return this.getClass().getSimpleName(); }
 
     public int getExecutionOrder() {
@@ -21,11 +28,51 @@ public abstract class BpmntOperation {
         this.executionOrder = executionOrder;
     }
 
+    // Operation with the same arguments, whose execution order can be changed independently
+    // The arguments themselves are shared, as operations never change them.
+    public BpmntOperation copy() {
+        try {
+            return (BpmntOperation) super.clone();
+        }
+        catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     public abstract void execute(BpmnModelInstance modelInstance);
 
     public abstract void generateExtensionElement(Process process);
 
+    // Content hash of the operation and its arguments, regardless of its execution order
+    // Computed once from the extension element the operation generates in a scratch process
+    public synchronized long getSignature() {
+        if (!signatureComputed) {
+            BpmnModelInstance scratchModel = Bpmn.createEmptyModel();
+            Definitions definitions = scratchModel.newInstance(Definitions.class);
+            definitions.setTargetNamespace(BpmntExtensionAttributes.DOMAIN);
+            scratchModel.setDefinitions(definitions);
+            Process process = scratchModel.newInstance(Process.class);
+            process.setId(getName());
+            definitions.addChildElement(process);
+
+            int order = executionOrder;
+            executionOrder = 0;
+            try {
+                generateExtensionElement(process);
+            }
+            finally {
+                executionOrder = order;
+            }
+            signature = ContentHash.of(scratchModel);
+            signatureComputed = true;
+        }
+        return signature;
+    }
+
     protected ModelElementInstance initExtensionElement(BaseElement element) {
+        if (element.getExtensionElements() == null) {
+            element.setExtensionElements(element.getModelInstance().newInstance(ExtensionElements.class));
+        }
         // Add operation extensions with its attributes
         ModelElementInstance currentExtension = element.getExtensionElements()
                             .addExtensionElement(BpmntExtensionAttributes.DOMAIN, getName());
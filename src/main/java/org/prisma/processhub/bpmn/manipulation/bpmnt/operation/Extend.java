@@ -8,8 +8,7 @@ import org.camunda.bpm.model.xml.instance.ModelElementInstance;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.constant.BpmntExtensionAttributes;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnElementSearcher;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnHelper;
-
-import java.util.Date;
+import org.prisma.processhub.bpmn.manipulation.util.IdAllocator;
 
 public class Extend extends BpmntOperation {
     private String baseProcessId;
@@ -25,7 +24,7 @@ public class Extend extends BpmntOperation {
     private String generateNewProcessId(String baseProcessId) {
         String newId;
         if (baseProcessId.startsWith(ID_PREFIX)) {
-            newId = baseProcessId + "-" + (new Date()).getTime();
+            newId = baseProcessId + "-" + IdAllocator.getDefault().nextToken();
         } else {
             newId = ID_PREFIX + baseProcessId;
         }
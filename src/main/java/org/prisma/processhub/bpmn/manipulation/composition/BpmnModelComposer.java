@@ -7,13 +7,21 @@ import org.prisma.processhub.bpmn.manipulation.bpmnt.Bpmnt;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntModelInstance;
 import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmn;
 import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmnModelInstance;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnElementFactory;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnElementHandler;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnElementSearcher;
+import org.prisma.processhub.bpmn.manipulation.util.IdAllocator;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 // Restrictions:
 //  Input models must have exactly one "start event" and one "end event"
@@ -29,73 +37,89 @@ public class BpmnModelComposer
             return null;
         }
 
-        if (modelsToJoin.length == 1) {
-            return BpmnElementHandler.copyModelInstance(modelsToJoin[0]);
+        return joinModelsInSeries(Arrays.asList(modelsToJoin));
+    }
+
+    // The processes are spliced into an in-memory copy of the first model, so the input models are left untouched
+    public BpmnModelInstance joinModelsInSeries (List<BpmnModelInstance> modelsToJoin) {
+        if (modelsToJoin == null) {
+            return null;
         }
 
-        List<BpmnModelInstance> copiedModels = new ArrayList<BpmnModelInstance>();
-        for (int i = 0; i < modelsToJoin.length; i++) {
+        if (modelsToJoin.size() == 1) {
+            return BpmnElementHandler.copyModelInstance(modelsToJoin.iterator().next());
+        }
+
+        for (BpmnModelInstance mi: modelsToJoin) {
 
             // Imposes restriction of one start event and one end event per model
-            if (countStartEvents(modelsToJoin[i]) != 1 || countEndEvents(modelsToJoin[i]) != 1) {
+            if (countStartEvents(mi) != 1 || countEndEvents(mi) != 1) {
                 return null;
             }
-            if (i != 0) {
-                copiedModels.add(BpmnElementHandler.copyModelInstance(modelsToJoin[i]));
-            }
-            //BpmnElementHandler.generateUniqueIds(mi);
         }
 
-        // Use the first model as tailorable
-        InputStream stream = new ByteArrayInputStream(Bpmn.convertToString(modelsToJoin[0]).getBytes(StandardCharsets.UTF_8));
-        TailorableBpmnModelInstance baseModel = TailorableBpmn.readModelFromStream(stream);
-
-        EndEvent endEvent = BpmnElementSearcher.findEndEvent(baseModel);
-
-        // Concatenate models in series
-        for (BpmnModelInstance mi: copiedModels) {
-            baseModel.insert(null, endEvent, mi);
+        // Use the first model as base and insert the other ones before its end event
+        Iterator<BpmnModelInstance> modelIt = modelsToJoin.iterator();
+        ModelSplicer splicer = new ModelSplicer(modelIt.next());
+        for (int i = 1; modelIt.hasNext(); i++) {
+            splicer.appendInSeries(modelIt.next(), "in" + i + "_");
         }
 
-        InputStream stream2 = new ByteArrayInputStream(TailorableBpmn.convertToString(baseModel).getBytes(StandardCharsets.UTF_8));
-        return Bpmn.readModelFromStream(stream2);
+        return splicer.getResult();
     }
 
-    public BpmnModelInstance joinModelsInSeries (List<BpmnModelInstance> modelsToJoin) {
-        if (modelsToJoin == null) {
+    // Concatenates models read one at a time from a source, in series
+    // Each model is parsed, spliced into the composed model and dropped before the next one is read,
+    // so memory stays close to the size of the composed model rather than the sum of the inputs.
+    // Every stream taken from the source is closed, whether or not it could be composed. If a model is rejected,
+    // the composition stops there and the streams the source has not handed out yet are left to the caller.
+    public BpmnModelInstance joinModelStreamsInSeries (Iterator<? extends InputStream> modelStreams) {
+        if (modelStreams == null || !modelStreams.hasNext()) {
             return null;
         }
 
-        if (modelsToJoin.size() == 1) {
-            return BpmnElementHandler.copyModelInstance(modelsToJoin.iterator().next());
+        // The first model is parsed for the composition only, so it's spliced into directly
+        BpmnModelInstance baseModel = readModelAndClose(modelStreams.next());
+        if (countStartEvents(baseModel) != 1 || countEndEvents(baseModel) != 1) {
+            return null;
         }
+        ModelSplicer splicer = new ModelSplicer(baseModel, false);
 
-        List<BpmnModelInstance> copiedModels = new ArrayList<BpmnModelInstance>();
-        for (int i = 0; i < modelsToJoin.size(); i++) {
+        for (int i = 1; modelStreams.hasNext(); i++) {
+            BpmnModelInstance mi = readModelAndClose(modelStreams.next());
 
             // Imposes restriction of one start event and one end event per model
-            if (countStartEvents(modelsToJoin.get(i)) != 1 || countEndEvents(modelsToJoin.get(i)) != 1) {
+            if (countStartEvents(mi) != 1 || countEndEvents(mi) != 1) {
                 return null;
             }
-            if (i != 0) {
-                copiedModels.add(BpmnElementHandler.copyModelInstance(modelsToJoin.get(i)));
-            }
-            //BpmnElementHandler.generateUniqueIds(mi);
+            splicer.appendInSeries(mi, "in" + i + "_");
         }
 
-        // Use the first model as tailorable
-        InputStream stream = new ByteArrayInputStream(Bpmn.convertToString(modelsToJoin.get(0)).getBytes(StandardCharsets.UTF_8));
-        TailorableBpmnModelInstance baseModel = TailorableBpmn.readModelFromStream(stream);
+        return splicer.getResult();
+    }
 
-        EndEvent endEvent = BpmnElementSearcher.findEndEvent(baseModel);
+    // Composes models as described by an expression, such as series(a, parallel(b, c, series(d, e)), f)
+    public BpmnModelInstance compose (CompositionExpression expression) {
+        CompositionPlan plan = plan(expression);
+        return plan == null ? null : plan.execute();
+    }
 
-        // Concatenate models in series
-        for (BpmnModelInstance mi: copiedModels) {
-            baseModel.insert(null, endEvent, mi);
+    // Plans the composition of an expression, whose result size can be checked before executing it
+    // Nested series and parallel compositions are evaluated in a single pass, copying each model only once
+    public CompositionPlan plan (CompositionExpression expression) {
+        if (expression == null) {
+            return null;
         }
 
-        InputStream stream2 = new ByteArrayInputStream(TailorableBpmn.convertToString(baseModel).getBytes(StandardCharsets.UTF_8));
-        return Bpmn.readModelFromStream(stream2);
+        for (BpmnModelInstance mi: expression.getModelInstances()) {
+
+            // Imposes restriction of one start event and one end event per model
+            if (countStartEvents(mi) != 1 || countEndEvents(mi) != 1) {
+                return null;
+            }
+        }
+
+        return new CompositionPlan(expression);
     }
 
     // Concatenates models in parallel
@@ -133,11 +157,7 @@ public class BpmnModelComposer
         }
         // If not, create a parallel gateway after the start event
         else {
-            BpmnModelInstance tempModel = Bpmn.createProcess().startEvent().parallelGateway().endEvent().done();
-            BpmnElementHandler.generateUniqueIds(tempModel);
-            splitGateway = tempModel.getModelElementsByType(ParallelGateway.class).iterator().next();
-            BpmnElementHandler.suppress(tempModel, splitGateway.getIncoming());
-            BpmnElementHandler.suppress(tempModel, splitGateway.getOutgoing());
+            splitGateway = BpmnElementFactory.newParallelGateway();
             BpmnElementHandler.insertFlowNodeBetweenFlowNodes(resultModel, splitGateway, startEvent.getId(), firstFlowNodeResult.getId());
             splitGateway = resultModel.getModelElementById(splitGateway.getId());
         }
@@ -154,11 +174,7 @@ public class BpmnModelComposer
         }
         // If not, create a parallel gateway before the end event
         else {
-            BpmnModelInstance tempModel = Bpmn.createProcess().startEvent().parallelGateway().endEvent().done();
-            BpmnElementHandler.generateUniqueIds(tempModel);
-            joinGateway = tempModel.getModelElementsByType(ParallelGateway.class).iterator().next();
-            BpmnElementHandler.suppress(tempModel, joinGateway.getIncoming());
-            BpmnElementHandler.suppress(tempModel, joinGateway.getOutgoing());
+            joinGateway = BpmnElementFactory.newParallelGateway();
             BpmnElementHandler.insertFlowNodeBetweenFlowNodes(resultModel, joinGateway, lastFlowNodeResult.getId(), endEvent.getId());
             joinGateway = resultModel.getModelElementById(joinGateway.getId());
         }
@@ -252,11 +268,7 @@ public class BpmnModelComposer
         }
         // If not, create a parallel gateway after the start event
         else {
-            BpmnModelInstance tempModel = Bpmn.createProcess().startEvent().parallelGateway().endEvent().done();
-            BpmnElementHandler.generateUniqueIds(tempModel);
-            splitGateway = tempModel.getModelElementsByType(ParallelGateway.class).iterator().next();
-            BpmnElementHandler.suppress(tempModel, splitGateway.getIncoming());
-            BpmnElementHandler.suppress(tempModel, splitGateway.getOutgoing());
+            splitGateway = BpmnElementFactory.newParallelGateway();
             BpmnElementHandler.insertFlowNodeBetweenFlowNodes(resultModel, splitGateway, startEvent.getId(), firstFlowNodeResult.getId());
             splitGateway = resultModel.getModelElementById(splitGateway.getId());
         }
@@ -273,11 +285,7 @@ public class BpmnModelComposer
         }
         // If not, create a parallel gateway before the end event
         else {
-            BpmnModelInstance tempModel = Bpmn.createProcess().startEvent().parallelGateway().endEvent().done();
-            BpmnElementHandler.generateUniqueIds(tempModel);
-            joinGateway = tempModel.getModelElementsByType(ParallelGateway.class).iterator().next();
-            BpmnElementHandler.suppress(tempModel, joinGateway.getIncoming());
-            BpmnElementHandler.suppress(tempModel, joinGateway.getOutgoing());
+            joinGateway = BpmnElementFactory.newParallelGateway();
             BpmnElementHandler.insertFlowNodeBetweenFlowNodes(resultModel, joinGateway, lastFlowNodeResult.getId(), endEvent.getId());
             joinGateway = resultModel.getModelElementById(joinGateway.getId());
         }
@@ -336,6 +344,110 @@ public class BpmnModelComposer
         return resultModel;
     }
 
+    // Concatenates models in parallel without changing them
+    public BpmnModelInstance joinModelsInParallelPreservingInputs (BpmnModelInstance... modelsToJoin) {
+        if (modelsToJoin == null) {
+            return null;
+        }
+
+        return joinModelsInParallelPreservingInputs(Arrays.asList(modelsToJoin));
+    }
+
+    // Same result as joinModelsInParallel, except that the composed model is a new one and the inputs are only read
+    // Ids of an input already used in the composed model are namespaced while its elements are copied, so inputs
+    // need no defensive copy, and shared models can be composed by several threads at once.
+    // Every read of an input, from the count of its events to the copy of its elements, holds the lock of its document.
+    public BpmnModelInstance joinModelsInParallelPreservingInputs (List<BpmnModelInstance> modelsToJoin) {
+        if (modelsToJoin == null || modelsToJoin.isEmpty()) {
+            return null;
+        }
+
+        for (BpmnModelInstance mi: modelsToJoin) {
+
+            // Imposes restriction of one start event and one end event per model
+            synchronized (mi.getDocument().getDomSource().getNode()) {
+                if (countStartEvents(mi) != 1 || countEndEvents(mi) != 1) {
+                    return null;
+                }
+            }
+        }
+
+        ModelSplicer splicer = new ModelSplicer(modelsToJoin.get(0));
+        for (int i = 1; i < modelsToJoin.size(); i++) {
+            splicer.appendInParallel(splicer.prepare(modelsToJoin.get(i), "in" + i + "_", true));
+        }
+
+        return splicer.getResult();
+    }
+
+    // Concatenates models read one at a time from a source, in parallel
+    // Same result as joinModelsInParallelConcurrently, with the memory footprint of joinModelStreamsInSeries
+    // Streams are closed as in joinModelStreamsInSeries.
+    public BpmnModelInstance joinModelStreamsInParallel (Iterator<? extends InputStream> modelStreams) {
+        if (modelStreams == null || !modelStreams.hasNext()) {
+            return null;
+        }
+
+        BpmnModelInstance baseModel = readModelAndClose(modelStreams.next());
+        if (countStartEvents(baseModel) != 1 || countEndEvents(baseModel) != 1) {
+            return null;
+        }
+        ModelSplicer splicer = new ModelSplicer(baseModel, false);
+
+        String idPrefix = "fe-" + IdAllocator.getDefault().nextToken() + "x";
+        for (int i = 1; modelStreams.hasNext(); i++) {
+            BpmnModelInstance mi = readModelAndClose(modelStreams.next());
+
+            // Imposes restriction of one start event and one end event per model
+            if (countStartEvents(mi) != 1 || countEndEvents(mi) != 1) {
+                return null;
+            }
+            // The fragment is imported straight into the composed model, leaving nothing that refers to the input
+            splicer.appendInParallel(PreparedFragment.prepare(ProcessFragment.of(mi), splicer.getDocument(), idPrefix + i + "-", true));
+        }
+
+        return splicer.getResult();
+    }
+
+    // Concatenates models in parallel, preparing them concurrently on the common fork/join pool
+    public BpmnModelInstance joinModelsInParallelConcurrently (List<BpmnModelInstance> modelsToJoin) {
+        return joinModelsInParallelConcurrently(modelsToJoin, ForkJoinPool.commonPool());
+    }
+
+    // Same result as joinModelsInParallel, except that the input models are left untouched
+    // and only the ids of the models after the first one get a generated prefix
+    // Stripping the start and end events, renaming the ids and collecting the entry and exit flows of each model
+    // is split recursively between the threads of the pool; the prepared fragments are then merged once,
+    // into a single pair of split and join gateways.
+    public BpmnModelInstance joinModelsInParallelConcurrently (List<BpmnModelInstance> modelsToJoin, ForkJoinPool pool) {
+        if (modelsToJoin == null || modelsToJoin.isEmpty()) {
+            return null;
+        }
+
+        if (modelsToJoin.size() == 1) {
+            return BpmnElementHandler.copyModelInstance(modelsToJoin.get(0));
+        }
+
+        for (BpmnModelInstance mi: modelsToJoin) {
+
+            // Imposes restriction of one start event and one end event per model
+            if (countStartEvents(mi) != 1 || countEndEvents(mi) != 1) {
+                return null;
+            }
+        }
+
+        ModelSplicer splicer = new ModelSplicer(modelsToJoin.get(0));
+        PreparedFragment[] fragments = new PreparedFragment[modelsToJoin.size()];
+        String idPrefix = "fe-" + IdAllocator.getDefault().nextToken() + "x";
+        pool.invoke(new PrepareFragmentsTask(modelsToJoin, 1, modelsToJoin.size(), fragments, idPrefix,
+                splicer.getDocument().getImplementation()));
+
+        for (int i = 1; i < fragments.length; i++) {
+            splicer.appendInParallel(fragments[i]);
+        }
+        return splicer.getResult();
+    }
+
     public BpmnModelInstance newJoinModelsInParallel  (BpmnModelInstance... modelsToJoin) {
         if (modelsToJoin == null) {
             return null;
@@ -412,7 +524,66 @@ public class BpmnModelComposer
         return Bpmn.readModelFromStream(stream2);
     }
 
+    // Prepares the fragments of a range of models, splitting the range in halves while it's large
+    private static class PrepareFragmentsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 16;
+
+        private final List<BpmnModelInstance> models;
+        private final int from;
+        private final int to;
+        private final PreparedFragment[] fragments;
+        private final String idPrefix;
+        private final DOMImplementation domImplementation;
+
+        PrepareFragmentsTask(List<BpmnModelInstance> models, int from, int to, PreparedFragment[] fragments,
+                             String idPrefix, DOMImplementation domImplementation) {
+            this.models = models;
+            this.from = from;
+            this.to = to;
+            this.fragments = fragments;
+            this.idPrefix = idPrefix;
+            this.domImplementation = domImplementation;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                // Each task imports its fragments into a document of its own, adopted by the composed model on merge
+                Document document = domImplementation.createDocument(null, null, null);
+                for (int i = from; i < to; i++) {
+                    BpmnModelInstance model = models.get(i);
+                    Node modelDocument = model.getDocument().getDomSource().getNode();
+                    // The same model may be composed more than once, and DOM reads aren't thread-safe
+                    synchronized (modelDocument) {
+                        fragments[i] = PreparedFragment.prepare(ProcessFragment.of(model), document, idPrefix + i + "-", true);
+                    }
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PrepareFragmentsTask(models, from, middle, fragments, idPrefix, domImplementation),
+                          new PrepareFragmentsTask(models, middle, to, fragments, idPrefix, domImplementation));
+            }
+        }
+    }
+
     // Private methods
+    // Parses a model from a stream, closing the stream whether or not it could be parsed
+    private static BpmnModelInstance readModelAndClose(InputStream stream) {
+        try {
+            return Bpmn.readModelFromStream(stream);
+        }
+        finally {
+            try {
+                stream.close();
+            }
+            catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
     // Returns the number of start events found in the model
     private int countStartEvents(BpmnModelInstance modelInstance) {
         List<StartEvent> startEvents = (List) modelInstance.getModelElementsByType(StartEvent.class);
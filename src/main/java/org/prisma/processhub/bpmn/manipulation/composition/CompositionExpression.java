@@ -0,0 +1,87 @@
+package org.prisma.processhub.bpmn.manipulation.composition;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Tree of series and parallel compositions of models, such as series(a, parallel(b, c, series(d, e)), f)
+// Expressions only describe a composition: BpmnModelComposer plans and evaluates them in a single pass.
+public final class CompositionExpression {
+
+    enum Kind { MODEL, SERIES, PARALLEL }
+
+    private final Kind kind;
+    private final BpmnModelInstance modelInstance;
+    private final List<CompositionExpression> operands;
+
+    private CompositionExpression(Kind kind, BpmnModelInstance modelInstance, List<CompositionExpression> operands) {
+        this.kind = kind;
+        this.modelInstance = modelInstance;
+        this.operands = operands;
+    }
+
+    public static CompositionExpression model(BpmnModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        return new CompositionExpression(Kind.MODEL, modelInstance, Collections.<CompositionExpression>emptyList());
+    }
+
+    public static CompositionExpression series(CompositionExpression... operands) {
+        BpmnHelper.checkNotNull(operands, "Argument operands must not be null");
+        return series(Arrays.asList(operands));
+    }
+
+    public static CompositionExpression series(List<CompositionExpression> operands) {
+        return new CompositionExpression(Kind.SERIES, null, checkOperands(operands));
+    }
+
+    public static CompositionExpression parallel(CompositionExpression... operands) {
+        BpmnHelper.checkNotNull(operands, "Argument operands must not be null");
+        return parallel(Arrays.asList(operands));
+    }
+
+    public static CompositionExpression parallel(List<CompositionExpression> operands) {
+        return new CompositionExpression(Kind.PARALLEL, null, checkOperands(operands));
+    }
+
+    private static List<CompositionExpression> checkOperands(List<CompositionExpression> operands) {
+        BpmnHelper.checkNotNull(operands, "Argument operands must not be null");
+        BpmnHelper.checkInvalidArgument(operands.isEmpty(), "A composition needs at least one operand");
+        for (CompositionExpression operand: operands) {
+            BpmnHelper.checkNotNull(operand, "Operands must not be null");
+        }
+        return Collections.unmodifiableList(new ArrayList<CompositionExpression>(operands));
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    // Model of a MODEL expression
+    BpmnModelInstance getModelInstance() {
+        return modelInstance;
+    }
+
+    List<CompositionExpression> getOperands() {
+        return operands;
+    }
+
+    // Models of the leaves of the expression, in evaluation order
+    List<BpmnModelInstance> getModelInstances() {
+        List<BpmnModelInstance> modelInstances = new ArrayList<BpmnModelInstance>();
+        collectModelInstances(modelInstances);
+        return modelInstances;
+    }
+
+    private void collectModelInstances(List<BpmnModelInstance> modelInstances) {
+        if (kind == Kind.MODEL) {
+            modelInstances.add(modelInstance);
+        }
+        for (CompositionExpression operand: operands) {
+            operand.collectModelInstances(modelInstances);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.prisma.processhub.bpmn.manipulation.composition;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.FlowNode;
+import org.camunda.bpm.model.bpmn.instance.SequenceFlow;
+import org.camunda.bpm.model.xml.type.ModelElementType;
+import org.prisma.processhub.bpmn.manipulation.util.IdAllocator;
+import org.w3c.dom.Element;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Single-pass evaluation plan of a CompositionExpression
+// Executing the plan copies the first model of the expression once as the composed model and imports every other
+// leaf into it once, combining the fragments bottom-up and creating each gateway once. The size of the result is
+// computed from the leaves beforehand, so it's known before anything is copied.
+// Leaf models are only read, but must not change between planning and execution.
+public final class CompositionPlan {
+
+    private final CompositionExpression expression;
+    private final int nodeCount;
+    private final int flowCount;
+
+    CompositionPlan(CompositionExpression expression) {
+        this.expression = expression;
+        Shape shape = shapeOf(expression, false);
+
+        // The start and end events of the composed model, and the gateways around a fragment with several branches
+        int nodes = shape.nodes + 2;
+        int flows = shape.flows;
+        if (shape.isEmpty()) {
+            flows++;
+        }
+        else {
+            if (shape.entries > 1) {
+                nodes++;
+                flows++;
+            }
+            if (shape.exits > 1) {
+                nodes++;
+                flows++;
+            }
+        }
+        this.nodeCount = nodes;
+        this.flowCount = flows;
+    }
+
+    // Number of flow nodes of the composed model, nested ones included
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    // Number of sequence flows of the composed model, nested ones included
+    public int getFlowCount() {
+        return flowCount;
+    }
+
+    public BpmnModelInstance execute() {
+        Evaluation evaluation = new Evaluation(expression.getModelInstances().get(0));
+        evaluation.splicer.attach(evaluation.evaluate(expression, false));
+        return evaluation.splicer.getResult();
+    }
+
+    // Evaluation
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private static final class Evaluation {
+        private final ModelSplicer splicer;
+        private final String idPrefix = "fe-" + IdAllocator.getDefault().nextToken() + "x";
+        private boolean baseDetached;
+        private int leafIndex;
+
+        Evaluation(BpmnModelInstance baseModel) {
+            this.splicer = new ModelSplicer(baseModel);
+        }
+
+        // Leaves of parallel compositions are flattened, as in BpmnModelComposer.joinModelsInParallel
+        PreparedFragment evaluate(CompositionExpression expression, boolean flattenGateways) {
+            switch (expression.getKind()) {
+                case MODEL:
+                    leafIndex++;
+                    if (!baseDetached) {
+                        // The first leaf is already in the composed model and keeps its ids
+                        baseDetached = true;
+                        return splicer.detachBase(flattenGateways);
+                    }
+                    return PreparedFragment.prepare(ProcessFragment.of(expression.getModelInstance()), splicer.getDocument(),
+                            idPrefix + leafIndex + "-", flattenGateways);
+                case SERIES:
+                    return splicer.inSeries(evaluateOperands(expression, false));
+                default:
+                    return splicer.inParallel(evaluateOperands(expression, true));
+            }
+        }
+
+        private List<PreparedFragment> evaluateOperands(CompositionExpression expression, boolean flattenGateways) {
+            List<PreparedFragment> fragments = new ArrayList<PreparedFragment>(expression.getOperands().size());
+            for (CompositionExpression operand: expression.getOperands()) {
+                fragments.add(evaluate(operand, flattenGateways));
+            }
+            return fragments;
+        }
+    }
+
+    // Planning
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Size of a fragment and number of its entry and exit flows, following the rules of ModelSplicer
+    private static final class Shape {
+        int nodes;
+        int flows;
+        int entries;
+        int exits;
+
+        boolean isEmpty() {
+            return entries == 0;
+        }
+    }
+
+    private static Shape shapeOf(CompositionExpression expression, boolean flattenGateways) {
+        switch (expression.getKind()) {
+            case MODEL:
+                return shapeOf(expression.getModelInstance(), flattenGateways);
+            case SERIES:
+                Shape series = new Shape();
+                for (CompositionExpression operand: expression.getOperands()) {
+                    Shape shape = shapeOf(operand, false);
+                    if (shape.isEmpty()) {
+                        continue;
+                    }
+                    if (!series.isEmpty()) {
+                        // Several flows are joined, or split, by a new gateway and a flow;
+                        // the flow leaving one operand then replaces the flow entering the next one
+                        if (series.exits > 1) {
+                            series.nodes++;
+                            series.flows++;
+                        }
+                        if (shape.entries > 1) {
+                            series.nodes++;
+                            series.flows++;
+                        }
+                        series.flows--;
+                    }
+                    else {
+                        series.entries = shape.entries;
+                    }
+                    series.nodes += shape.nodes;
+                    series.flows += shape.flows;
+                    series.exits = shape.exits;
+                }
+                return series;
+            default:
+                Shape parallel = new Shape();
+                for (CompositionExpression operand: expression.getOperands()) {
+                    Shape shape = shapeOf(operand, true);
+                    parallel.nodes += shape.nodes;
+                    parallel.flows += shape.flows;
+                    parallel.entries += shape.entries;
+                    parallel.exits += shape.exits;
+                }
+                return parallel;
+        }
+    }
+
+    // Count what a leaf brings to the composed model, reading its DOM without copying it
+    private static Shape shapeOf(BpmnModelInstance modelInstance, boolean flattenGateways) {
+        Shape shape = new Shape();
+        ProcessFragment fragment = ProcessFragment.of(modelInstance);
+        if (fragment.isEmpty()) {
+            return shape;
+        }
+
+        Set<Element> excluded = new HashSet<Element>();
+        List<Element> entryFlows = new ArrayList<Element>();
+        List<Element> exitFlows = new ArrayList<Element>();
+        entryFlows.add(fragment.entryFlow);
+        exitFlows.add(fragment.exitFlow);
+        if (flattenGateways) {
+            PreparedFragment.flatten(fragment, excluded, entryFlows, exitFlows);
+        }
+        shape.entries = entryFlows.size();
+        shape.exits = exitFlows.size();
+
+        Deque<Element> pending = new ArrayDeque<Element>();
+        for (Element element: fragment.flowElements) {
+            if (!excluded.contains(element)) {
+                pending.push(element);
+            }
+        }
+        while (!pending.isEmpty()) {
+            Element element = pending.pop();
+            ModelElementType type = modelInstance.getModel().getTypeForName(element.getNamespaceURI(), element.getLocalName());
+            if (type != null && FlowNode.class.isAssignableFrom(type.getInstanceType())) {
+                shape.nodes++;
+            }
+            else if (type != null && SequenceFlow.class.isAssignableFrom(type.getInstanceType())) {
+                shape.flows++;
+            }
+            for (Element child = ProcessFragment.firstChild(element); child != null; child = ProcessFragment.nextSibling(child)) {
+                pending.push(child);
+            }
+        }
+        return shape;
+    }
+}
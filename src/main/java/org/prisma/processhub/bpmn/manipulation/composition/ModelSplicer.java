@@ -0,0 +1,461 @@
+package org.prisma.processhub.bpmn.manipulation.composition;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.impl.BpmnModelConstants;
+import org.camunda.bpm.model.bpmn.instance.FlowElement;
+import org.camunda.bpm.model.bpmn.instance.ParallelGateway;
+import org.camunda.bpm.model.bpmn.instance.SequenceFlow;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnElementHandler;
+import org.prisma.processhub.bpmn.manipulation.util.FlowGraphIndex;
+import org.prisma.processhub.bpmn.manipulation.util.IdAllocator;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Splices the processes of input models into a single composed model, working directly on the DOM
+// The composed model starts as an in-memory copy of a base model, or as the base model itself. The flow elements of every further input are
+// imported into its document in one pass, and connected in place by rewiring the sequence flows around them,
+// so composing n models costs time linear in their total size. Input models are only read.
+final class ModelSplicer {
+
+    private final BpmnModelInstance resultModel;
+    private final Document document;
+    private final Element process;
+    private final Element startEvent;
+    private final Element endEvent;
+    private final Set<String> ids = new HashSet<String>();
+
+    // Single sequence flows leaving the start event and reaching the end event of the composed model
+    private Element headFlow;
+    private Element tailFlow;
+
+    // Parallel gateways opening and closing the composed process, created on the first parallel splice
+    private Element splitGateway;
+    private Element joinGateway;
+
+    // Flow elements are inserted before the artifacts of the composed process, if any
+    private Element firstArtifact;
+
+    ModelSplicer(BpmnModelInstance baseModel) {
+        this(baseModel, true);
+    }
+
+    // Without a copy, the base model itself becomes the composed model
+    ModelSplicer(BpmnModelInstance baseModel, boolean copyBaseModel) {
+        if (copyBaseModel) {
+            // Shared models may be read by several compositions at once, and DOM reads aren't thread-safe
+            synchronized (baseModel.getDocument().getDomSource().getNode()) {
+                resultModel = BpmnElementHandler.copyModelInstance(baseModel);
+            }
+        }
+        else {
+            resultModel = baseModel;
+        }
+        ProcessFragment base = ProcessFragment.of(resultModel);
+        document = base.document;
+        process = base.process;
+        startEvent = base.startEvent;
+        endEvent = base.endEvent;
+        headFlow = base.entryFlow;
+        tailFlow = base.exitFlow;
+        firstArtifact = base.artifacts.isEmpty() ? null : base.artifacts.get(0);
+        collectIds(document.getDocumentElement(), ids);
+    }
+
+    Document getDocument() {
+        return document;
+    }
+
+    // The composed model, with its flow graph index resynchronized with the spliced DOM
+    BpmnModelInstance getResult() {
+        FlowGraphIndex.invalidate(resultModel);
+        return resultModel;
+    }
+
+    // Import the process of a model, namespacing only the ids that are already used in the composed model
+    PreparedFragment prepare(BpmnModelInstance modelInstance, String idNamespace, boolean flattenGateways) {
+        synchronized (modelInstance.getDocument().getDomSource().getNode()) {
+            return PreparedFragment.prepare(ProcessFragment.of(modelInstance), document, idNamespace, ids, flattenGateways);
+        }
+    }
+
+    // Serial composition
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Insert the process of a model between the last node and the end event of the composed model
+    // Ids already used in the composed model are namespaced, so the same or overlapping models can be composed.
+    void appendInSeries(BpmnModelInstance modelInstance, String idNamespace) {
+        appendInSeries(prepare(modelInstance, idNamespace, false));
+    }
+
+    void appendInSeries(PreparedFragment fragment) {
+        if (fragment.isEmpty()) {
+            return;
+        }
+        if (fragment.entryFlows.size() != 1 || fragment.exitFlows.size() != 1) {
+            throw new IllegalArgumentException("Fragments composed in series must have a single entry and a single exit flow");
+        }
+
+        // The tail flow of the composed model replaces the entry flow of the fragment
+        Element entryFlow = fragment.entryFlows.get(0);
+        fragment.removeFlowElement(entryFlow);
+        insert(fragment);
+
+        Element entryNode = document.getElementById(entryFlow.getAttribute("targetRef"));
+        tailFlow.setAttribute("targetRef", entryNode.getAttribute("id"));
+        replaceReference(entryNode, "incoming", entryFlow.getAttribute("id"), tailFlow.getAttribute("id"));
+
+        // Lead the exit flow of the fragment to the end event of the composed model
+        Element exitFlow = fragment.exitFlows.get(0);
+        exitFlow.setAttribute("targetRef", endEvent.getAttribute("id"));
+        replaceReference(endEvent, "incoming", tailFlow.getAttribute("id"), exitFlow.getAttribute("id"));
+        tailFlow = exitFlow;
+    }
+
+    // Parallel composition
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Add a fragment as a new branch between the split and join gateways of the composed model
+    void appendInParallel(PreparedFragment fragment) {
+        if (fragment.isEmpty()) {
+            return;
+        }
+        initParallelGateways();
+        insert(fragment);
+
+        for (Element entryFlow: fragment.entryFlows) {
+            entryFlow.setAttribute("sourceRef", splitGateway.getAttribute("id"));
+            replaceReference(splitGateway, "outgoing", null, entryFlow.getAttribute("id"));
+        }
+        for (Element exitFlow: fragment.exitFlows) {
+            exitFlow.setAttribute("targetRef", joinGateway.getAttribute("id"));
+            replaceReference(joinGateway, "incoming", null, exitFlow.getAttribute("id"));
+        }
+    }
+
+    // Reuse the parallel gateways that open and close the base process, or create them
+    private void initParallelGateways() {
+        if (splitGateway != null) {
+            return;
+        }
+
+        Element firstNode = document.getElementById(headFlow.getAttribute("targetRef"));
+        if ("parallelGateway".equals(firstNode.getLocalName())) {
+            splitGateway = firstNode;
+        }
+        else {
+            // start event -> new flow -> split gateway -> head flow -> first node
+            splitGateway = createFlowElement(ParallelGateway.class, "parallelGateway");
+            connect(startEvent, splitGateway);
+            removeReference(startEvent, "outgoing", headFlow.getAttribute("id"));
+            headFlow.setAttribute("sourceRef", splitGateway.getAttribute("id"));
+            replaceReference(splitGateway, "outgoing", null, headFlow.getAttribute("id"));
+        }
+
+        Element lastNode = document.getElementById(tailFlow.getAttribute("sourceRef"));
+        if ("parallelGateway".equals(lastNode.getLocalName()) && lastNode != splitGateway) {
+            joinGateway = lastNode;
+        }
+        else {
+            // last node -> tail flow -> join gateway -> new flow -> end event
+            joinGateway = createFlowElement(ParallelGateway.class, "parallelGateway");
+            Element flow = connect(joinGateway, endEvent);
+            removeReference(endEvent, "incoming", tailFlow.getAttribute("id"));
+            tailFlow.setAttribute("targetRef", joinGateway.getAttribute("id"));
+            replaceReference(joinGateway, "incoming", null, tailFlow.getAttribute("id"));
+            tailFlow = flow;
+        }
+    }
+
+    // Fragment composition
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Take the process of the base model out of the composed model, to be composed like any other fragment
+    // The start and end events stay, unconnected until a fragment is attached between them.
+    PreparedFragment detachBase(boolean flattenGateways) {
+        removeReference(startEvent, "outgoing", headFlow.getAttribute("id"));
+        removeReference(endEvent, "incoming", tailFlow.getAttribute("id"));
+        PreparedFragment base = PreparedFragment.detach(ProcessFragment.of(resultModel), flattenGateways);
+        headFlow = null;
+        tailFlow = null;
+        firstArtifact = null;
+        ids.removeAll(base.ids);
+        return base;
+    }
+
+    // Fragment running the given fragments one after the other
+    // Fragments are combined without being attached, so the first one takes over the elements of the other ones.
+    PreparedFragment inSeries(List<PreparedFragment> fragments) {
+        PreparedFragment result = null;
+        for (PreparedFragment fragment: fragments) {
+            if (fragment.isEmpty()) {
+                continue;
+            }
+            if (result == null) {
+                result = fragment;
+                continue;
+            }
+
+            Element exitFlow = result.exitFlows.size() == 1 ? result.exitFlows.get(0) : join(result, result.exitFlows);
+            result.absorb(fragment);
+            Element entryFlow = fragment.entryFlows.size() == 1 ? fragment.entryFlows.get(0) : split(result, fragment.entryFlows);
+
+            // The exit flow of a fragment takes the place of the entry flow of the next one
+            Element entryNode = result.flowElementsById.get(entryFlow.getAttribute("targetRef"));
+            exitFlow.setAttribute("targetRef", entryNode.getAttribute("id"));
+            replaceReference(entryNode, "incoming", entryFlow.getAttribute("id"), exitFlow.getAttribute("id"));
+            result.removeFlowElement(entryFlow);
+
+            result.exitFlows.clear();
+            result.exitFlows.addAll(fragment.exitFlows);
+        }
+        return result != null ? result : fragments.get(0);
+    }
+
+    // Fragment running the given fragments side by side, entered and left through all of their entry and exit flows
+    PreparedFragment inParallel(List<PreparedFragment> fragments) {
+        PreparedFragment result = null;
+        for (PreparedFragment fragment: fragments) {
+            if (fragment.isEmpty()) {
+                continue;
+            }
+            if (result == null) {
+                result = fragment;
+                continue;
+            }
+            result.absorb(fragment);
+            result.entryFlows.addAll(fragment.entryFlows);
+            result.exitFlows.addAll(fragment.exitFlows);
+        }
+        return result != null ? result : fragments.get(0);
+    }
+
+    // Attach a fragment between the start and end events of the composed model, once its base was detached
+    // Fragments with several entry or exit flows are opened and closed by parallel gateways.
+    void attach(PreparedFragment fragment) {
+        if (fragment.isEmpty()) {
+            headFlow = connect(startEvent, endEvent);
+            tailFlow = headFlow;
+            return;
+        }
+        insert(fragment);
+
+        if (fragment.entryFlows.size() == 1) {
+            headFlow = fragment.entryFlows.get(0);
+            headFlow.setAttribute("sourceRef", startEvent.getAttribute("id"));
+            replaceReference(startEvent, "outgoing", null, headFlow.getAttribute("id"));
+        }
+        else {
+            splitGateway = createFlowElement(ParallelGateway.class, "parallelGateway");
+            headFlow = connect(startEvent, splitGateway);
+            for (Element entryFlow: fragment.entryFlows) {
+                entryFlow.setAttribute("sourceRef", splitGateway.getAttribute("id"));
+                replaceReference(splitGateway, "outgoing", null, entryFlow.getAttribute("id"));
+            }
+        }
+
+        if (fragment.exitFlows.size() == 1) {
+            tailFlow = fragment.exitFlows.get(0);
+            tailFlow.setAttribute("targetRef", endEvent.getAttribute("id"));
+            replaceReference(endEvent, "incoming", null, tailFlow.getAttribute("id"));
+        }
+        else {
+            joinGateway = createFlowElement(ParallelGateway.class, "parallelGateway");
+            for (Element exitFlow: fragment.exitFlows) {
+                exitFlow.setAttribute("targetRef", joinGateway.getAttribute("id"));
+                replaceReference(joinGateway, "incoming", null, exitFlow.getAttribute("id"));
+            }
+            tailFlow = connect(joinGateway, endEvent);
+        }
+    }
+
+    // Lead flows to a new join gateway of the fragment, returning the flow that leaves it
+    private Element join(PreparedFragment fragment, List<Element> flows) {
+        Element gateway = newFlowElement(ParallelGateway.class, "parallelGateway");
+        for (Element flow: flows) {
+            flow.setAttribute("targetRef", gateway.getAttribute("id"));
+            replaceReference(gateway, "incoming", null, flow.getAttribute("id"));
+        }
+        Element flow = newFlowElement(SequenceFlow.class, "sequenceFlow");
+        flow.setAttribute("sourceRef", gateway.getAttribute("id"));
+        replaceReference(gateway, "outgoing", null, flow.getAttribute("id"));
+        fragment.addFlowElement(gateway);
+        fragment.addFlowElement(flow);
+        fragment.ids.add(gateway.getAttribute("id"));
+        fragment.ids.add(flow.getAttribute("id"));
+        return flow;
+    }
+
+    // Lead flows out of a new split gateway of the fragment, returning the flow that reaches it
+    private Element split(PreparedFragment fragment, List<Element> flows) {
+        Element gateway = newFlowElement(ParallelGateway.class, "parallelGateway");
+        Element flow = newFlowElement(SequenceFlow.class, "sequenceFlow");
+        flow.setAttribute("targetRef", gateway.getAttribute("id"));
+        replaceReference(gateway, "incoming", null, flow.getAttribute("id"));
+        for (Element entryFlow: flows) {
+            entryFlow.setAttribute("sourceRef", gateway.getAttribute("id"));
+            replaceReference(gateway, "outgoing", null, entryFlow.getAttribute("id"));
+        }
+        fragment.addFlowElement(gateway);
+        fragment.addFlowElement(flow);
+        fragment.ids.add(gateway.getAttribute("id"));
+        fragment.ids.add(flow.getAttribute("id"));
+        return flow;
+    }
+
+    // DOM operations
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Attach the elements of a prepared fragment to the composed process
+    private void insert(PreparedFragment fragment) {
+        // Check every id before changing the composed model
+        for (String id: fragment.ids) {
+            if (ids.contains(id)) {
+                throw new IllegalArgumentException("There is another element with id \'" + id + "\' in the composed model");
+            }
+        }
+        ids.addAll(fragment.ids);
+
+        // Attribute values like xsi:type may refer to the namespace prefixes of the input model
+        Element definitions = document.getDocumentElement();
+        for (Map.Entry<String, String> namespace: fragment.namespaces.entrySet()) {
+            if (!definitions.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, namespace.getKey())) {
+                definitions.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        XMLConstants.XMLNS_ATTRIBUTE + ":" + namespace.getKey(), namespace.getValue());
+            }
+        }
+
+        for (Element element: fragment.flowElements) {
+            process.insertBefore(adopt(element), firstArtifact);
+        }
+        for (Element element: fragment.artifacts) {
+            Element artifact = adopt(element);
+            process.appendChild(artifact);
+            if (firstArtifact == null) {
+                firstArtifact = artifact;
+            }
+        }
+    }
+
+    // Fragments prepared into another document are moved into the composed one
+    private Element adopt(Element element) {
+        if (element.getOwnerDocument() == document) {
+            return element;
+        }
+        Node adoptedElement = document.adoptNode(element);
+        if (adoptedElement == null) {
+            adoptedElement = document.importNode(element, true);
+        }
+        registerIds((Element) adoptedElement);
+        return (Element) adoptedElement;
+    }
+
+    private Element createFlowElement(Class<? extends FlowElement> type, String localName) {
+        Element element = newFlowElement(type, localName);
+        ids.add(element.getAttribute("id"));
+        process.insertBefore(element, firstArtifact);
+        return element;
+    }
+
+    // New flow element with a generated id, not attached to the composed model yet
+    private Element newFlowElement(Class<? extends FlowElement> type, String localName) {
+        Element element = document.createElementNS(BpmnModelConstants.BPMN20_NS, localName);
+        element.setPrefix(process.getPrefix());
+        String id;
+        do {
+            id = IdAllocator.getDefault().nextId(resultModel.getModel().getType(type).getTypeName());
+        } while (ids.contains(id));
+        element.setAttribute("id", id);
+        element.setIdAttribute("id", true);
+        return element;
+    }
+
+    // Connect two flow nodes with a new sequence flow
+    private Element connect(Element source, Element target) {
+        Element flow = createFlowElement(SequenceFlow.class, "sequenceFlow");
+        flow.setAttribute("sourceRef", source.getAttribute("id"));
+        flow.setAttribute("targetRef", target.getAttribute("id"));
+        replaceReference(source, "outgoing", null, flow.getAttribute("id"));
+        replaceReference(target, "incoming", null, flow.getAttribute("id"));
+        return flow;
+    }
+
+    private static void collectIds(Element root, Set<String> ids) {
+        Deque<Element> pending = new ArrayDeque<Element>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Element element = pending.pop();
+            if (element.hasAttribute("id")) {
+                ids.add(element.getAttribute("id"));
+            }
+            for (Element child = ProcessFragment.firstChild(element); child != null; child = ProcessFragment.nextSibling(child)) {
+                pending.push(child);
+            }
+        }
+    }
+
+    // Id attributes aren't kept when nodes change documents
+    private static void registerIds(Element root) {
+        Deque<Element> pending = new ArrayDeque<Element>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Element element = pending.pop();
+            if (element.hasAttribute("id")) {
+                element.setIdAttribute("id", true);
+            }
+            for (Element child = ProcessFragment.firstChild(element); child != null; child = ProcessFragment.nextSibling(child)) {
+                pending.push(child);
+            }
+        }
+    }
+
+    private static void removeReference(Element flowNode, String referenceName, String id) {
+        for (Element child = ProcessFragment.firstChild(flowNode); child != null; child = ProcessFragment.nextSibling(child)) {
+            if (referenceName.equals(child.getLocalName()) && id.equals(child.getTextContent().trim())) {
+                flowNode.removeChild(child);
+                return;
+            }
+        }
+    }
+
+    // Replace the id held by an incoming or outgoing reference of a flow node, or add the reference if oldId isn't there
+    private void replaceReference(Element flowNode, String referenceName, String oldId, String newId) {
+        Element lastReference = null;
+        for (Element child = ProcessFragment.firstChild(flowNode); child != null; child = ProcessFragment.nextSibling(child)) {
+            if (referenceName.equals(child.getLocalName())) {
+                if (oldId != null && oldId.equals(child.getTextContent().trim())) {
+                    child.setTextContent(newId);
+                    return;
+                }
+                lastReference = child;
+            }
+        }
+
+        Element reference = document.createElementNS(BpmnModelConstants.BPMN20_NS, referenceName);
+        reference.setPrefix(flowNode.getPrefix());
+        reference.setTextContent(newId);
+
+        // References come after documentation and extension elements, incoming ones before outgoing ones
+        Node position;
+        if (lastReference != null) {
+            position = lastReference.getNextSibling();
+        }
+        else {
+            Element child = ProcessFragment.firstChild(flowNode);
+            while (child != null && ("documentation".equals(child.getLocalName()) || "extensionElements".equals(child.getLocalName())
+                    || ("outgoing".equals(referenceName) && "incoming".equals(child.getLocalName())))) {
+                child = ProcessFragment.nextSibling(child);
+            }
+            position = child;
+        }
+        flowNode.insertBefore(reference, position);
+    }
+}
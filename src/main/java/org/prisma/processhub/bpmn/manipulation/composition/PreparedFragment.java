@@ -0,0 +1,293 @@
+package org.prisma.processhub.bpmn.manipulation.composition;
+
+import org.prisma.processhub.bpmn.manipulation.util.BpmnElementHandler;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+
+import javax.xml.XMLConstants;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Process fragment imported into a target document and ready to be spliced by a ModelSplicer
+// Preparing a fragment strips the start and end events, renames the ids and collects the sequence flows through
+// which the fragment is entered and left. It only reads the input model and only writes detached nodes
+// of the target document, so fragments of different models can be prepared concurrently, each one into its own document.
+// A ModelSplicer can also combine fragments into larger ones before attaching them.
+final class PreparedFragment {
+
+    // Imported flow elements and artifacts, not attached to the target document yet
+    final Set<Element> flowElements = new LinkedHashSet<Element>();
+    final List<Element> artifacts = new ArrayList<Element>();
+
+    // Flow elements by id, as detached elements can't be looked up through the document
+    final Map<String, Element> flowElementsById = new HashMap<String, Element>();
+
+    // Imported sequence flows whose source, respectively target, is to be set when the fragment is spliced
+    final List<Element> entryFlows = new ArrayList<Element>();
+    final List<Element> exitFlows = new ArrayList<Element>();
+
+    // Ids of all imported elements
+    final Set<String> ids = new HashSet<String>();
+
+    // Namespace declarations of the input model, by prefix
+    final Map<String, String> namespaces = new HashMap<String, String>();
+
+    private PreparedFragment() {}
+
+    // Import a fragment into the target document, prefixing its ids with idPrefix if it's not null
+    // If flattenGateways is set, a parallel gateway right after the start event (or right before the end event)
+    // is dropped and its outgoing (or incoming) flows become the entry (or exit) flows of the fragment.
+    static PreparedFragment prepare(ProcessFragment fragment, Document targetDocument, String idPrefix, boolean flattenGateways) {
+        return prepare(fragment, targetDocument, idPrefix, null, flattenGateways);
+    }
+
+    // Same as above, but only the ids found in reservedIds are prefixed, as many times as needed to be unique
+    static PreparedFragment prepare(ProcessFragment fragment, Document targetDocument, String idPrefix,
+                                    Set<String> reservedIds, boolean flattenGateways) {
+        PreparedFragment prepared = new PreparedFragment();
+        if (fragment.isEmpty()) {
+            return prepared;
+        }
+
+        Set<Element> excluded = new HashSet<Element>();
+        List<Element> entryFlows = new ArrayList<Element>();
+        List<Element> exitFlows = new ArrayList<Element>();
+        entryFlows.add(fragment.entryFlow);
+        exitFlows.add(fragment.exitFlow);
+        if (flattenGateways) {
+            flatten(fragment, excluded, entryFlows, exitFlows);
+        }
+
+        Map<String, String> idMapping = idPrefix == null ? new HashMap<String, String>() : mapIds(fragment, idPrefix, reservedIds);
+        Map<Element, Element> importedElements = new HashMap<Element, Element>();
+        for (Element element: fragment.flowElements) {
+            if (!excluded.contains(element)) {
+                Element importedElement = importElement(targetDocument, element, idMapping, prepared.ids);
+                prepared.addFlowElement(importedElement);
+                importedElements.put(element, importedElement);
+            }
+        }
+        for (Element element: fragment.artifacts) {
+            prepared.artifacts.add(importElement(targetDocument, element, idMapping, prepared.ids));
+        }
+        for (Element flow: entryFlows) {
+            prepared.entryFlows.add(importedElements.get(flow));
+        }
+        for (Element flow: exitFlows) {
+            prepared.exitFlows.add(importedElements.get(flow));
+        }
+
+        NamedNodeMap attributes = fragment.document.getDocumentElement().getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                prepared.namespaces.put(attribute.getLocalName(), attribute.getValue());
+            }
+        }
+        return prepared;
+    }
+
+    // Take the fragment out of its own process, keeping its elements and ids as they are
+    // Flattened gateways, and every element of an empty fragment, are dropped.
+    static PreparedFragment detach(ProcessFragment fragment, boolean flattenGateways) {
+        PreparedFragment detached = new PreparedFragment();
+        Set<Element> excluded = new HashSet<Element>();
+        List<Element> entryFlows = new ArrayList<Element>();
+        List<Element> exitFlows = new ArrayList<Element>();
+        entryFlows.add(fragment.entryFlow);
+        exitFlows.add(fragment.exitFlow);
+        if (flattenGateways && !fragment.isEmpty()) {
+            flatten(fragment, excluded, entryFlows, exitFlows);
+        }
+
+        for (Element element: fragment.flowElements) {
+            fragment.process.removeChild(element);
+            if (!fragment.isEmpty() && !excluded.contains(element)) {
+                detached.addFlowElement(element);
+                collectIds(element, detached.ids);
+            }
+        }
+        for (Element element: fragment.artifacts) {
+            fragment.process.removeChild(element);
+            if (!fragment.isEmpty()) {
+                detached.artifacts.add(element);
+                collectIds(element, detached.ids);
+            }
+        }
+        if (!fragment.isEmpty()) {
+            detached.entryFlows.addAll(entryFlows);
+            detached.exitFlows.addAll(exitFlows);
+        }
+        return detached;
+    }
+
+    // The start event leads straight to the end event
+    boolean isEmpty() {
+        return flowElements.isEmpty();
+    }
+
+    void addFlowElement(Element element) {
+        flowElements.add(element);
+        flowElementsById.put(element.getAttribute("id"), element);
+    }
+
+    void removeFlowElement(Element element) {
+        flowElements.remove(element);
+        flowElementsById.remove(element.getAttribute("id"));
+        ids.remove(element.getAttribute("id"));
+    }
+
+    // Take over the elements of another fragment, leaving its entry and exit flows to the caller
+    void absorb(PreparedFragment fragment) {
+        flowElements.addAll(fragment.flowElements);
+        flowElementsById.putAll(fragment.flowElementsById);
+        artifacts.addAll(fragment.artifacts);
+        ids.addAll(fragment.ids);
+        for (Map.Entry<String, String> namespace: fragment.namespaces.entrySet()) {
+            if (!namespaces.containsKey(namespace.getKey())) {
+                namespaces.put(namespace.getKey(), namespace.getValue());
+            }
+        }
+    }
+
+    // Replace the parallel gateways that open or close the fragment by their outgoing or incoming flows
+    // Only reads the fragment, so that the shape of a prepared fragment can be known in advance
+    static void flatten(ProcessFragment fragment, Set<Element> excluded, List<Element> entryFlows, List<Element> exitFlows) {
+        Map<String, Element> flowNodes = new HashMap<String, Element>();
+        Map<String, List<Element>> incomingFlows = new HashMap<String, List<Element>>();
+        Map<String, List<Element>> outgoingFlows = new HashMap<String, List<Element>>();
+        for (Element element: fragment.flowElements) {
+            if ("sequenceFlow".equals(element.getLocalName())) {
+                addFlow(incomingFlows, element.getAttribute("targetRef"), element);
+                addFlow(outgoingFlows, element.getAttribute("sourceRef"), element);
+            }
+            else {
+                flowNodes.put(element.getAttribute("id"), element);
+            }
+        }
+
+        Element splitGateway = flowNodes.get(fragment.getEntryNodeId());
+        Element joinGateway = flowNodes.get(fragment.getExitNodeId());
+        if (splitGateway == joinGateway) {
+            return;
+        }
+        if (isParallelGateway(splitGateway) && flowsOf(incomingFlows, fragment.getEntryNodeId()).size() == 1
+                && !flowsOf(outgoingFlows, fragment.getEntryNodeId()).isEmpty()) {
+            excluded.add(splitGateway);
+            excluded.add(fragment.entryFlow);
+            entryFlows.clear();
+            entryFlows.addAll(flowsOf(outgoingFlows, fragment.getEntryNodeId()));
+        }
+        if (isParallelGateway(joinGateway) && flowsOf(outgoingFlows, fragment.getExitNodeId()).size() == 1
+                && !flowsOf(incomingFlows, fragment.getExitNodeId()).isEmpty()) {
+            excluded.add(joinGateway);
+            excluded.add(fragment.exitFlow);
+            exitFlows.clear();
+            exitFlows.addAll(flowsOf(incomingFlows, fragment.getExitNodeId()));
+        }
+    }
+
+    private static List<Element> flowsOf(Map<String, List<Element>> flows, String nodeId) {
+        List<Element> nodeFlows = flows.get(nodeId);
+        return nodeFlows != null ? nodeFlows : Collections.<Element>emptyList();
+    }
+
+    private static void addFlow(Map<String, List<Element>> flows, String nodeId, Element flow) {
+        List<Element> nodeFlows = flows.get(nodeId);
+        if (nodeFlows == null) {
+            nodeFlows = new ArrayList<Element>(2);
+            flows.put(nodeId, nodeFlows);
+        }
+        nodeFlows.add(flow);
+    }
+
+    private static boolean isParallelGateway(Element element) {
+        return element != null && "parallelGateway".equals(element.getLocalName());
+    }
+
+    // Map every id of the fragment, or only the reserved ones if any, to a prefixed one
+    private static Map<String, String> mapIds(ProcessFragment fragment, String idPrefix, Set<String> reservedIds) {
+        Set<String> fragmentIds = new HashSet<String>();
+        for (Element element: fragment.flowElements) {
+            collectIds(element, fragmentIds);
+        }
+        for (Element element: fragment.artifacts) {
+            collectIds(element, fragmentIds);
+        }
+
+        Map<String, String> idMapping = new HashMap<String, String>();
+        for (String id: fragmentIds) {
+            if (reservedIds == null) {
+                idMapping.put(id, idPrefix + id);
+            }
+            else if (reservedIds.contains(id)) {
+                // The prefixed id must not clash with the other ids of the fragment either
+                String mappedId = idPrefix + id;
+                while (reservedIds.contains(mappedId) || fragmentIds.contains(mappedId)) {
+                    mappedId = idPrefix + mappedId;
+                }
+                idMapping.put(id, mappedId);
+            }
+        }
+        return idMapping;
+    }
+
+    private static void collectIds(Element root, Set<String> ids) {
+        Deque<Element> pending = new ArrayDeque<Element>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Element element = pending.pop();
+            if (element.hasAttribute("id")) {
+                ids.add(element.getAttribute("id"));
+            }
+            for (Element child = ProcessFragment.firstChild(element); child != null; child = ProcessFragment.nextSibling(child)) {
+                pending.push(child);
+            }
+        }
+    }
+
+    private static Element importElement(Document targetDocument, Element element, Map<String, String> idMapping, Set<String> ids) {
+        Element importedElement = (Element) targetDocument.importNode(element, true);
+        Deque<Element> pending = new ArrayDeque<Element>();
+        pending.push(importedElement);
+        while (!pending.isEmpty()) {
+            Element current = pending.pop();
+            if (current.hasAttribute("id")) {
+                String id = mapId(current.getAttribute("id"), idMapping);
+                current.setAttribute("id", id);
+                // Ids must be registered for the model to look elements up by id
+                current.setIdAttribute("id", true);
+                ids.add(id);
+            }
+            if (!idMapping.isEmpty()) {
+                for (String attribute: BpmnElementHandler.ID_REFERENCE_ATTRIBUTES) {
+                    if (current.hasAttribute(attribute)) {
+                        current.setAttribute(attribute, mapId(current.getAttribute(attribute), idMapping));
+                    }
+                }
+                if (BpmnElementHandler.ID_REFERENCE_ELEMENTS.contains(current.getLocalName()) && ProcessFragment.firstChild(current) == null) {
+                    current.setTextContent(mapId(current.getTextContent().trim(), idMapping));
+                }
+            }
+            for (Element child = ProcessFragment.firstChild(current); child != null; child = ProcessFragment.nextSibling(child)) {
+                pending.push(child);
+            }
+        }
+        return importedElement;
+    }
+
+    private static String mapId(String id, Map<String, String> idMapping) {
+        String mappedId = idMapping.get(id);
+        return mappedId != null ? mappedId : id;
+    }
+}
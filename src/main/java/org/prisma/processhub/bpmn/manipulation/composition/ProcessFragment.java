@@ -0,0 +1,160 @@
+package org.prisma.processhub.bpmn.manipulation.composition;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.impl.BpmnModelConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// DOM view of the process of an input model, as a fragment to be spliced into a composed model
+// The fragment is made of the flow elements between the start and end events, entered through the single
+// sequence flow leaving the start event and left through the single sequence flow reaching the end event.
+// Building it only reads the model.
+final class ProcessFragment {
+
+    // Process children that describe the process itself rather than its flow
+    private static final Set<String> PROCESS_PROPERTIES = new HashSet<String>(Arrays.asList(
+            "documentation", "extensionElements", "auditing", "monitoring", "property", "laneSet",
+            "ioSpecification", "ioBinding", "resourceRole", "performer", "humanPerformer", "potentialOwner",
+            "correlationSubscription", "supports"));
+
+    // Process children that must follow the flow elements
+    private static final Set<String> ARTIFACTS = new HashSet<String>(Arrays.asList(
+            "textAnnotation", "association", "group"));
+
+    final Document document;
+    final Element process;
+    final Element startEvent;
+    final Element endEvent;
+    final Element entryFlow;
+    final Element exitFlow;
+
+    // Flow elements and artifacts of the process, except the start and end events
+    final List<Element> flowElements = new ArrayList<Element>();
+    final List<Element> artifacts = new ArrayList<Element>();
+
+    private ProcessFragment(Element process, Element startEvent, Element endEvent, Element entryFlow, Element exitFlow) {
+        this.document = process.getOwnerDocument();
+        this.process = process;
+        this.startEvent = startEvent;
+        this.endEvent = endEvent;
+        this.entryFlow = entryFlow;
+        this.exitFlow = exitFlow;
+    }
+
+    static ProcessFragment of(BpmnModelInstance modelInstance) {
+        Document document = (Document) modelInstance.getDocument().getDomSource().getNode();
+        Element process = firstChild(document.getDocumentElement(), "process");
+        if (process == null) {
+            throw new IllegalArgumentException("Model has no process to compose");
+        }
+
+        Element startEvent = null;
+        Element endEvent = null;
+        List<Element> sequenceFlows = new ArrayList<Element>();
+        for (Element child = firstChild(process); child != null; child = nextSibling(child)) {
+            String name = child.getLocalName();
+            if ("startEvent".equals(name)) {
+                startEvent = checkSingle(startEvent, child, "start event");
+            }
+            else if ("endEvent".equals(name)) {
+                endEvent = checkSingle(endEvent, child, "end event");
+            }
+            else if ("sequenceFlow".equals(name)) {
+                sequenceFlows.add(child);
+            }
+        }
+        if (startEvent == null || endEvent == null) {
+            throw new IllegalArgumentException("Process \'" + process.getAttribute("id") + "\' must have a start event and an end event");
+        }
+
+        // Find the flows leaving the start event and reaching the end event
+        Element entryFlow = null;
+        Element exitFlow = null;
+        String startEventId = startEvent.getAttribute("id");
+        String endEventId = endEvent.getAttribute("id");
+        for (Element sequenceFlow: sequenceFlows) {
+            if (startEventId.equals(sequenceFlow.getAttribute("sourceRef"))) {
+                entryFlow = checkSingle(entryFlow, sequenceFlow, "sequence flow leaving its start event");
+            }
+            if (endEventId.equals(sequenceFlow.getAttribute("targetRef"))) {
+                exitFlow = checkSingle(exitFlow, sequenceFlow, "sequence flow reaching its end event");
+            }
+        }
+        if (entryFlow == null || exitFlow == null) {
+            throw new IllegalArgumentException("Start and end events of process \'" + process.getAttribute("id") + "\' must be connected");
+        }
+
+        ProcessFragment fragment = new ProcessFragment(process, startEvent, endEvent, entryFlow, exitFlow);
+        for (Element child = firstChild(process); child != null; child = nextSibling(child)) {
+            String name = child.getLocalName();
+            if (child == startEvent || child == endEvent || PROCESS_PROPERTIES.contains(name)) {
+                continue;
+            }
+            if (ARTIFACTS.contains(name)) {
+                fragment.artifacts.add(child);
+            }
+            else {
+                fragment.flowElements.add(child);
+            }
+        }
+        return fragment;
+    }
+
+    // First node of the fragment
+    String getEntryNodeId() {
+        return entryFlow.getAttribute("targetRef");
+    }
+
+    // Last node of the fragment
+    String getExitNodeId() {
+        return exitFlow.getAttribute("sourceRef");
+    }
+
+    // The start event leads straight to the end event, so there's nothing in between
+    boolean isEmpty() {
+        return entryFlow == exitFlow;
+    }
+
+    private static Element checkSingle(Element found, Element element, String description) {
+        if (found != null) {
+            Element process = (Element) element.getParentNode();
+            throw new IllegalArgumentException("Process \'" + process.getAttribute("id") + "\' must have a single " + description);
+        }
+        return element;
+    }
+
+    // DOM navigation
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    static Element firstChild(Element parent) {
+        return nextElement(parent.getFirstChild());
+    }
+
+    static Element nextSibling(Element element) {
+        return nextElement(element.getNextSibling());
+    }
+
+    // First child in the BPMN namespace with the given local name
+    static Element firstChild(Element parent, String localName) {
+        for (Element child = firstChild(parent); child != null; child = nextSibling(child)) {
+            if (localName.equals(child.getLocalName()) && BpmnModelConstants.BPMN20_NS.equals(child.getNamespaceURI())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static Element nextElement(Node node) {
+        while (node != null && node.getNodeType() != Node.ELEMENT_NODE) {
+            node = node.getNextSibling();
+        }
+        return (Element) node;
+    }
+}
@@ -0,0 +1,240 @@
+package org.prisma.processhub.bpmn.manipulation.impl.bpmnt;
+
+import org.camunda.bpm.model.bpmn.BpmnModelException;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntSnapshotStorage;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Snapshots of a model taken while its BPMNt log is replayed
+// The snapshot of order k holds the model as it was after the operations 1 to k had been applied.
+// When the memory budget is exceeded the oldest snapshots are dropped first, keeping the one of order 0
+// for last, as it is the only one every replay can start from.
+final class BpmntCheckpoints {
+
+    static final int DEFAULT_INTERVAL = 25;
+    static final long DEFAULT_MEMORY_BUDGET = 32L * 1024 * 1024;
+
+    // Rough footprint of a DOM node besides its text, used to estimate the size of in-memory snapshots
+    private static final int NODE_OVERHEAD = 64;
+
+    private final TreeMap<Integer, Snapshot> snapshots = new TreeMap<Integer, Snapshot>();
+    private int interval = DEFAULT_INTERVAL;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private BpmntSnapshotStorage storage = BpmntSnapshotStorage.IN_MEMORY;
+    private long usedMemory;
+
+    // Configuration
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // A snapshot is taken every interval operations, 0 disables snapshots
+    void setInterval(int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval must not be negative");
+        }
+        this.interval = interval;
+    }
+
+    void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Checkpoint memory budget must not be negative");
+        }
+        this.memoryBudget = memoryBudget;
+        evict();
+    }
+
+    // Changing the storage drops the snapshots kept so far
+    void setStorage(BpmntSnapshotStorage storage) {
+        if (storage == null) {
+            throw new IllegalArgumentException("Checkpoint storage must not be null");
+        }
+        if (storage != this.storage) {
+            clear();
+            this.storage = storage;
+        }
+    }
+
+    // Snapshots
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    boolean isDue(int order) {
+        return interval > 0 && order > 0 && order % interval == 0;
+    }
+
+    void take(int order, Document document) {
+        if (interval == 0) {
+            return;
+        }
+        Snapshot snapshot = storage == BpmntSnapshotStorage.IN_MEMORY
+                ? new Snapshot((Element) document.getDocumentElement().cloneNode(true))
+                : new Snapshot(compress(document.getDocumentElement()));
+
+        Snapshot previous = snapshots.put(order, snapshot);
+        if (previous != null) {
+            usedMemory -= previous.size;
+        }
+        usedMemory += snapshot.size;
+        evict();
+    }
+
+    // Restore the latest snapshot taken up to the given order, returning its order or -1 if there's none
+    int restore(int order, Document document) {
+        Map.Entry<Integer, Snapshot> entry = snapshots.floorEntry(order);
+        if (entry == null) {
+            return -1;
+        }
+        Snapshot snapshot = entry.getValue();
+        Element root = snapshot.root != null
+                ? (Element) snapshot.root.cloneNode(true)
+                : (Element) document.importNode(decompress(snapshot.compressed), true);
+        document.replaceChild(root, document.getDocumentElement());
+        registerIds(root);
+        return entry.getKey();
+    }
+
+    // Drop the snapshots taken after the given order, which no longer match the log
+    void discardAfter(int order) {
+        while (!snapshots.isEmpty() && snapshots.lastKey() > order) {
+            usedMemory -= snapshots.pollLastEntry().getValue().size;
+        }
+    }
+
+    void clear() {
+        snapshots.clear();
+        usedMemory = 0;
+    }
+
+    int getNumberSnapshots() {
+        return snapshots.size();
+    }
+
+    long getUsedMemory() {
+        return usedMemory;
+    }
+
+    private void evict() {
+        while (usedMemory > memoryBudget && !snapshots.isEmpty()) {
+            Integer oldest = snapshots.firstKey();
+            if (oldest == 0 && snapshots.size() > 1) {
+                oldest = snapshots.higherKey(0);
+            }
+            usedMemory -= snapshots.remove(oldest).size;
+        }
+    }
+
+    // Serialization
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private static byte[] compress(Element root) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED));
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            transformer.transform(new DOMSource(root), new StreamResult(out));
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch (Exception e) {
+            throw new BpmnModelException("Unable to take a snapshot of the model", e);
+        }
+    }
+
+    private static Element decompress(byte[] compressed) {
+        InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed));
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder().parse(in).getDocumentElement();
+        }
+        catch (Exception e) {
+            throw new BpmnModelException("Unable to restore a snapshot of the model", e);
+        }
+        finally {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    // Elements are looked up by id through the DOM, so the ids of a restored tree must be registered again
+    private static void registerIds(Element root) {
+        Deque<Element> pending = new ArrayDeque<Element>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Element element = pending.pop();
+            if (element.hasAttribute("id")) {
+                element.setIdAttribute("id", true);
+            }
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    pending.push((Element) child);
+                }
+            }
+        }
+    }
+
+    private static long estimateSize(Element root) {
+        long size = 0;
+        Deque<Node> pending = new ArrayDeque<Node>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            size += NODE_OVERHEAD;
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Attr attribute = (Attr) attributes.item(i);
+                    size += NODE_OVERHEAD + 2L * (attribute.getName().length() + attribute.getValue().length());
+                }
+            }
+            else if (node.getNodeValue() != null) {
+                size += 2L * node.getNodeValue().length();
+            }
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                pending.push(child);
+            }
+        }
+        return size;
+    }
+
+    private static final class Snapshot {
+        private final Element root;
+        private final byte[] compressed;
+        private final long size;
+
+        private Snapshot(Element root) {
+            this.root = root;
+            this.compressed = null;
+            this.size = estimateSize(root);
+        }
+
+        private Snapshot(byte[] compressed) {
+            this.root = null;
+            this.compressed = compressed;
+            this.size = compressed.length;
+        }
+    }
+}
@@ -12,11 +12,16 @@ import org.camunda.bpm.model.xml.instance.DomDocument;
 import org.camunda.bpm.model.xml.instance.ModelElementInstance;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.Bpmnt;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntModelInstance;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntReplayReport;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntSnapshotStorage;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.*;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnElementHandler;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnHelper;
+import org.prisma.processhub.bpmn.manipulation.util.FlowGraphIndex;
+import org.w3c.dom.Document;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -28,6 +33,7 @@ public class BpmntModelInstanceImpl extends BpmnModelInstanceImpl implements Bpm
     }
 
     private List<BpmntOperation> bpmntLog;
+    private final BpmntCheckpoints checkpoints = new BpmntCheckpoints();
 
     // BPMNt log operations
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
@@ -73,36 +79,121 @@ public class BpmntModelInstanceImpl extends BpmnModelInstanceImpl implements Bpm
         addOperation(operation);
     }
 
-    public void execute(List<BpmntOperation> operations) {
+    // Operations are executed in a batch, so the model is validated once at the end
+    public BpmntReplayReport execute(List<BpmntOperation> operations) {
 
         if (operations == null) {
-            return;
+            return new BpmntReplayReport(0);
         }
 
-        for (int i = 1; i < operations.size() + 1; i++) {
-            for (BpmntOperation op: operations) {
-                if (op.getExecutionOrder() == i) {
-                    execute(op);
-                    break;
-                }
-            }
+        return replay(sortByExecutionOrder(operations), true);
+    }
+
+    // Replay the whole log on this model, which is expected to be the base model of the log
+    public BpmntReplayReport executeOwnBpmnt() {
+
+        if (bpmntLog == null) {
+            return new BpmntReplayReport(0);
         }
+
+        List<BpmntOperation> operations = sortByExecutionOrder(bpmntLog);
+        checkpoints.clear();
+        checkpoints.take(0, getDomDocument());
+        return replay(operations, false);
     }
 
-    public void executeOwnBpmnt() {
+    // Replay the log from the operation with the given execution order, restoring the latest snapshot taken before it
+    // Operations before fromOrder must not have changed since the snapshots were taken by executeOwnBpmnt()
+    public BpmntReplayReport executeOwnBpmnt(int fromOrder) {
 
         if (bpmntLog == null) {
-            return;
+            return new BpmntReplayReport(0);
+        }
+
+        List<BpmntOperation> operations = sortByExecutionOrder(bpmntLog);
+        BpmnHelper.checkInvalidArgument(fromOrder < 1 || fromOrder > operations.size() + 1,
+                "Argument fromOrder must be between 1 and " + (operations.size() + 1));
+
+        int restoredOrder = checkpoints.restore(fromOrder - 1, getDomDocument());
+        if (restoredOrder < 0) {
+            throw new IllegalStateException("No snapshot was taken before operation " + fromOrder +
+                    ", the whole log must be replayed with executeOwnBpmnt()");
         }
+        checkpoints.discardAfter(restoredOrder);
+        FlowGraphIndex.invalidate(this);
 
-        for (int i = 1; i < bpmntLog.size() + 1; i++) {
-            for (BpmntOperation op: bpmntLog) {
-                if (op.getExecutionOrder() == i) {
+        return replay(operations.subList(restoredOrder, operations.size()), false);
+    }
+
+    // Model snapshots
+    // Snapshots are only taken while executeOwnBpmnt() replays the log, not on every operation of a live edit
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    public void setCheckpointInterval(int interval) {
+        checkpoints.setInterval(interval);
+    }
+
+    public void setCheckpointMemoryBudget(long bytes) {
+        checkpoints.setMemoryBudget(bytes);
+    }
+
+    public void setCheckpointStorage(BpmntSnapshotStorage storage) {
+        checkpoints.setStorage(storage);
+    }
+
+    public int getNumberCheckpoints() {
+        return checkpoints.getNumberSnapshots();
+    }
+
+    private Document getDomDocument() {
+        return (Document) getDocument().getDomSource().getNode();
+    }
+
+    // Apply operations already sorted by execution order in a single pass, adding them to the log if requested
+    private BpmntReplayReport replay(List<BpmntOperation> operations, boolean addToLog) {
+        BpmntReplayReport report = new BpmntReplayReport(operations.size());
+
+        beginBatch();
+        boolean completed = false;
+        try {
+            for (BpmntOperation op: operations) {
+                long start = System.nanoTime();
+                if (addToLog) {
+                    execute(op);
+                }
+                else {
                     op.execute(this);
-                    break;
+                    if (checkpoints.isDue(op.getExecutionOrder())) {
+                        checkpoints.take(op.getExecutionOrder(), getDomDocument());
+                    }
                 }
+                report.addOperation(op, System.nanoTime() - start);
+            }
+            completed = true;
+        }
+        finally {
+            BpmnElementHandler.commitBatch(this, completed);
+        }
+        return report;
+    }
+
+    // Bucket operations by execution order, which must go from 1 to the number of operations without gaps or duplicates
+    public static List<BpmntOperation> sortByExecutionOrder(List<BpmntOperation> operations) {
+        BpmntOperation[] sorted = new BpmntOperation[operations.size()];
+        for (BpmntOperation op: operations) {
+            int order = op.getExecutionOrder();
+            if (order < 1 || order > sorted.length) {
+                throw new IllegalArgumentException("Execution order " + order + " of operation " + op.getName() +
+                        " is out of range, expected 1 to " + sorted.length);
+            }
+            if (sorted[order - 1] != null) {
+                throw new IllegalArgumentException("Operations " + sorted[order - 1].getName() + " and " + op.getName() +
+                        " have the same execution order " + order);
             }
+            sorted[order - 1] = op;
         }
+        // With every order in range and no duplicates there can't be gaps
+        return Arrays.asList(sorted);
     }
 
     // Useful operations that extend BpmnModelInstance features
@@ -119,6 +210,18 @@ public class BpmntModelInstanceImpl extends BpmnModelInstanceImpl implements Bpm
         BpmnElementHandler.generateUniqueIds(this);
     }
 
+    public void beginBatch() {
+        BpmnElementHandler.beginBatch(this);
+    }
+
+    public void commitBatch() {
+        BpmnElementHandler.commitBatch(this);
+    }
+
+    public boolean isInBatch() {
+        return BpmnElementHandler.isInBatch(this);
+    }
+
 
     // Low-level operations
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
@@ -204,6 +307,11 @@ public class BpmntModelInstanceImpl extends BpmnModelInstanceImpl implements Bpm
         delete(nodeId);
     }
 
+    public void delete(FlowNode node, boolean validate) {
+        String nodeId = (node == null) ? null : node.getId();
+        delete(nodeId, validate);
+    }
+
     // Delete element by id
     public void delete(String nodeId) {
         if (isBpmntLogInitialized()) {
@@ -212,6 +320,19 @@ public class BpmntModelInstanceImpl extends BpmnModelInstanceImpl implements Bpm
         }
     }
 
+    // Delete element by id, skipping the model validation if validate is false
+    public void delete(String nodeId, boolean validate) {
+        BpmnElementHandler.beginBatch(this);
+        boolean completed = false;
+        try {
+            delete(nodeId);
+            completed = true;
+        }
+        finally {
+            BpmnElementHandler.commitBatch(this, validate && completed);
+        }
+    }
+
     // Delete range of elements from startingNode to endingNode
     public void delete(FlowNode startingNode, FlowNode endingNode) {
         String startingNodeId = (startingNode == null) ? null : startingNode.getId();
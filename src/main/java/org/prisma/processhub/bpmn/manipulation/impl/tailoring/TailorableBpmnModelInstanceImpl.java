@@ -8,15 +8,11 @@ import org.camunda.bpm.model.xml.ModelBuilder;
 import org.camunda.bpm.model.xml.impl.ModelImpl;
 import org.camunda.bpm.model.xml.instance.DomDocument;
 import org.camunda.bpm.model.xml.instance.ModelElementInstance;
-import org.prisma.processhub.bpmn.manipulation.bpmnt.Bpmnt;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntModelInstance;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.*;
-import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmn;
 import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmnModelInstance;
 import org.prisma.processhub.bpmn.manipulation.util.*;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class TailorableBpmnModelInstanceImpl extends BpmnModelInstanceImpl implements TailorableBpmnModelInstance {
@@ -30,8 +26,7 @@ public class TailorableBpmnModelInstanceImpl extends BpmnModelInstanceImpl imple
     public BpmntModelInstance extend() {
 
         // Copy the tailorable model to a BPMNt model
-        InputStream stream = new ByteArrayInputStream(TailorableBpmn.convertToString(this).getBytes(StandardCharsets.UTF_8));
-        BpmntModelInstance bpmntModelInstance = Bpmnt.readModelFromStream(stream);
+        BpmntModelInstance bpmntModelInstance = BpmnElementHandler.copyModelInstanceToBpmnt(this);
 
         // Get firs process to set a new id for it, different than the base process id
         Process process = BpmnElementSearcher.findFirstProcess(bpmntModelInstance);
@@ -60,6 +55,18 @@ public class TailorableBpmnModelInstanceImpl extends BpmnModelInstanceImpl imple
         BpmnElementHandler.generateUniqueIds(this);
     }
 
+    public void beginBatch() {
+        BpmnElementHandler.beginBatch(this);
+    }
+
+    public void commitBatch() {
+        BpmnElementHandler.commitBatch(this);
+    }
+
+    public boolean isInBatch() {
+        return BpmnElementHandler.isInBatch(this);
+    }
+
     // Low-level operations
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
 
@@ -132,6 +139,24 @@ public class TailorableBpmnModelInstanceImpl extends BpmnModelInstanceImpl imple
         delete(nodeId);
     }
 
+    // Delete element by id, skipping the model validation if validate is false
+    public void delete(String nodeId, boolean validate) {
+        BpmnElementHandler.beginBatch(this);
+        boolean completed = false;
+        try {
+            delete(nodeId);
+            completed = true;
+        }
+        finally {
+            BpmnElementHandler.commitBatch(this, validate && completed);
+        }
+    }
+
+    public void delete(FlowNode node, boolean validate) {
+        String nodeId = (node == null) ? null : node.getId();
+        delete(nodeId, validate);
+    }
+
     public void delete(String startingNodeId, String endingNodeId) {
         DeleteFragment operation = new DeleteFragment(startingNodeId, endingNodeId);
         operation.execute(this);
@@ -2,15 +2,6 @@ package org.prisma.processhub.bpmn.manipulation.tailoring;
 
 import org.camunda.bpm.model.bpmn.BpmnModelException;
 import org.camunda.bpm.model.bpmn.builder.ProcessBuilder;
-import org.camunda.bpm.model.bpmn.impl.instance.*;
-import org.camunda.bpm.model.bpmn.impl.instance.ExtensionImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.ProcessImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.bpmndi.*;
-import org.camunda.bpm.model.bpmn.impl.instance.camunda.*;
-import org.camunda.bpm.model.bpmn.impl.instance.dc.BoundsImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.dc.FontImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.dc.PointImpl;
-import org.camunda.bpm.model.bpmn.impl.instance.di.*;
 import org.camunda.bpm.model.bpmn.instance.Definitions;
 import org.camunda.bpm.model.bpmn.instance.Process;
 import org.camunda.bpm.model.xml.Model;
@@ -18,15 +9,37 @@ import org.camunda.bpm.model.xml.ModelBuilder;
 import org.camunda.bpm.model.xml.impl.instance.ModelElementInstanceImpl;
 import org.camunda.bpm.model.xml.impl.util.IoUtil;
 import org.camunda.bpm.model.xml.impl.util.ModelUtil;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnHelper;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnTypeRegistry;
+import org.prisma.processhub.bpmn.manipulation.util.ByteBufferInputStream;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 
 public class TailorableBpmn {
     public static TailorableBpmn INSTANCE = new TailorableBpmn();
-    private TailorableBpmnParser tailorableBpmnParser = new TailorableBpmnParser();
-    private final ModelBuilder tailorableBpmnModelBuilder = ModelBuilder.createInstance("Tailorable BPMN Model");
-    private Model TailorableBpmnModel;
+    // Smaller files are read faster through a buffered stream than mapped, see doReadModelFromPath
+    private static final long MAPPED_READ_THRESHOLD = 1 << 20;
+    // One parser per thread, see BpmnTypeRegistry
+    private final ThreadLocal<TailorableBpmnParser> tailorableBpmnParser = new ThreadLocal<TailorableBpmnParser>() {
+        @Override
+        protected TailorableBpmnParser initialValue() {
+            return new TailorableBpmnParser();
+        }
+    };
+    private final ModelBuilder tailorableBpmnModelBuilder = BpmnTypeRegistry.getModelBuilder();
+    private Model TailorableBpmnModel = BpmnTypeRegistry.getModel();
 
     public static TailorableBpmnModelInstance readModelFromFile(File file) {
         return INSTANCE.doReadModelFromFile(file);
@@ -36,6 +49,16 @@ public class TailorableBpmn {
         return INSTANCE.doReadModelFromInputStream(stream);
     }
 
+    // Reads a model without checking it against the BPMN schema if validate is false
+    // Meant for models written by this library; validateModel or validateModelInBackground can check them later.
+    public static TailorableBpmnModelInstance readModelFromFile(File file, boolean validate) {
+        return INSTANCE.doReadModelFromFile(file, validate);
+    }
+
+    public static TailorableBpmnModelInstance readModelFromStream(InputStream stream, boolean validate) {
+        return INSTANCE.doReadModelFromInputStream(stream, validate);
+    }
+
     public static void writeModelToFile(File file, TailorableBpmnModelInstance modelInstance) {
         INSTANCE.doWriteModelToFile(file, modelInstance);
     }
@@ -44,6 +67,40 @@ public class TailorableBpmn {
         INSTANCE.doWriteModelToOutputStream(stream, modelInstance);
     }
 
+    // Large files are mapped in memory and parsed straight from the mapping, see doReadModelFromPath
+    public static TailorableBpmnModelInstance readModelFromFile(Path path) {
+        return INSTANCE.doReadModelFromPath(path, true);
+    }
+
+    public static TailorableBpmnModelInstance readModelFromFile(Path path, boolean validate) {
+        return INSTANCE.doReadModelFromPath(path, validate);
+    }
+
+    public static TailorableBpmnModelInstance readModelFromChannel(ReadableByteChannel channel) {
+        BpmnHelper.checkNotNull(channel, "Argument channel must not be null");
+        return INSTANCE.doReadModelFromInputStream(Channels.newInputStream(channel));
+    }
+
+    // Reads the remaining bytes of the buffer, whose position is left untouched
+    public static TailorableBpmnModelInstance readModelFromBuffer(ByteBuffer buffer) {
+        return INSTANCE.doReadModelFromInputStream(new ByteBufferInputStream(buffer));
+    }
+
+    public static TailorableBpmnModelInstance readModelFromReader(Reader reader) {
+        BpmnHelper.checkNotNull(reader, "Argument reader must not be null");
+        return INSTANCE.doReadModelFromReader(reader, true);
+    }
+
+    public static void writeModelToFile(Path path, TailorableBpmnModelInstance modelInstance) {
+        INSTANCE.doWriteModelToPath(path, modelInstance);
+    }
+
+    // The channel is left open
+    public static void writeModelToChannel(WritableByteChannel channel, TailorableBpmnModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(channel, "Argument channel must not be null");
+        INSTANCE.doWriteModelToChannel(channel, modelInstance);
+    }
+
     public static String convertToString(TailorableBpmnModelInstance modelInstance) {
         return INSTANCE.doConvertToString(modelInstance);
     }
@@ -53,6 +110,19 @@ public class TailorableBpmn {
         INSTANCE.doValidateModel(modelInstance);
     }
 
+    // Validates the model on the given executor; the future fails with the validation error, if any
+    // The model must not be changed until the validation is done.
+    public static Future<?> validateModelInBackground(final TailorableBpmnModelInstance modelInstance, ExecutorService executor) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        BpmnHelper.checkNotNull(executor, "Argument executor must not be null");
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                INSTANCE.doValidateModel(modelInstance);
+            }
+        });
+    }
+
     public static TailorableBpmnModelInstance createEmptyModel() {
         return INSTANCE.doCreateEmptyModel();
     }
@@ -82,18 +152,21 @@ public class TailorableBpmn {
         return (ProcessBuilder)createProcess(processId).executable();
     }
 
+    // The type model is shared with the other facades, see BpmnTypeRegistry
     protected TailorableBpmn() {
-        this.doRegisterTypes(this.tailorableBpmnModelBuilder);
-        this.TailorableBpmnModel = this.tailorableBpmnModelBuilder.build();
     }
 
     protected TailorableBpmnModelInstance doReadModelFromFile(File file) {
+        return this.doReadModelFromFile(file, true);
+    }
+
+    protected TailorableBpmnModelInstance doReadModelFromFile(File file, boolean validate) {
         FileInputStream is = null;
 
         TailorableBpmnModelInstance e;
         try {
             is = new FileInputStream(file);
-            e = this.doReadModelFromInputStream(is);
+            e = this.doReadModelFromInputStream(is, validate);
         } catch (FileNotFoundException var7) {
             throw new BpmnModelException("Cannot read model from file " + file + ": file does not exist.");
         } finally {
@@ -104,7 +177,38 @@ public class TailorableBpmn {
     }
 
     protected TailorableBpmnModelInstance doReadModelFromInputStream(InputStream is) {
-        return this.tailorableBpmnParser.parseModelFromStream(is);
+        return this.tailorableBpmnParser.get().parseModelFromStream(is);
+    }
+
+    protected TailorableBpmnModelInstance doReadModelFromInputStream(InputStream is, boolean validate) {
+        return this.tailorableBpmnParser.get().parseModelFromStream(is, validate);
+    }
+
+    // Files of at least MAPPED_READ_THRESHOLD bytes that fit in a single mapping are parsed from the page cache, without
+    // being copied through the buffers of a stream first. The mapping is released once garbage collected, which may keep
+    // the file locked on Windows until then; smaller files, i.e. most models, are read through the channel and released
+    // when it's closed.
+    protected TailorableBpmnModelInstance doReadModelFromPath(Path path, boolean validate) {
+        FileChannel channel = null;
+
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            long size = channel.size();
+            InputStream is = size >= MAPPED_READ_THRESHOLD && size <= Integer.MAX_VALUE
+                    ? new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size))
+                    : new BufferedInputStream(Channels.newInputStream(channel));
+            return this.doReadModelFromInputStream(is, validate);
+        } catch (NoSuchFileException e) {
+            throw new BpmnModelException("Cannot read model from file " + path + ": file does not exist.");
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot read model from file " + path + ": " + e.getMessage(), e);
+        } finally {
+            IoUtil.closeSilently(channel);
+        }
+    }
+
+    protected TailorableBpmnModelInstance doReadModelFromReader(Reader reader, boolean validate) {
+        return this.tailorableBpmnParser.get().parseModelFromReader(reader, validate);
     }
 
     protected void doWriteModelToFile(File file, TailorableBpmnModelInstance modelInstance) {
@@ -121,6 +225,31 @@ public class TailorableBpmn {
 
     }
 
+    // The document is serialized straight into a buffered stream over the file, without an intermediate String
+    protected void doWriteModelToPath(Path path, TailorableBpmnModelInstance modelInstance) {
+        OutputStream os = null;
+
+        try {
+            os = new BufferedOutputStream(Files.newOutputStream(path));
+            this.doWriteModelToOutputStream(os, modelInstance);
+            os.flush();
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot write model to file " + path + ": " + e.getMessage(), e);
+        } finally {
+            IoUtil.closeSilently(os);
+        }
+    }
+
+    protected void doWriteModelToChannel(WritableByteChannel channel, TailorableBpmnModelInstance modelInstance) {
+        try {
+            OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+            this.doWriteModelToOutputStream(os, modelInstance);
+            os.flush();
+        } catch (IOException e) {
+            throw new BpmnModelException("Cannot write model to channel: " + e.getMessage(), e);
+        }
+    }
+
     protected void doWriteModelToOutputStream(OutputStream os, TailorableBpmnModelInstance modelInstance) {
         this.doValidateModel(modelInstance);
         IoUtil.writeDocumentToOutputStream(modelInstance.getDocument(), os);
@@ -132,227 +261,11 @@ public class TailorableBpmn {
     }
 
     protected void doValidateModel(TailorableBpmnModelInstance modelInstance) {
-        this.tailorableBpmnParser.validateModel(modelInstance.getDocument());
+        this.tailorableBpmnParser.get().validateModel(modelInstance.getDocument());
     }
 
     protected TailorableBpmnModelInstance doCreateEmptyModel() {
-        return this.tailorableBpmnParser.getEmptyModel();
-    }
-
-    protected void doRegisterTypes(ModelBuilder bpmnModelBuilder) {
-        ActivationConditionImpl.registerType(bpmnModelBuilder);
-        ActivityImpl.registerType(bpmnModelBuilder);
-        ArtifactImpl.registerType(bpmnModelBuilder);
-        AssignmentImpl.registerType(bpmnModelBuilder);
-        AssociationImpl.registerType(bpmnModelBuilder);
-        AuditingImpl.registerType(bpmnModelBuilder);
-        BaseElementImpl.registerType(bpmnModelBuilder);
-        BoundaryEventImpl.registerType(bpmnModelBuilder);
-        BusinessRuleTaskImpl.registerType(bpmnModelBuilder);
-        CallableElementImpl.registerType(bpmnModelBuilder);
-        CallActivityImpl.registerType(bpmnModelBuilder);
-        CallConversationImpl.registerType(bpmnModelBuilder);
-        CancelEventDefinitionImpl.registerType(bpmnModelBuilder);
-        CatchEventImpl.registerType(bpmnModelBuilder);
-        CategoryValueImpl.registerType(bpmnModelBuilder);
-        CategoryValueRef.registerType(bpmnModelBuilder);
-        ChildLaneSet.registerType(bpmnModelBuilder);
-        CollaborationImpl.registerType(bpmnModelBuilder);
-        CompensateEventDefinitionImpl.registerType(bpmnModelBuilder);
-        ConditionImpl.registerType(bpmnModelBuilder);
-        ConditionalEventDefinitionImpl.registerType(bpmnModelBuilder);
-        CompletionConditionImpl.registerType(bpmnModelBuilder);
-        ComplexBehaviorDefinitionImpl.registerType(bpmnModelBuilder);
-        ComplexGatewayImpl.registerType(bpmnModelBuilder);
-        ConditionExpressionImpl.registerType(bpmnModelBuilder);
-        ConversationAssociationImpl.registerType(bpmnModelBuilder);
-        ConversationImpl.registerType(bpmnModelBuilder);
-        ConversationLinkImpl.registerType(bpmnModelBuilder);
-        ConversationNodeImpl.registerType(bpmnModelBuilder);
-        CorrelationKeyImpl.registerType(bpmnModelBuilder);
-        CorrelationPropertyBindingImpl.registerType(bpmnModelBuilder);
-        CorrelationPropertyImpl.registerType(bpmnModelBuilder);
-        CorrelationPropertyRef.registerType(bpmnModelBuilder);
-        CorrelationPropertyRetrievalExpressionImpl.registerType(bpmnModelBuilder);
-        CorrelationSubscriptionImpl.registerType(bpmnModelBuilder);
-        DataAssociationImpl.registerType(bpmnModelBuilder);
-        DataInputAssociationImpl.registerType(bpmnModelBuilder);
-        DataInputImpl.registerType(bpmnModelBuilder);
-        DataInputRefs.registerType(bpmnModelBuilder);
-        DataOutputAssociationImpl.registerType(bpmnModelBuilder);
-        DataOutputImpl.registerType(bpmnModelBuilder);
-        DataOutputRefs.registerType(bpmnModelBuilder);
-        DataPath.registerType(bpmnModelBuilder);
-        DataStateImpl.registerType(bpmnModelBuilder);
-        DataObjectImpl.registerType(bpmnModelBuilder);
-        DataObjectReferenceImpl.registerType(bpmnModelBuilder);
-        DefinitionsImpl.registerType(bpmnModelBuilder);
-        DocumentationImpl.registerType(bpmnModelBuilder);
-        EndEventImpl.registerType(bpmnModelBuilder);
-        EndPointImpl.registerType(bpmnModelBuilder);
-        EndPointRef.registerType(bpmnModelBuilder);
-        ErrorEventDefinitionImpl.registerType(bpmnModelBuilder);
-        ErrorImpl.registerType(bpmnModelBuilder);
-        ErrorRef.registerType(bpmnModelBuilder);
-        EscalationImpl.registerType(bpmnModelBuilder);
-        EscalationEventDefinitionImpl.registerType(bpmnModelBuilder);
-        EventBasedGatewayImpl.registerType(bpmnModelBuilder);
-        EventDefinitionImpl.registerType(bpmnModelBuilder);
-        EventDefinitionRef.registerType(bpmnModelBuilder);
-        EventImpl.registerType(bpmnModelBuilder);
-        ExclusiveGatewayImpl.registerType(bpmnModelBuilder);
-        ExpressionImpl.registerType(bpmnModelBuilder);
-        ExtensionElementsImpl.registerType(bpmnModelBuilder);
-        ExtensionImpl.registerType(bpmnModelBuilder);
-        FlowElementImpl.registerType(bpmnModelBuilder);
-        FlowNodeImpl.registerType(bpmnModelBuilder);
-        FlowNodeRef.registerType(bpmnModelBuilder);
-        FormalExpressionImpl.registerType(bpmnModelBuilder);
-        From.registerType(bpmnModelBuilder);
-        GatewayImpl.registerType(bpmnModelBuilder);
-        GlobalConversationImpl.registerType(bpmnModelBuilder);
-        HumanPerformerImpl.registerType(bpmnModelBuilder);
-        ImportImpl.registerType(bpmnModelBuilder);
-        InclusiveGatewayImpl.registerType(bpmnModelBuilder);
-        Incoming.registerType(bpmnModelBuilder);
-        InMessageRef.registerType(bpmnModelBuilder);
-        InnerParticipantRef.registerType(bpmnModelBuilder);
-        InputDataItemImpl.registerType(bpmnModelBuilder);
-        InputSetImpl.registerType(bpmnModelBuilder);
-        InputSetRefs.registerType(bpmnModelBuilder);
-        InteractionNodeImpl.registerType(bpmnModelBuilder);
-        InterfaceImpl.registerType(bpmnModelBuilder);
-        InterfaceRef.registerType(bpmnModelBuilder);
-        IntermediateCatchEventImpl.registerType(bpmnModelBuilder);
-        IntermediateThrowEventImpl.registerType(bpmnModelBuilder);
-        IoBindingImpl.registerType(bpmnModelBuilder);
-        IoSpecificationImpl.registerType(bpmnModelBuilder);
-        ItemAwareElementImpl.registerType(bpmnModelBuilder);
-        ItemDefinitionImpl.registerType(bpmnModelBuilder);
-        LaneImpl.registerType(bpmnModelBuilder);
-        LaneSetImpl.registerType(bpmnModelBuilder);
-        LinkEventDefinitionImpl.registerType(bpmnModelBuilder);
-        LoopCardinalityImpl.registerType(bpmnModelBuilder);
-        LoopCharacteristicsImpl.registerType(bpmnModelBuilder);
-        LoopDataInputRef.registerType(bpmnModelBuilder);
-        LoopDataOutputRef.registerType(bpmnModelBuilder);
-        ManualTaskImpl.registerType(bpmnModelBuilder);
-        MessageEventDefinitionImpl.registerType(bpmnModelBuilder);
-        MessageFlowAssociationImpl.registerType(bpmnModelBuilder);
-        MessageFlowImpl.registerType(bpmnModelBuilder);
-        MessageFlowRef.registerType(bpmnModelBuilder);
-        MessageImpl.registerType(bpmnModelBuilder);
-        MessagePath.registerType(bpmnModelBuilder);
-        ModelElementInstanceImpl.registerType(bpmnModelBuilder);
-        MonitoringImpl.registerType(bpmnModelBuilder);
-        MultiInstanceLoopCharacteristicsImpl.registerType(bpmnModelBuilder);
-        OperationImpl.registerType(bpmnModelBuilder);
-        OperationRef.registerType(bpmnModelBuilder);
-        OptionalInputRefs.registerType(bpmnModelBuilder);
-        OptionalOutputRefs.registerType(bpmnModelBuilder);
-        OuterParticipantRef.registerType(bpmnModelBuilder);
-        OutMessageRef.registerType(bpmnModelBuilder);
-        Outgoing.registerType(bpmnModelBuilder);
-        OutputDataItemImpl.registerType(bpmnModelBuilder);
-        OutputSetImpl.registerType(bpmnModelBuilder);
-        OutputSetRefs.registerType(bpmnModelBuilder);
-        ParallelGatewayImpl.registerType(bpmnModelBuilder);
-        ParticipantAssociationImpl.registerType(bpmnModelBuilder);
-        ParticipantImpl.registerType(bpmnModelBuilder);
-        ParticipantMultiplicityImpl.registerType(bpmnModelBuilder);
-        ParticipantRef.registerType(bpmnModelBuilder);
-        PartitionElement.registerType(bpmnModelBuilder);
-        PerformerImpl.registerType(bpmnModelBuilder);
-        PotentialOwnerImpl.registerType(bpmnModelBuilder);
-        ProcessImpl.registerType(bpmnModelBuilder);
-        PropertyImpl.registerType(bpmnModelBuilder);
-        ReceiveTaskImpl.registerType(bpmnModelBuilder);
-        RelationshipImpl.registerType(bpmnModelBuilder);
-        RenderingImpl.registerType(bpmnModelBuilder);
-        ResourceAssignmentExpressionImpl.registerType(bpmnModelBuilder);
-        ResourceImpl.registerType(bpmnModelBuilder);
-        ResourceParameterBindingImpl.registerType(bpmnModelBuilder);
-        ResourceParameterImpl.registerType(bpmnModelBuilder);
-        ResourceRef.registerType(bpmnModelBuilder);
-        ResourceRoleImpl.registerType(bpmnModelBuilder);
-        RootElementImpl.registerType(bpmnModelBuilder);
-        ScriptImpl.registerType(bpmnModelBuilder);
-        ScriptTaskImpl.registerType(bpmnModelBuilder);
-        SendTaskImpl.registerType(bpmnModelBuilder);
-        SequenceFlowImpl.registerType(bpmnModelBuilder);
-        ServiceTaskImpl.registerType(bpmnModelBuilder);
-        SignalEventDefinitionImpl.registerType(bpmnModelBuilder);
-        SignalImpl.registerType(bpmnModelBuilder);
-        Source.registerType(bpmnModelBuilder);
-        SourceRef.registerType(bpmnModelBuilder);
-        StartEventImpl.registerType(bpmnModelBuilder);
-        SubConversationImpl.registerType(bpmnModelBuilder);
-        SubProcessImpl.registerType(bpmnModelBuilder);
-        SupportedInterfaceRef.registerType(bpmnModelBuilder);
-        Supports.registerType(bpmnModelBuilder);
-        Target.registerType(bpmnModelBuilder);
-        TargetRef.registerType(bpmnModelBuilder);
-        TaskImpl.registerType(bpmnModelBuilder);
-        TerminateEventDefinitionImpl.registerType(bpmnModelBuilder);
-        TextImpl.registerType(bpmnModelBuilder);
-        TextAnnotationImpl.registerType(bpmnModelBuilder);
-        ThrowEventImpl.registerType(bpmnModelBuilder);
-        TimeCycleImpl.registerType(bpmnModelBuilder);
-        TimeDateImpl.registerType(bpmnModelBuilder);
-        TimeDurationImpl.registerType(bpmnModelBuilder);
-        TimerEventDefinitionImpl.registerType(bpmnModelBuilder);
-        To.registerType(bpmnModelBuilder);
-        Transformation.registerType(bpmnModelBuilder);
-        UserTaskImpl.registerType(bpmnModelBuilder);
-        WhileExecutingInputRefs.registerType(bpmnModelBuilder);
-        WhileExecutingOutputRefs.registerType(bpmnModelBuilder);
-        FontImpl.registerType(bpmnModelBuilder);
-        PointImpl.registerType(bpmnModelBuilder);
-        BoundsImpl.registerType(bpmnModelBuilder);
-        DiagramImpl.registerType(bpmnModelBuilder);
-        DiagramElementImpl.registerType(bpmnModelBuilder);
-        EdgeImpl.registerType(bpmnModelBuilder);
-        org.camunda.bpm.model.bpmn.impl.instance.di.ExtensionImpl.registerType(bpmnModelBuilder);
-        LabelImpl.registerType(bpmnModelBuilder);
-        LabeledEdgeImpl.registerType(bpmnModelBuilder);
-        LabeledShapeImpl.registerType(bpmnModelBuilder);
-        NodeImpl.registerType(bpmnModelBuilder);
-        PlaneImpl.registerType(bpmnModelBuilder);
-        ShapeImpl.registerType(bpmnModelBuilder);
-        StyleImpl.registerType(bpmnModelBuilder);
-        WaypointImpl.registerType(bpmnModelBuilder);
-        BpmnDiagramImpl.registerType(bpmnModelBuilder);
-        BpmnEdgeImpl.registerType(bpmnModelBuilder);
-        BpmnLabelImpl.registerType(bpmnModelBuilder);
-        BpmnLabelStyleImpl.registerType(bpmnModelBuilder);
-        BpmnPlaneImpl.registerType(bpmnModelBuilder);
-        BpmnShapeImpl.registerType(bpmnModelBuilder);
-        CamundaConnectorImpl.registerType(bpmnModelBuilder);
-        CamundaConnectorIdImpl.registerType(bpmnModelBuilder);
-        CamundaConstraintImpl.registerType(bpmnModelBuilder);
-        CamundaEntryImpl.registerType(bpmnModelBuilder);
-        CamundaExecutionListenerImpl.registerType(bpmnModelBuilder);
-        CamundaExpressionImpl.registerType(bpmnModelBuilder);
-        CamundaFailedJobRetryTimeCycleImpl.registerType(bpmnModelBuilder);
-        CamundaFieldImpl.registerType(bpmnModelBuilder);
-        CamundaFormDataImpl.registerType(bpmnModelBuilder);
-        CamundaFormFieldImpl.registerType(bpmnModelBuilder);
-        CamundaFormPropertyImpl.registerType(bpmnModelBuilder);
-        CamundaInImpl.registerType(bpmnModelBuilder);
-        CamundaInputOutputImpl.registerType(bpmnModelBuilder);
-        CamundaInputParameterImpl.registerType(bpmnModelBuilder);
-        CamundaListImpl.registerType(bpmnModelBuilder);
-        CamundaMapImpl.registerType(bpmnModelBuilder);
-        CamundaOutputParameterImpl.registerType(bpmnModelBuilder);
-        CamundaOutImpl.registerType(bpmnModelBuilder);
-        CamundaPotentialStarterImpl.registerType(bpmnModelBuilder);
-        CamundaPropertiesImpl.registerType(bpmnModelBuilder);
-        CamundaPropertyImpl.registerType(bpmnModelBuilder);
-        CamundaScriptImpl.registerType(bpmnModelBuilder);
-        CamundaStringImpl.registerType(bpmnModelBuilder);
-        CamundaTaskListenerImpl.registerType(bpmnModelBuilder);
-        CamundaValidationImpl.registerType(bpmnModelBuilder);
-        CamundaValueImpl.registerType(bpmnModelBuilder);
+        return this.tailorableBpmnParser.get().getEmptyModel();
     }
 
     public Model getTailorableBpmnModel() {
@@ -20,6 +20,11 @@ public interface TailorableBpmnModelInstance extends BpmnModelInstance {
     String setUniqueId(FlowElement element);
     void generateUniqueIds();
 
+    // Operations run between beginBatch() and commitBatch() defer model validation until the batch is committed
+    void beginBatch();
+    void commitBatch();
+    boolean isInBatch();
+
     // Low-level operations
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
 
@@ -50,6 +55,8 @@ public interface TailorableBpmnModelInstance extends BpmnModelInstance {
     // Delete
     void delete(FlowNode node);
     void delete(String nodeId);
+    void delete(FlowNode node, boolean validate);
+    void delete(String nodeId, boolean validate);
 
     void delete(FlowNode startingNode, FlowNode endingNode);
     void delete(String startingNodeId, String endingNodeId);
@@ -1,34 +1,41 @@
 package org.prisma.processhub.bpmn.manipulation.tailoring;
 
-import org.camunda.bpm.model.xml.ModelValidationException;
 import org.camunda.bpm.model.xml.impl.ModelImpl;
+import org.camunda.bpm.model.xml.ModelParseException;
+import org.camunda.bpm.model.xml.impl.instance.DomDocumentImpl;
 import org.camunda.bpm.model.xml.impl.parser.AbstractModelParser;
+import org.camunda.bpm.model.xml.impl.util.DomUtil;
 import org.camunda.bpm.model.xml.impl.util.ReflectUtil;
 import org.camunda.bpm.model.xml.instance.DomDocument;
 import org.prisma.processhub.bpmn.manipulation.impl.tailoring.TailorableBpmnModelInstanceImpl;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnTypeRegistry;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.validation.SchemaFactory;
-
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.io.Reader;
 
 
 public class TailorableBpmnParser extends AbstractModelParser {
     private static final String JAXP_SCHEMA_SOURCE = "http://java.sun.com/xml/jaxp/properties/schemaSource";
     private static final String JAXP_SCHEMA_LANGUAGE = "http://java.sun.com/xml/jaxp/properties/schemaLanguage";
     private static final String W3C_XML_SCHEMA = "http://www.w3.org/2001/XMLSchema";
+    private static final String DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
 
-    public TailorableBpmnParser() {
-        this.schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
-        URL bpmnSchema = ReflectUtil.getResource("BPMN20.xsd", TailorableBpmnParser.class.getClassLoader());
+    private final DocumentBuilderFactory nonValidatingFactory = newNonValidatingFactory();
+    // Configured as the factory parseModelFromStream uses, which isn't accessible
+    private final DocumentBuilderFactory validatingFactory = newValidatingFactory();
 
-        try {
-            this.schema = this.schemaFactory.newSchema(bpmnSchema);
-        } catch (SAXException var3) {
-            throw new ModelValidationException("Unable to parse schema:" + bpmnSchema);
-        }
+    // The compiled schema is shared with the other parsers, see BpmnTypeRegistry
+    public TailorableBpmnParser() {
+        this.schema = BpmnTypeRegistry.getSchema();
     }
 
     protected void configureFactory(DocumentBuilderFactory dbf) {
@@ -45,7 +52,85 @@ public class TailorableBpmnParser extends AbstractModelParser {
         return (TailorableBpmnModelInstanceImpl)super.parseModelFromStream(inputStream);
     }
 
+    // Parse without checking the document against the schema when validate is false
+    // Validation takes most of the parse time and is only worth skipping for documents this library wrote itself;
+    // validateModel can still check them afterwards. Only the id attributes are typed, so that elements can be
+    // looked up by id, and attributes left out of the document don't get the default values of the schema.
+    public TailorableBpmnModelInstanceImpl parseModelFromStream(InputStream inputStream, boolean validate) {
+        if (validate) {
+            return parseModelFromStream(inputStream);
+        }
+        DomDocument document;
+        synchronized (nonValidatingFactory) {
+            document = DomUtil.parseInputStream(nonValidatingFactory, inputStream);
+        }
+        markIdAttributes(document.getDomSource().getNode());
+        return createModelInstance(document);
+    }
+
+    // Parse characters, e.g. of a document already held as a String, without encoding them back to bytes first
+    // The characters are parsed as parseModelFromStream parses bytes, so both yield the same document for the same XML.
+    public TailorableBpmnModelInstanceImpl parseModelFromReader(Reader reader, boolean validate) {
+        DocumentBuilderFactory factory = validate ? validatingFactory : nonValidatingFactory;
+        DocumentBuilder documentBuilder;
+        synchronized (factory) {
+            try {
+                documentBuilder = factory.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new ModelParseException("ParserConfigurationException while parsing reader", e);
+            }
+        }
+        documentBuilder.setErrorHandler(new DomUtil.DomErrorHandler());
+        DomDocument document;
+        try {
+            document = new DomDocumentImpl(documentBuilder.parse(new InputSource(reader)));
+        } catch (SAXException e) {
+            throw new ModelParseException("SAXException while parsing reader", e);
+        } catch (IOException e) {
+            throw new ModelParseException("IOException while parsing reader", e);
+        }
+        if (validate) {
+            validateModel(document);
+        }
+        else {
+            markIdAttributes(document.getDomSource().getNode());
+        }
+        return createModelInstance(document);
+    }
+
     public TailorableBpmnModelInstanceImpl getEmptyModel() {
         return (TailorableBpmnModelInstanceImpl)super.getEmptyModel();
     }
+
+    private DocumentBuilderFactory newValidatingFactory() {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        configureFactory(dbf);
+        return dbf;
+    }
+
+    private static DocumentBuilderFactory newNonValidatingFactory() {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setIgnoringComments(false);
+        dbf.setIgnoringElementContentWhitespace(false);
+        dbf.setNamespaceAware(true);
+        try {
+            // Expanded up front, the document can be read by several threads, e.g. while it's validated in the background
+            dbf.setFeature(DEFER_NODE_EXPANSION, false);
+        } catch (ParserConfigurationException e) {
+            // Not a Xerces parser, so nodes aren't deferred either
+        }
+        return dbf;
+    }
+
+    private static void markIdAttributes(Node node) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                Element element = (Element) child;
+                if (element.hasAttribute("id")) {
+                    element.setIdAttribute("id", true);
+                }
+                markIdAttributes(element);
+            }
+        }
+    }
 }
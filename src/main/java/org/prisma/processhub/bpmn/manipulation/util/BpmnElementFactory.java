@@ -0,0 +1,99 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.ExclusiveGateway;
+import org.camunda.bpm.model.bpmn.instance.FlowElement;
+import org.camunda.bpm.model.bpmn.instance.ParallelGateway;
+import org.camunda.bpm.model.bpmn.instance.Task;
+import org.camunda.bpm.model.xml.instance.ModelElementInstance;
+import org.camunda.bpm.model.xml.type.ModelElementType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Creates detached elements to be added to models through the BpmnElementHandler operations, which copy them
+// Elements are instantiated in a scratch model kept per thread instead of a new model per element. Its DOM keeps
+// track of every element created in it, so the scratch model is replaced after a fixed number of elements.
+public final class BpmnElementFactory {
+
+    private static final int MAX_ELEMENTS_PER_SCRATCH_MODEL = 1024;
+
+    private static final Map<Class<?>, ModelElementType> ELEMENT_TYPES = new ConcurrentHashMap<Class<?>, ModelElementType>();
+    private static final ModelElementType PARALLEL_GATEWAY_TYPE = getElementType(ParallelGateway.class);
+    private static final ModelElementType EXCLUSIVE_GATEWAY_TYPE = getElementType(ExclusiveGateway.class);
+    private static final ModelElementType TASK_TYPE = getElementType(Task.class);
+
+    private static final ThreadLocal<ScratchModel> SCRATCH_MODEL = new ThreadLocal<ScratchModel>();
+
+    private BpmnElementFactory() {}
+
+    // Element creation
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    public static ParallelGateway newParallelGateway() {
+        return newElement(ParallelGateway.class, PARALLEL_GATEWAY_TYPE);
+    }
+
+    public static ExclusiveGateway newExclusiveGateway() {
+        return newElement(ExclusiveGateway.class, EXCLUSIVE_GATEWAY_TYPE);
+    }
+
+    public static Task newTask(String name) {
+        Task task = newElement(Task.class, TASK_TYPE);
+        task.setName(name);
+        return task;
+    }
+
+    // New element of the given type with a generated id
+    public static <T extends FlowElement> T newFlowElement(Class<T> type) {
+        BpmnHelper.checkNotNull(type, "Argument type must not be null");
+        return newElement(type, getElementType(type));
+    }
+
+    // Detached copy of an element with the same type, id and name
+    // The copy is an instance of the element type of the original, so it has the same class
+    @SuppressWarnings("unchecked")
+    public static <T extends ModelElementInstance> T copyElement(T element) {
+        BpmnHelper.checkNotNull(element, "Argument element must not be null");
+        T copiedElement = (T) scratchModel().newInstance(element.getElementType());
+        copiedElement.setAttributeValue("id", element.getAttributeValue("id"), true);
+        copiedElement.setAttributeValue("name", element.getAttributeValue("name"), true);
+        return copiedElement;
+    }
+
+    private static <T extends ModelElementInstance> T newElement(Class<T> type, ModelElementType elementType) {
+        T element = type.cast(scratchModel().newInstance(elementType));
+        element.setAttributeValue("id", IdAllocator.getDefault().nextId(elementType.getTypeName()), true);
+        return element;
+    }
+
+    // Element types are resolved once per class
+    private static ModelElementType getElementType(Class<? extends ModelElementInstance> type) {
+        ModelElementType elementType = ELEMENT_TYPES.get(type);
+        if (elementType == null) {
+            elementType = Bpmn.INSTANCE.getBpmnModel().getType(type);
+            BpmnHelper.checkInvalidArgument(elementType == null, "Class " + type.getName() + " is not a BPMN element type");
+            ELEMENT_TYPES.put(type, elementType);
+        }
+        return elementType;
+    }
+
+    // Scratch model
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private static final class ScratchModel {
+        private final BpmnModelInstance modelInstance = Bpmn.createEmptyModel();
+        private int numberElements;
+    }
+
+    private static BpmnModelInstance scratchModel() {
+        ScratchModel scratchModel = SCRATCH_MODEL.get();
+        if (scratchModel == null || scratchModel.numberElements == MAX_ELEMENTS_PER_SCRATCH_MODEL) {
+            scratchModel = new ScratchModel();
+            SCRATCH_MODEL.set(scratchModel);
+        }
+        scratchModel.numberElements++;
+        return scratchModel.modelInstance;
+    }
+}
@@ -2,26 +2,50 @@ package org.prisma.processhub.bpmn.manipulation.util;
 
 import org.camunda.bpm.model.bpmn.Bpmn;
 import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.impl.BpmnModelConstants;
+import org.camunda.bpm.model.bpmn.impl.BpmnModelInstanceImpl;
 import org.camunda.bpm.model.bpmn.instance.*;
 import org.camunda.bpm.model.bpmn.instance.Process;
 import org.camunda.bpm.model.xml.ModelInstance;
+import org.camunda.bpm.model.xml.impl.ModelImpl;
 import org.camunda.bpm.model.xml.instance.ModelElementInstance;
+import org.camunda.bpm.model.xml.type.ModelElementType;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.Bpmnt;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntModelInstance;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
 import org.prisma.processhub.bpmn.manipulation.exception.ElementNotFoundException;
 import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmn;
+import org.prisma.processhub.bpmn.manipulation.impl.bpmnt.BpmntModelInstanceImpl;
+import org.prisma.processhub.bpmn.manipulation.impl.tailoring.TailorableBpmnModelInstanceImpl;
 import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmnModelInstance;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
-import java.io.ByteArrayInputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 public final class BpmnElementHandler {
 
+    // Attributes and elements of the BPMN and BPMNDI namespaces that hold the id of a flow element
+    // Shared by everything that renames ids, so that no reference is left dangling
+    public static final Set<String> ID_REFERENCE_ATTRIBUTES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "sourceRef", "targetRef", "default", "attachedToRef", "dataObjectRef", "bpmnElement")));
+    public static final Set<String> ID_REFERENCE_ELEMENTS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "incoming", "outgoing", "sourceRef", "targetRef", "flowNodeRef")));
+
     private BpmnElementHandler() {}
 
 
@@ -43,7 +67,14 @@ public final class BpmnElementHandler {
         T newElement = (T) modelInstance.newInstance(element.getElementType());
         newElement.setId(element.getId());
         newElement.setName(element.getName());
+        FlowGraphIndex index = FlowGraphIndex.peek(modelInstance);
         parentElement.addChildElement(newElement);
+        if (newElement instanceof FlowNode) {
+            onFlowNodeAdded(modelInstance, index, (FlowNode) newElement);
+        }
+        else {
+            onFlowElementChanged(modelInstance, index, newElement);
+        }
         return modelInstance.getModelElementById(newElement.getId());
     }
 
@@ -73,7 +104,13 @@ public final class BpmnElementHandler {
         // Verify if element is part of modelInstance model instance
         BpmnHelper.checkElementPresent(contains(modelInstance, element), "FlowElement with id \'" + element.getId() + "\' is not part of given BpmnModelInstance");
         BpmnModelElementInstance parentElement = (BpmnModelElementInstance) element.getParentElement();
+        FlowGraphIndex index = FlowGraphIndex.peek(modelInstance);
         parentElement.removeChildElement(element);
+        onFlowElementRemoved(modelInstance, index, element);
+        // Nodes nested in a removed subprocess are dropped along with it
+        if (element instanceof SubProcess) {
+            FlowGraphIndex.invalidate(modelInstance);
+        }
     }
 
     // Remove flow element by id
@@ -86,7 +123,16 @@ public final class BpmnElementHandler {
 
     // Modify a property of a flow element
     public static <T extends FlowElement> void modify(T element, String property, String value) {
+        BpmnModelInstance modelInstance = (BpmnModelInstance) element.getModelInstance();
+        FlowGraphIndex index = FlowGraphIndex.peek(modelInstance);
         element.setAttributeValue(property, value);
+        // Changing ids or sequence flow endpoints reshapes the flow graph
+        if ("id".equals(property) || "sourceRef".equals(property) || "targetRef".equals(property)) {
+            FlowGraphIndex.invalidate(modelInstance);
+        }
+        else {
+            onFlowElementChanged(modelInstance, index, element);
+        }
     }
 
     // Modify a property of a flow element with given id
@@ -104,37 +150,87 @@ public final class BpmnElementHandler {
     }
 
 
+    // Validation batches
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Open a batch in which model validations are deferred until the batch is committed
+    public static void beginBatch(BpmnModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        ValidationBatch.begin(modelInstance);
+    }
+
+    // Close a batch, validating the model once if any validation was deferred in it
+    public static void commitBatch(BpmnModelInstance modelInstance) {
+        commitBatch(modelInstance, true);
+    }
+
+    // Close a batch, discarding the validations deferred in it if validate is false, even inside an outer batch
+    public static void commitBatch(BpmnModelInstance modelInstance, boolean validate) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        if (ValidationBatch.end(modelInstance, validate)) {
+            Bpmn.validateModel(modelInstance);
+        }
+    }
+
+    public static boolean isInBatch(BpmnModelInstance modelInstance) {
+        return ValidationBatch.peek(modelInstance) != null;
+    }
+
+    // Validate the model now, or when the open batch is committed
+    private static void validateModel(BpmnModelInstance modelInstance) {
+        ValidationBatch batch = ValidationBatch.peek(modelInstance);
+        if (batch != null) {
+            batch.deferValidation();
+        }
+        else {
+            Bpmn.validateModel(modelInstance);
+        }
+    }
+
+
     // High-level operations
     /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
 
     public static void rename(BpmnModelInstance modelInstance, FlowElement element, String newName) {
         BpmnHelper.checkElementPresent(contains(modelInstance, element),
                 "FlowElement with id \'" + element.getId() + "\' is not part of given BpmnModelInstance");
+        FlowGraphIndex index = FlowGraphIndex.peek(modelInstance);
         element.setName(newName);
+        onFlowElementChanged(modelInstance, index, element);
     }
 
     // Rename element by id
     public static void rename(BpmnModelInstance modelInstance, String elementId, String newName) {
         FlowElement element = modelInstance.getModelElementById(elementId);
         BpmnHelper.checkElementPresent(element != null, "Flow Element with id \'" + elementId + "\' not found");
+        FlowGraphIndex index = FlowGraphIndex.peek(modelInstance);
         element.setName(newName);
+        onFlowElementChanged(modelInstance, index, element);
     }
 
 
     // Delete a node, all sequence flows connected to it and also obsolete gateways
     public static void delete(BpmnModelInstance modelInstance, FlowNode node){
+        delete(modelInstance, node, true);
+    }
+
+    // Delete a node, validating the model afterwards only if requested
+    public static void delete(BpmnModelInstance modelInstance, FlowNode node, boolean validate){
         // Gateways, start and end events are not allowed to be deleted
         BpmnHelper.checkInvalidArgument(node instanceof Gateway || node instanceof StartEvent || node instanceof EndEvent,
                 "Argument FlowNode must not be a Gateway, StartEvent or EndEvent");
 
-        fixGatewaysDelete(modelInstance, node.getPreviousNodes().list(), node.getSucceedingNodes().list());
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        fixGatewaysDelete(modelInstance, index.getPreviousNodes(node), index.getSucceedingNodes(node));
 
         // Remove flow node and all sequence flows connected to it
         connectAllPreviousToSucceedingNodes(node);
         removeNodeAndSequenceFlows(modelInstance, node);
 
         // Verify model consistency with Camunda API
-        Bpmn.validateModel(modelInstance);
+        if (validate) {
+            validateModel(modelInstance);
+        }
     }
 
     private static void fixGatewaysDelete(BpmnModelInstance modelInstance, Collection<FlowNode> previousNodes, Collection<FlowNode> succeedingNodes) {
@@ -189,17 +285,21 @@ public final class BpmnElementHandler {
 
     // Delete element by id
     public static void delete(BpmnModelInstance modelInstance, String nodeId) {
+        delete(modelInstance, nodeId, true);
+    }
+
+    public static void delete(BpmnModelInstance modelInstance, String nodeId, boolean validate) {
         FlowNode node = modelInstance.getModelElementById(nodeId);
         BpmnHelper.checkElementPresent(node != null, "Flow Node with id \'" + nodeId + "\' not found");
-        delete(modelInstance, node);
+        delete(modelInstance, node, validate);
     }
 
     // Delete range of elements from startingNode to endingNode
     public static void delete(BpmnModelInstance modelInstance, FlowNode startingNode, FlowNode endingNode) {
-        Collection<FlowNode> nodesToDelete = BpmnFragmentHandler.mapProcessFragment(startingNode, endingNode);
-
         // Make sure the fragment can be deleted
-        BpmnFragmentHandler.validateDeleteProcessFragment(nodesToDelete);
+        BpmnFragmentHandler.validateProcessFragment(startingNode, endingNode);
+
+        Collection<FlowNode> nodesToDelete = BpmnFragmentHandler.mapProcessFragment(startingNode, endingNode);
 
         // Connect nodes before with nodes after fragment
         connectAllPreviousToSucceedingNodes(startingNode, endingNode);
@@ -241,15 +341,16 @@ public final class BpmnElementHandler {
         FlowNode createdReplacingNode = contribute(modelInstance, existingNode.getParentElement(), replacingNode);
 
         // Get previous and succeeding nodes
-        int numberPreviousNodes = existingNode.getPreviousNodes().count();
-        int numberSucceedingNodes = existingNode.getSucceedingNodes().count();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        int numberPreviousNodes = index.getPreviousNodes(existingNode).size();
+        int numberSucceedingNodes = index.getSucceedingNodes(existingNode).size();
 
         if (numberPreviousNodes > 0) {
-            FlowNode previousNode = existingNode.getPreviousNodes().singleResult();
+            FlowNode previousNode = index.getPreviousNode(existingNode);
             appendTo(modelInstance, previousNode, createdReplacingNode);
         }
         if (numberSucceedingNodes > 0) {
-            FlowNode succeedingNode = existingNode.getSucceedingNodes().singleResult();
+            FlowNode succeedingNode = index.getSucceedingNode(existingNode);
             appendTo(modelInstance, createdReplacingNode, succeedingNode);
         }
         removeNodeAndSequenceFlows(modelInstance, existingNode);
@@ -280,8 +381,9 @@ public final class BpmnElementHandler {
         FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(replacingFragment);
         FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(replacingFragment);
 
-        FlowNode previousNode = existingNode.getPreviousNodes().singleResult();
-        FlowNode succeedingNode = existingNode.getSucceedingNodes().singleResult();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowNode previousNode = index.getPreviousNode(existingNode);
+        FlowNode succeedingNode = index.getSucceedingNode(existingNode);
 
         // Delete start and end events as well as all incoming and outgoing sequence flows
         removeNodeAndSequenceFlows(replacingFragment, startEvent);
@@ -313,12 +415,14 @@ public final class BpmnElementHandler {
 
         // Use contribute(modelInstance, ) to avoid changing the replacingNode
         //isolateFlowNode(replacingNode);
+        BpmnFragmentHandler.validateProcessFragment(startingNode, endingNode);
         contribute(modelInstance, startingNode.getParentElement(), replacingNode);
 
         Collection<FlowNode> replacedNodes = BpmnFragmentHandler.mapProcessFragment(startingNode, endingNode);
 
-        FlowNode previousNode = startingNode.getPreviousNodes().singleResult();
-        FlowNode succeedingNode = endingNode.getSucceedingNodes().singleResult();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowNode previousNode = index.getPreviousNode(startingNode);
+        FlowNode succeedingNode = index.getSucceedingNode(endingNode);
 
         // Use contribute() to avoid changing the replacingNode
         replacingNode = modelInstance.getModelElementById(replacingNode.getId());
@@ -346,6 +450,7 @@ public final class BpmnElementHandler {
         BpmnHelper.checkNotNull(startingNode, "Argument startingNode must not be null");
         BpmnHelper.checkNotNull(endingNode, "Argument endingNode must not be null");
         BpmnHelper.checkNotNull(replacingFragment, "Argument replacingFragment must not be null");
+        BpmnFragmentHandler.validateProcessFragment(startingNode, endingNode);
 
         replacingFragment = copyModelInstance(replacingFragment);
 
@@ -357,8 +462,9 @@ public final class BpmnElementHandler {
         FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(replacingFragment);
         FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(replacingFragment);
 
-        FlowNode previousNode = startingNode.getPreviousNodes().singleResult();
-        FlowNode succeedingNode = endingNode.getSucceedingNodes().singleResult();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowNode previousNode = index.getPreviousNode(startingNode);
+        FlowNode succeedingNode = index.getSucceedingNode(endingNode);
 
         // Delete start and end events as well as all incoming and outgoing sequence flows
         removeNodeAndSequenceFlows(replacingFragment, startEvent);
@@ -400,8 +506,9 @@ public final class BpmnElementHandler {
         BpmnHelper.checkInvalidArgument(targetNode instanceof EndEvent, "Argument targetNode must not be an end event");
         BpmnHelper.checkInvalidArgument(targetNode instanceof Gateway, "Argument targetNode must not be a gateway");
 
-        FlowNode previousNode = targetNode.getPreviousNodes().singleResult();
-        FlowNode succeedingNode = targetNode.getSucceedingNodes().singleResult();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowNode previousNode = index.getPreviousNode(targetNode);
+        FlowNode succeedingNode = index.getSucceedingNode(targetNode);
 
         // Only newPositionAfterOf set
         if (newPositionBeforeOf == null) {
@@ -414,7 +521,7 @@ public final class BpmnElementHandler {
                         "Argument newPositionAfterOf cannot be a divergent gateway if newPositionBeforeOf not set"
                 );
             }
-            newPositionBeforeOf = newPositionAfterOf.getSucceedingNodes().singleResult();
+            newPositionBeforeOf = index.getSucceedingNode(newPositionAfterOf);
         }
 
         else if (newPositionAfterOf == null) {
@@ -427,7 +534,7 @@ public final class BpmnElementHandler {
                         "Argument newPositionBeforeOf cannot be a convergent gateway if newPositionBeforeOf not set"
                 );
             }
-            newPositionAfterOf = newPositionBeforeOf.getPreviousNodes().singleResult();
+            newPositionAfterOf = index.getPreviousNode(newPositionBeforeOf);
         }
 
         boolean nodesInSuccession = false;
@@ -449,10 +556,11 @@ public final class BpmnElementHandler {
         suppress(modelInstance, targetNode.getOutgoing());
 
         // Connect the previous node to the succeeding node at the old position
-        previousNode.builder().connectTo(succeedingNode.getId());
+        connect(modelInstance, previousNode, succeedingNode);
 
         // Place the target node in the new position
-        newPositionAfterOf.builder().connectTo(targetNode.getId()).connectTo(newPositionBeforeOf.getId());
+        connect(modelInstance, newPositionAfterOf, targetNode);
+        connect(modelInstance, targetNode, newPositionBeforeOf);
     }
 
     public static void move(BpmnModelInstance modelInstance, String targetNodeId, String newPositionAfterOfId, String newPositionBeforeOfId) {
@@ -496,10 +604,11 @@ public final class BpmnElementHandler {
                 "Argument targetEndingNode must not be an end event");
 
         // Validates the target fragment
-        BpmnFragmentHandler.mapProcessFragment(targetStartingNode, targetEndingNode);
+        BpmnFragmentHandler.validateProcessFragment(targetStartingNode, targetEndingNode);
 
-        FlowNode previousNode = targetStartingNode.getPreviousNodes().singleResult();
-        FlowNode succeedingNode = targetEndingNode.getSucceedingNodes().singleResult();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowNode previousNode = index.getPreviousNode(targetStartingNode);
+        FlowNode succeedingNode = index.getSucceedingNode(targetEndingNode);
 
         // Only newPositionAfterOf set
         if (newPositionBeforeOf == null) {
@@ -513,7 +622,7 @@ public final class BpmnElementHandler {
                 );
             }
 
-            newPositionBeforeOf = newPositionAfterOf.getSucceedingNodes().singleResult();
+            newPositionBeforeOf = index.getSucceedingNode(newPositionAfterOf);
         }
 
         else if (newPositionAfterOf == null) {
@@ -527,7 +636,7 @@ public final class BpmnElementHandler {
                         "Argument newPositionBeforeOf cannot be a convergent gateway if newPositionBeforeOf not set"
                 );
             }
-            newPositionAfterOf = newPositionBeforeOf.getPreviousNodes().singleResult();
+            newPositionAfterOf = index.getPreviousNode(newPositionBeforeOf);
         }
 
         boolean nodesInSuccession = false;
@@ -547,11 +656,11 @@ public final class BpmnElementHandler {
         suppress(modelInstance, targetEndingNode.getOutgoing());
 
         // Connect the previous node to the succeeding node at the old position
-        previousNode.builder().connectTo(succeedingNode.getId());
+        connect(modelInstance, previousNode, succeedingNode);
 
         // Place the target node in the new position
-        newPositionAfterOf.builder().connectTo(targetStartingNode.getId());
-        targetEndingNode.builder().connectTo(newPositionBeforeOf.getId());
+        connect(modelInstance, newPositionAfterOf, targetStartingNode);
+        connect(modelInstance, targetEndingNode, newPositionBeforeOf);
     }
 
     public static void move(BpmnModelInstance modelInstance, String targetStartingNodeId, String targetEndingNodeId,
@@ -578,6 +687,7 @@ public final class BpmnElementHandler {
                                         "Argument targetStartingNode must be part of modelInstance");
         BpmnHelper.checkElementPresent(contains(modelInstance, targetEndingNode),
                 "Argument targetEngindNode must be part of modelInstance");
+        BpmnFragmentHandler.validateProcessFragment(targetStartingNode, targetEndingNode);
         Collection<FlowNode> fragment = BpmnFragmentHandler.mapProcessFragment(targetStartingNode, targetEndingNode);
 
         // Check if any node in the fragment is of an invalid type
@@ -587,8 +697,9 @@ public final class BpmnElementHandler {
             BpmnHelper.checkInvalidArgument(fn instanceof Gateway, "\"Fragment to parallelize cannot contain gateways\"");
         }
 
-        FlowNode firstNode = targetStartingNode.getPreviousNodes().singleResult();
-        FlowNode lastNode = targetEndingNode.getSucceedingNodes().singleResult();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowNode firstNode = index.getPreviousNode(targetStartingNode);
+        FlowNode lastNode = index.getSucceedingNode(targetEndingNode);
 
         suppress(modelInstance, targetStartingNode.getIncoming());
 
@@ -596,18 +707,15 @@ public final class BpmnElementHandler {
             suppress(modelInstance, fn.getOutgoing());
         }
 
-        firstNode.builder()
-                .parallelGateway()
-                .connectTo(targetStartingNode.getId())
-                .parallelGateway()
-                .connectTo(lastNode.getId());
-
-        FlowNode divergentGateway = targetStartingNode.getPreviousNodes().singleResult();
-        FlowNode convergentGateway = targetStartingNode.getSucceedingNodes().singleResult();
+        FlowNode divergentGateway = appendFlowNode(modelInstance, firstNode, ParallelGateway.class);
+        connect(modelInstance, divergentGateway, targetStartingNode);
+        FlowNode convergentGateway = appendFlowNode(modelInstance, targetStartingNode, ParallelGateway.class);
+        connect(modelInstance, convergentGateway, lastNode);
 
         for (FlowNode fn: fragment) {
             if (fn != targetStartingNode) {
-                divergentGateway.builder().connectTo(fn.getId()).connectTo(convergentGateway.getId());
+                connect(modelInstance, divergentGateway, fn);
+                connect(modelInstance, fn, convergentGateway);
             }
         }
     }
@@ -631,19 +739,19 @@ public final class BpmnElementHandler {
         StartEvent sourceStartEvent = BpmnElementSearcher.findStartEvent(newSubProcessModel);
         EndEvent sourceEndEvent = BpmnElementSearcher.findEndEvent(newSubProcessModel);
 
-        FlowNode previousNode = targetTask.getPreviousNodes().singleResult();
-        FlowNode succeedingNode = targetTask.getSucceedingNodes().singleResult();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowNode previousNode = index.getPreviousNode(targetTask);
+        FlowNode succeedingNode = index.getSucceedingNode(targetTask);
 
         // Get info from target task and delete it
         String targetTaskId = targetTask.getId();
         String targetTaskName = targetTask.getName();
         removeNodeAndSequenceFlows(modelInstance, targetTask);
 
-        newSubProcessModel = copyModelInstance(newSubProcessModel);
-        Process newSubProcess = BpmnElementSearcher.findFirstProcess(modelInstance);
-        previousNode.builder().subProcess(targetTaskId).name(targetTaskName);
-        SubProcess createdSubProcess = modelInstance.getModelElementById(targetTaskId);
-        createdSubProcess.builder().connectTo(succeedingNode.getId());
+        // The nodes of newSubProcessModel are only read, each one is created again inside the new subprocess
+        SubProcess createdSubProcess = appendFlowNode(modelInstance, previousNode, SubProcess.class, targetTaskId);
+        createdSubProcess.setName(targetTaskName);
+        connect(modelInstance, createdSubProcess, succeedingNode);
 
         populateSubProcess(createdSubProcess, sourceStartEvent);
     }
@@ -694,8 +802,9 @@ public final class BpmnElementHandler {
         FlowNode flowNodeInserted = contribute(modelInstance, afterOf.getParentElement(), flowNodeToInsert);
 
         // Connect flow node between afterOf and the element succeeding it
-        FlowNode succeedingNode = afterOf.getSucceedingNodes().singleResult();
-        afterOf.builder().connectTo(flowNodeInserted.getId()).connectTo(succeedingNode.getId());
+        FlowNode succeedingNode = FlowGraphIndex.of(modelInstance).getSucceedingNode(afterOf);
+        connect(modelInstance, afterOf, flowNodeInserted);
+        connect(modelInstance, flowNodeInserted, succeedingNode);
     }
 
     public static void insertBefore(BpmnModelInstance modelInstance, FlowNode beforeOf, FlowNode flowNodeToInsert) {
@@ -703,17 +812,20 @@ public final class BpmnElementHandler {
         FlowNode flowNodeInserted = contribute(modelInstance, beforeOf.getParentElement(), flowNodeToInsert);
 
         // Connect flow node between beforeOf and the element preceding it
-        FlowNode previousNode = beforeOf.getPreviousNodes().singleResult();
-        previousNode.builder().connectTo(flowNodeInserted.getId()).connectTo(beforeOf.getId());
+        FlowNode previousNode = FlowGraphIndex.of(modelInstance).getPreviousNode(beforeOf);
+        connect(modelInstance, previousNode, flowNodeInserted);
+        connect(modelInstance, flowNodeInserted, beforeOf);
     }
 
     public static void insertBetween(BpmnModelInstance modelInstance, FlowNode afterOf, FlowNode beforeOf, FlowNode flowNodeToInsert) {
         // Insert in series if afterOf precedes beforeOf
-        FlowNode succeedingNode = afterOf.getSucceedingNodes().singleResult();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowNode succeedingNode = index.getSucceedingNode(afterOf);
         if (succeedingNode.equals(beforeOf)) {
             // Add element and connect it between afterOf and beforeOf
             FlowNode flowNodeInserted = contribute(modelInstance, afterOf.getParentElement(), flowNodeToInsert);
-            afterOf.builder().connectTo(flowNodeInserted.getId()).connectTo(beforeOf.getId());
+            connect(modelInstance, afterOf, flowNodeInserted);
+            connect(modelInstance, flowNodeInserted, beforeOf);
             return;
         }
 
@@ -722,40 +834,40 @@ public final class BpmnElementHandler {
         SequenceFlow succeedingFlow = afterOf.getOutgoing().iterator().next();
 
         // Get incoming sequence flow from beforeOf
-        FlowNode previousNode = beforeOf.getPreviousNodes().singleResult();
+        FlowNode previousNode = index.getPreviousNode(beforeOf);
         SequenceFlow previousFlow = beforeOf.getIncoming().iterator().next();
 
         if (succeedingNode instanceof ParallelGateway) {
             if (!BpmnHelper.isGatewayDivergent((Gateway) succeedingNode)) {
                 suppress(modelInstance, succeedingFlow);
-                afterOf.builder().parallelGateway().connectTo(succeedingNode.getId());
+                connect(modelInstance, appendFlowNode(modelInstance, afterOf, ParallelGateway.class), succeedingNode);
             }
         }
         else {
             suppress(modelInstance, succeedingFlow);
-            afterOf.builder().parallelGateway().connectTo(succeedingNode.getId());
+            connect(modelInstance, appendFlowNode(modelInstance, afterOf, ParallelGateway.class), succeedingNode);
         }
 
         if (previousNode instanceof ParallelGateway) {
             if (!BpmnHelper.isGatewayConvergent((Gateway) previousNode)) {
                 suppress(modelInstance, previousFlow);
-                previousNode.builder().parallelGateway().connectTo(beforeOf.getId());
+                connect(modelInstance, appendFlowNode(modelInstance, previousNode, ParallelGateway.class), beforeOf);
             }
         }
         else {
             suppress(modelInstance, previousFlow);
-            previousNode.builder().parallelGateway().connectTo(beforeOf.getId());
+            connect(modelInstance, appendFlowNode(modelInstance, previousNode, ParallelGateway.class), beforeOf);
         }
 
         // Add flow node to model
         FlowNode flowNodeInserted = contribute(modelInstance, afterOf.getParentElement(), flowNodeToInsert);
         // Get the parallel gateway created after afterOf node and connnect the node to be inserted after it
-        FlowNode afterGateway = afterOf.getSucceedingNodes().singleResult();
-        afterGateway.builder().connectTo(flowNodeInserted.getId());
+        FlowNode afterGateway = index.getSucceedingNode(afterOf);
+        connect(modelInstance, afterGateway, flowNodeInserted);
 
         // Get the parallel gateway created before beforeOf node and connect the node to be inserted before it
-        FlowNode beforeGateway = beforeOf.getPreviousNodes().singleResult();
-        flowNodeInserted.builder().connectTo(beforeGateway.getId());
+        FlowNode beforeGateway = index.getPreviousNode(beforeOf);
+        connect(modelInstance, flowNodeInserted, beforeGateway);
     }
 
     public static void insert(BpmnModelInstance modelInstance, String afterOfId, String beforeOfId, BpmnModelInstance fragmentToInsert) {
@@ -803,8 +915,9 @@ public final class BpmnElementHandler {
         removeNodeAndSequenceFlows(fragmentModel, endEvent);
 
         // Insert node in series before "beforeOf" node
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
         if (afterOf == null) {
-            FlowNode previousNode = beforeOf.getPreviousNodes().singleResult();
+            FlowNode previousNode = index.getPreviousNode(beforeOf);
 
             suppress(modelInstance, previousNode.getOutgoing().iterator().next());
 
@@ -815,7 +928,7 @@ public final class BpmnElementHandler {
 
         // Insert node in series after "afterOf" node
         else if (beforeOf == null) {
-            FlowNode succeedingNode = afterOf.getSucceedingNodes().singleResult();
+            FlowNode succeedingNode = index.getSucceedingNode(afterOf);
 
             suppress(modelInstance, afterOf.getOutgoing().iterator().next());
 
@@ -826,7 +939,7 @@ public final class BpmnElementHandler {
 
         else {
             // Insert in series
-            if (afterOf.getSucceedingNodes().singleResult().equals(beforeOf)) {
+            if (index.getSucceedingNode(afterOf).equals(beforeOf)) {
                 suppress(modelInstance, afterOf.getOutgoing().iterator().next());
 
                 appendTo(modelInstance, afterOf, firstNodeToInsert);
@@ -837,38 +950,38 @@ public final class BpmnElementHandler {
             }
 
             // Insert in parallel
-            FlowNode succeedingNode = afterOf.getSucceedingNodes().singleResult();
+            FlowNode succeedingNode = index.getSucceedingNode(afterOf);
             SequenceFlow succeedingFlow = afterOf.getOutgoing().iterator().next();
 
-            FlowNode previousNode = beforeOf.getPreviousNodes().singleResult();
+            FlowNode previousNode = index.getPreviousNode(beforeOf);
             SequenceFlow previousFlow = beforeOf.getIncoming().iterator().next();
 
 
             if (succeedingNode instanceof ParallelGateway) {
                 if (!BpmnHelper.isGatewayDivergent((Gateway) succeedingNode)) {
                     suppress(modelInstance, succeedingFlow);
-                    afterOf.builder().parallelGateway().connectTo(succeedingNode.getId());
+                    connect(modelInstance, appendFlowNode(modelInstance, afterOf, ParallelGateway.class), succeedingNode);
                 }
             }
             else {
                 suppress(modelInstance, succeedingFlow);
-                afterOf.builder().parallelGateway().connectTo(succeedingNode.getId());
+                connect(modelInstance, appendFlowNode(modelInstance, afterOf, ParallelGateway.class), succeedingNode);
             }
 
             if (previousNode instanceof ParallelGateway) {
                 if (!BpmnHelper.isGatewayConvergent((Gateway) previousNode)) {
                     suppress(modelInstance, previousFlow);
-                    previousNode.builder().parallelGateway().connectTo(beforeOf.getId());
+                    connect(modelInstance, appendFlowNode(modelInstance, previousNode, ParallelGateway.class), beforeOf);
                 }
             }
             else {
                 suppress(modelInstance, previousFlow);
-                previousNode.builder().parallelGateway().connectTo(beforeOf.getId());
+                connect(modelInstance, appendFlowNode(modelInstance, previousNode, ParallelGateway.class), beforeOf);
             }
 
-            appendTo(modelInstance, afterOf.getSucceedingNodes().singleResult(), firstNodeToInsert);
+            appendTo(modelInstance, index.getSucceedingNode(afterOf), firstNodeToInsert);
             FlowNode lastInsertedFlowNode = modelInstance.getModelElementById(lastNodeToInsertId);
-            appendTo(modelInstance, lastInsertedFlowNode, beforeOf.getPreviousNodes().singleResult());
+            appendTo(modelInstance, lastInsertedFlowNode, index.getPreviousNode(beforeOf));
         }
     }
 
@@ -912,39 +1025,40 @@ public final class BpmnElementHandler {
         flowNodeToInsert = contribute(modelInstance, afterOf.getParentElement(), flowNodeToInsert);
 
         // Insert in series (optional node)
-        if (afterOf.getSucceedingNodes().singleResult().equals(beforeOf)) {
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        if (index.getSucceedingNode(afterOf).equals(beforeOf)) {
 
             suppress(modelInstance, afterOf.getOutgoing());
 
-            afterOf.builder().parallelGateway();
-            ParallelGateway conditionalGateway = (ParallelGateway) afterOf.getSucceedingNodes().singleResult();
+            ParallelGateway conditionalGateway = appendFlowNode(modelInstance, afterOf, ParallelGateway.class);
 
             conditionalAppendTo(conditionalGateway, flowNodeToInsert, null, condition);
             FlowNode createdFlowNode = modelInstance.getModelElementById(flowNodeToInsert.getId());
-            createdFlowNode.builder().parallelGateway().connectTo(beforeOf.getId());
+            FlowNode convergentGateway = appendFlowNode(modelInstance, createdFlowNode, ParallelGateway.class);
+            connect(modelInstance, convergentGateway, beforeOf);
 
-            FlowNode convergentGateway = createdFlowNode.getSucceedingNodes().singleResult();
-            conditionalGateway.builder().connectTo(convergentGateway.getId());
+            connect(modelInstance, conditionalGateway, convergentGateway);
 
             return;
         }
 
         // Insert in parallel
 
-        FlowNode succeedingNode = afterOf.getSucceedingNodes().singleResult();
+        FlowNode succeedingNode = index.getSucceedingNode(afterOf);
 
-        FlowNode previousNode = beforeOf.getPreviousNodes().singleResult();
+        FlowNode previousNode = index.getPreviousNode(beforeOf);
 
         suppress(modelInstance, afterOf.getOutgoing());
         suppress(modelInstance, beforeOf.getIncoming());
 
-        afterOf.builder().parallelGateway().connectTo(succeedingNode.getId());
-        previousNode.builder().parallelGateway().connectTo(beforeOf.getId());
-        FlowNode conditionalGateway = afterOf.getSucceedingNodes().singleResult();
+        FlowNode conditionalGateway = appendFlowNode(modelInstance, afterOf, ParallelGateway.class);
+        connect(modelInstance, conditionalGateway, succeedingNode);
+        FlowNode convergentGateway = appendFlowNode(modelInstance, previousNode, ParallelGateway.class);
+        connect(modelInstance, convergentGateway, beforeOf);
 
         conditionalAppendTo(conditionalGateway, flowNodeToInsert, null, condition);
         FlowNode createdFlowNode = modelInstance.getModelElementById(flowNodeToInsert.getId());
-        appendTo(modelInstance, createdFlowNode, beforeOf.getPreviousNodes().singleResult());
+        appendTo(modelInstance, createdFlowNode, convergentGateway);
 
     }
 
@@ -997,54 +1111,55 @@ public final class BpmnElementHandler {
         removeNodeAndSequenceFlows(fragmentModelToInsert, endEvent);
 
         // Insert in series (optional node)
-        if (afterOf.getSucceedingNodes().singleResult().equals(beforeOf)) {
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        FlowGraphIndex fragmentIndex = FlowGraphIndex.of(fragmentModelToInsert);
+        if (index.getSucceedingNode(afterOf).equals(beforeOf)) {
 
             suppress(modelInstance, afterOf.getOutgoing());
 
-            afterOf.builder().parallelGateway().parallelGateway().connectTo(beforeOf.getId());
-            FlowNode conditionalGateway = afterOf.getSucceedingNodes().singleResult();
-            FlowNode convergentGateway = beforeOf.getPreviousNodes().singleResult();
+            FlowNode conditionalGateway = appendFlowNode(modelInstance, afterOf, ParallelGateway.class);
+            FlowNode convergentGateway = appendFlowNode(modelInstance, conditionalGateway, ParallelGateway.class);
+            connect(modelInstance, convergentGateway, beforeOf);
 
             conditionalAppendTo(conditionalGateway, firstNodeToInsert, null, condition);
 
             FlowNode firstCreatedFlowNode = modelInstance.getModelElementById(firstNodeToInsert.getId());
 
-            for (FlowNode fn: firstNodeToInsert.getSucceedingNodes().list()) {
+            for (FlowNode fn: fragmentIndex.getSucceedingNodes(firstNodeToInsert)) {
                 appendTo(modelInstance, firstCreatedFlowNode, fn);
             }
 
             FlowNode lastCreatedFlowNode = modelInstance.getModelElementById(lastNodeToInsertId);
 
-            lastCreatedFlowNode.builder().connectTo(convergentGateway.getId());
+            connect(modelInstance, lastCreatedFlowNode, convergentGateway);
 
             return;
         }
 
         // Insert in parallel
 
-        FlowNode succeedingNode = afterOf.getSucceedingNodes().singleResult();
-        FlowNode previousNode = beforeOf.getPreviousNodes().singleResult();
+        FlowNode succeedingNode = index.getSucceedingNode(afterOf);
+        FlowNode previousNode = index.getPreviousNode(beforeOf);
 
         suppress(modelInstance, afterOf.getOutgoing());
         suppress(modelInstance, beforeOf.getIncoming());
 
-        afterOf.builder().parallelGateway().connectTo(succeedingNode.getId());
-        previousNode.builder().parallelGateway().connectTo(beforeOf.getId());
-
-        FlowNode conditionalGateway = afterOf.getSucceedingNodes().singleResult();
-        FlowNode convergentGateway = beforeOf.getPreviousNodes().singleResult();
+        FlowNode conditionalGateway = appendFlowNode(modelInstance, afterOf, ParallelGateway.class);
+        connect(modelInstance, conditionalGateway, succeedingNode);
+        FlowNode convergentGateway = appendFlowNode(modelInstance, previousNode, ParallelGateway.class);
+        connect(modelInstance, convergentGateway, beforeOf);
 
         conditionalAppendTo(conditionalGateway, firstNodeToInsert, null, condition);
 
         FlowNode firstCreatedFlowNode = modelInstance.getModelElementById(firstNodeToInsert.getId());
 
-        for (FlowNode fn: firstNodeToInsert.getSucceedingNodes().list()) {
+        for (FlowNode fn: fragmentIndex.getSucceedingNodes(firstNodeToInsert)) {
             appendTo(modelInstance, firstCreatedFlowNode, fn);
         }
 
         FlowNode lastCreatedFlowNode = modelInstance.getModelElementById(lastNodeToInsertId);
 
-        lastCreatedFlowNode.builder().connectTo(convergentGateway.getId());
+        connect(modelInstance, lastCreatedFlowNode, convergentGateway);
     }
 
     public static void conditionalInsert(BpmnModelInstance modelInstance, FlowNode afterOf, FlowNode beforeOf, BpmnModelInstance fragmentToInsert,  String condition, boolean inLoop) {
@@ -1064,32 +1179,91 @@ public final class BpmnElementHandler {
 
     // Set a generated unique id to a single element of the model and return it
     public static String setUniqueId(FlowElement element) {
-        // Generate unique prefix
-        String uniquePrefix = "fe-" + (new Date()).getTime() + "-";
-        return addUniquePrefix(element, uniquePrefix);
+        String uniqueId = addUniquePrefix(element.getId(), IdAllocator.getDefault().nextPrefix());
+        element.setId(uniqueId);
+        FlowGraphIndex.invalidate((BpmnModelInstance) element.getModelInstance());
+        return uniqueId;
     }
 
     // Generate unique ids to all elements of the model
+    // Ids and references to them are rewritten in a single pass over the DOM: renaming elements one by one through
+    // the Camunda API scans the whole model for references to update after each of them.
     public static void generateUniqueIds(BpmnModelInstance modelInstance) {
-        String uniquePrefix = "fe-" + (new Date()).getTime() + "-";
-        // Set new id for all flow elements in models
-        for(FlowElement element: modelInstance.getModelElementsByType(FlowElement.class)) {
-            addUniquePrefix(element, uniquePrefix);
+        String uniquePrefix = IdAllocator.getDefault().nextPrefix();
+        Map<String, String> renamedIds = new HashMap<String, String>();
+        Map<String, Boolean> flowElementNames = new HashMap<String, Boolean>();
+        List<Attr> referenceAttributes = new ArrayList<Attr>();
+        List<Element> referenceElements = new ArrayList<Element>();
+
+        Document document = (Document) modelInstance.getDocument().getDomSource().getNode();
+        Deque<Element> pending = new ArrayDeque<Element>();
+        pending.push(document.getDocumentElement());
+        while (!pending.isEmpty()) {
+            Element element = pending.pop();
+
+            // Set new id for all flow elements in models
+            if (element.hasAttribute("id") && isFlowElement(modelInstance, element, flowElementNames)) {
+                String id = element.getAttribute("id");
+                String uniqueId = addUniquePrefix(id, uniquePrefix);
+                renamedIds.put(id, uniqueId);
+                element.setAttribute("id", uniqueId);
+                element.setIdAttribute("id", true);
+            }
+
+            // References are updated once every new id is known
+            for (String attributeName: ID_REFERENCE_ATTRIBUTES) {
+                Attr attribute = element.getAttributeNode(attributeName);
+                if (attribute != null) {
+                    referenceAttributes.add(attribute);
+                }
+            }
+            if (ID_REFERENCE_ELEMENTS.contains(element.getLocalName())) {
+                referenceElements.add(element);
+            }
+
+            for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    pending.push((Element) child);
+                }
+            }
+        }
+
+        for (Attr attribute: referenceAttributes) {
+            String uniqueId = renamedIds.get(attribute.getValue());
+            if (uniqueId != null) {
+                attribute.setValue(uniqueId);
+            }
         }
+        for (Element element: referenceElements) {
+            String uniqueId = renamedIds.get(element.getTextContent().trim());
+            if (uniqueId != null) {
+                element.setTextContent(uniqueId);
+            }
+        }
+        FlowGraphIndex.invalidate(modelInstance);
     }
 
-    // Add a generated prefix to an element id
-    private static String addUniquePrefix(FlowElement element, String uniquePrefix) {
-        // Verify if id already contains a generated prefix and substitute just the generated number
-        if (element.getId().startsWith("fe-")) {
-            String idWithoutPrefix = element.getId().substring(element.getId().indexOf('-', 3) + 1);
-            element.setId(uniquePrefix + idWithoutPrefix);
+    private static boolean isFlowElement(BpmnModelInstance modelInstance, Element element, Map<String, Boolean> flowElementNames) {
+        if (!BpmnModelConstants.BPMN20_NS.equals(element.getNamespaceURI())) {
+            return false;
         }
-        // Just prepend the prefix
-        else {
-            element.setId(uniquePrefix + element.getId());
+        Boolean flowElement = flowElementNames.get(element.getLocalName());
+        if (flowElement == null) {
+            ModelElementType type = modelInstance.getModel().getTypeForName(BpmnModelConstants.BPMN20_NS, element.getLocalName());
+            flowElement = type != null && FlowElement.class.isAssignableFrom(type.getInstanceType());
+            flowElementNames.put(element.getLocalName(), flowElement);
+        }
+        return flowElement;
+    }
+
+    // Add a generated prefix to an id
+    private static String addUniquePrefix(String id, String uniquePrefix) {
+        // Verify if id already contains a generated prefix and substitute just the generated part
+        if (id.startsWith("fe-")) {
+            return uniquePrefix + id.substring(id.indexOf('-', 3) + 1);
         }
-        return element.getId();
+        // Just prepend the prefix
+        return uniquePrefix + id;
     }
 
     // Connect all nodes before the given node to the ones after it
@@ -1099,9 +1273,11 @@ public final class BpmnElementHandler {
 
     // Connect all previous nodes of a given node, to all succeeding nodes of another given node
     public static void connectAllPreviousToSucceedingNodes(FlowNode previous, FlowNode succeeding) {
-        for (FlowNode previousNode: previous.getPreviousNodes().list()) {
-            for (FlowNode succeedingNode: succeeding.getSucceedingNodes().list()) {
-                previousNode.builder().connectTo(succeedingNode.getId());
+        BpmnModelInstance modelInstance = (BpmnModelInstance) previous.getModelInstance();
+        FlowGraphIndex index = FlowGraphIndex.of(modelInstance);
+        for (FlowNode previousNode: index.getPreviousNodes(previous)) {
+            for (FlowNode succeedingNode: index.getSucceedingNodes(succeeding)) {
+                connect(modelInstance, previousNode, succeedingNode);
             }
         }
     }
@@ -1121,14 +1297,20 @@ public final class BpmnElementHandler {
         BpmnModelElementInstance parentElement = (BpmnModelElementInstance) appendNode.getParentElement();
 
         // If node already created, includeNode is connected to appendNode and returns
-        if (modelInstance.getModelElementById(includeNode.getId()) != null){
-            appendNode.builder().connectTo(includeNode.getId());
+        FlowNode existingNode = modelInstance.getModelElementById(includeNode.getId());
+        if (existingNode != null){
+            connect(modelInstance, appendNode, existingNode);
             return;
         }
 
         // Create new FlowNode in model with same properties as flowNode
         FlowNode newNode = contribute(modelInstance, parentElement, includeNode);
-        appendNode.builder().connectTo(newNode.getId());
+        connect(modelInstance, appendNode, newNode);
+
+        // A detached node, such as the ones made by BpmnElementFactory, brings nothing else along
+        if (includeNode.getParentElement() == null) {
+            return;
+        }
 
         // Populate subprocess
         if (includeNode instanceof SubProcess) {
@@ -1137,10 +1319,9 @@ public final class BpmnElementHandler {
         }
 
         // Recursive call to include all includeNode succeeding nodes
-        appendNode = modelInstance.getModelElementById(includeNode.getId());
-        for (SequenceFlow sequenceFlow : includeNode.getOutgoing()) {
-            includeNode = sequenceFlow.getTarget();
-            appendTo(appendNode, includeNode);
+        appendNode = newNode;
+        for (FlowNode succeedingNode : FlowGraphIndex.of(includeNode).getSucceedingNodes(includeNode)) {
+            appendTo(modelInstance, appendNode, succeedingNode);
         }
     }
 
@@ -1170,14 +1351,15 @@ public final class BpmnElementHandler {
         BpmnModelElementInstance parentElement = (BpmnModelElementInstance) appendNode.getParentElement();
 
         // If node already created, includeNode is connected to appendNode and returns
-        if (modelInstance.getModelElementById(includeNode.getId()) != null){
-            appendNode.builder().condition(conditionName, conditionExpression).connectTo(includeNode.getId());
+        FlowNode existingNode = modelInstance.getModelElementById(includeNode.getId());
+        if (existingNode != null){
+            connect(modelInstance, appendNode, existingNode, conditionName, conditionExpression);
             return;
         }
 
         // Create new FlowNode in model with same properties as flowNode
         FlowNode newNode = contribute(modelInstance, parentElement, includeNode);
-        appendNode.builder().condition(conditionName, conditionExpression).connectTo(newNode.getId());
+        connect(modelInstance, appendNode, newNode, conditionName, conditionExpression);
 
         // BPMN SubProcess special case
         if (includeNode instanceof SubProcess) {
@@ -1215,50 +1397,60 @@ public final class BpmnElementHandler {
         return;
     }
 
+    // Detached copy of an element with the same type, id and name
     public static  <T extends ModelElementInstance> T copyElement(T element) {
-        BpmnModelInstance modelInstance = Bpmn.createEmptyModel();
-        //BpmnModelInstance modelInstance = (BpmnModelInstance) element.getModelInstance();
-        T copiedElement = (T) modelInstance.newInstance(element.getElementType());
-        copiedElement.setAttributeValue("id", element.getAttributeValue("id"), true);
-        copiedElement.setAttributeValue("name", element.getAttributeValue("name"), true);
-        return copiedElement;
+        return BpmnElementFactory.copyElement(element);
     }
 
     // Populate a subprocess with flow nodes
     public static void populateSubProcess(SubProcess targetSubProcess, StartEvent sourceStartEvent) {
-        targetSubProcess.builder().embeddedSubProcess().startEvent(sourceStartEvent.getId()).name(sourceStartEvent.getName());
         BpmnModelInstance modelInstance = (BpmnModelInstance) targetSubProcess.getModelInstance();
-        FlowNode appendNode = modelInstance.getModelElementById(sourceStartEvent.getId());
-        FlowNode includeNode = sourceStartEvent.getSucceedingNodes().singleResult();
+        FlowNode appendNode = contribute(modelInstance, targetSubProcess, sourceStartEvent);
+        FlowNode includeNode = FlowGraphIndex.of(sourceStartEvent).getSucceedingNode(sourceStartEvent);
 
         appendTo(modelInstance, appendNode, includeNode);
 
     }
 
     // Make a copy of a BpmnModelInstance
+    // The DOM document is deep-cloned in memory, so the copy is neither serialized nor validated again
     public static BpmnModelInstance copyModelInstance (BpmnModelInstance modelToCopy) {
-        return Bpmn.readModelFromStream(
-                new ByteArrayInputStream(
-                        Bpmn.convertToString(modelToCopy).getBytes(StandardCharsets.UTF_8)
-                )
+        return new BpmnModelInstanceImpl(
+                (ModelImpl) Bpmn.INSTANCE.getBpmnModel(),
+                Bpmn.INSTANCE.getBpmnModelBuilder(),
+                modelToCopy.getDocument().clone()
         );
     }
 
     // Make a copy of a TailorableBpmnModelInstance
     public static TailorableBpmnModelInstance copyModelInstance (TailorableBpmnModelInstance modelToCopy) {
-        return TailorableBpmn.readModelFromStream(
-                new ByteArrayInputStream(
-                        TailorableBpmn.convertToString(modelToCopy).getBytes(StandardCharsets.UTF_8)
-                )
+        return new TailorableBpmnModelInstanceImpl(
+                (ModelImpl) TailorableBpmn.INSTANCE.getTailorableBpmnModel(),
+                TailorableBpmn.INSTANCE.getTailorableBpmnModelBuilder(),
+                modelToCopy.getDocument().clone()
         );
     }
 
-    // Make a copy of a BpmntModelInstance
+    // Make a copy of a BpmntModelInstance, including its BPMNt log
+    // Operations are copied as well, so that executing the log of the copy doesn't renumber the original one
     public static BpmntModelInstance copyModelInstance (BpmntModelInstance modelToCopy) {
-        return Bpmnt.readModelFromStream(
-                new ByteArrayInputStream(
-                        Bpmnt.convertToString(modelToCopy).getBytes(StandardCharsets.UTF_8)
-                )
+        BpmntModelInstance copiedModel = copyModelInstanceToBpmnt(modelToCopy);
+        if (modelToCopy.getBpmntLog() != null) {
+            List<BpmntOperation> copiedLog = new ArrayList<BpmntOperation>(modelToCopy.getBpmntLog().size());
+            for (BpmntOperation operation: modelToCopy.getBpmntLog()) {
+                copiedLog.add(operation.copy());
+            }
+            copiedModel.setBpmntLog(copiedLog);
+        }
+        return copiedModel;
+    }
+
+    // Make a BPMNt copy of any BpmnModelInstance, without initializing its BPMNt log
+    public static BpmntModelInstance copyModelInstanceToBpmnt (BpmnModelInstance modelToCopy) {
+        return new BpmntModelInstanceImpl(
+                (ModelImpl) Bpmnt.INSTANCE.getBpmntModel(),
+                Bpmnt.INSTANCE.getBpmntModelBuilder(),
+                modelToCopy.getDocument().clone()
         );
     }
 
@@ -1276,4 +1468,107 @@ public final class BpmnElementHandler {
 
         populateSubProcess(subProcess, BpmnElementSearcher.findStartEvent(processToConvert));
     }
+
+
+    // Flow graph construction
+    // Every node and sequence flow created here is registered in the model FlowGraphIndex, peeked before the DOM changes
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Connect two flow nodes with a new sequence flow, placed next to the source node
+    private static SequenceFlow connect(BpmnModelInstance modelInstance, FlowNode source, FlowNode target) {
+        SequenceFlow sequenceFlow = createFlowElement(modelInstance, SequenceFlow.class, null);
+        FlowGraphIndex index = FlowGraphIndex.peek(modelInstance);
+        source.getParentElement().addChildElement(sequenceFlow);
+        sequenceFlow.setSource(source);
+        source.getOutgoing().add(sequenceFlow);
+        sequenceFlow.setTarget(target);
+        target.getIncoming().add(sequenceFlow);
+
+        if (index != null) {
+            index.addFlow(sequenceFlow);
+        }
+        onFlowElementChanged(modelInstance, index, sequenceFlow);
+        return sequenceFlow;
+    }
+
+    // Connect two flow nodes with a new conditional sequence flow
+    private static SequenceFlow connect(BpmnModelInstance modelInstance, FlowNode source, FlowNode target,
+                                        String conditionName, String conditionExpression) {
+        SequenceFlow sequenceFlow = connect(modelInstance, source, target);
+        FlowGraphIndex index = FlowGraphIndex.peek(modelInstance);
+        if (conditionName != null) {
+            sequenceFlow.setName(conditionName);
+        }
+        ConditionExpression condition = modelInstance.newInstance(ConditionExpression.class);
+        condition.setTextContent(conditionExpression);
+        sequenceFlow.setConditionExpression(condition);
+        onFlowElementChanged(modelInstance, index, sequenceFlow);
+        return sequenceFlow;
+    }
+
+    // Create a new flow node next to a given node and connect it after that node
+    private static <T extends FlowNode> T appendFlowNode(BpmnModelInstance modelInstance, FlowNode appendNode, Class<T> type) {
+        return appendFlowNode(modelInstance, appendNode, type, null);
+    }
+
+    private static <T extends FlowNode> T appendFlowNode(BpmnModelInstance modelInstance, FlowNode appendNode, Class<T> type, String id) {
+        T flowNode = createFlowElement(modelInstance, type, id);
+        FlowGraphIndex index = FlowGraphIndex.peek(modelInstance);
+        appendNode.getParentElement().addChildElement(flowNode);
+        onFlowNodeAdded(modelInstance, index, flowNode);
+        connect(modelInstance, appendNode, flowNode);
+        return flowNode;
+    }
+
+    private static <T extends FlowElement> T createFlowElement(BpmnModelInstance modelInstance, Class<T> type, String id) {
+        T flowElement = modelInstance.newInstance(type);
+        flowElement.setId(id != null ? id : IdAllocator.getDefault().nextId(flowElement.getElementType().getTypeName()));
+        return flowElement;
+    }
+
+    private static void onFlowNodeAdded(BpmnModelInstance modelInstance, FlowGraphIndex index, FlowNode flowNode) {
+        if (isScopeBoundary(flowNode)) {
+            ScopeIndex.invalidate(modelInstance);
+        }
+        if (index != null) {
+            index.addNode(flowNode);
+        }
+        onFlowElementChanged(modelInstance, index, flowNode);
+    }
+
+    private static void onFlowElementRemoved(BpmnModelInstance modelInstance, FlowGraphIndex index, FlowElement flowElement) {
+        if (isScopeBoundary(flowElement)) {
+            ScopeIndex.invalidate(modelInstance);
+        }
+        ModelFingerprint fingerprint = ModelFingerprint.peek(modelInstance);
+        if (fingerprint != null) {
+            fingerprint.elementRemoved(flowElement);
+        }
+        if (index == null) {
+            return;
+        }
+        if (flowElement instanceof SequenceFlow) {
+            index.removeFlow(flowElement.getId());
+        }
+        else if (flowElement instanceof FlowNode) {
+            index.removeNode((FlowNode) flowElement);
+        }
+        index.contentChanged();
+    }
+
+    // New or changed elements are rehashed by the ModelFingerprint on next lookup
+    private static void onFlowElementChanged(BpmnModelInstance modelInstance, FlowGraphIndex index, FlowElement flowElement) {
+        ModelFingerprint fingerprint = ModelFingerprint.peek(modelInstance);
+        if (fingerprint != null) {
+            fingerprint.elementChanged(flowElement);
+        }
+        if (index != null) {
+            index.contentChanged();
+        }
+    }
+
+    // Start events, end events and subprocesses are tracked by the ScopeIndex
+    private static boolean isScopeBoundary(FlowElement flowElement) {
+        return flowElement instanceof StartEvent || flowElement instanceof EndEvent || flowElement instanceof SubProcess;
+    }
 }
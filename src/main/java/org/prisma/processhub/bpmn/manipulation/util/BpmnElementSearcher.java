@@ -6,8 +6,6 @@ import org.camunda.bpm.model.bpmn.instance.Process;
 import org.camunda.bpm.model.xml.instance.ModelElementInstance;
 import org.prisma.processhub.bpmn.manipulation.exception.ElementNotFoundException;
 
-import java.util.Collection;
-
 public final class BpmnElementSearcher {
     private BpmnElementSearcher() {}
 
@@ -19,41 +17,12 @@ public final class BpmnElementSearcher {
 
     // Returns the first start event found in a process
     public static StartEvent findStartEvent(Process process) {
-        BpmnModelInstance modelInstance = (BpmnModelInstance) process.getModelInstance();
-        Collection<StartEvent> startEvents = modelInstance.getModelElementsByType(StartEvent.class);
-        if (startEvents.isEmpty()) {
-            throw new ElementNotFoundException("No StartEvent found in BpmnModelInstance");
-        }
-        for (StartEvent startEvent: startEvents) {
-            // It is expected there's at least one StartEvent whose parent is Process
-            ModelElementInstance parent = startEvent.getParentElement();
-            if (parent instanceof Process) {
-                String processId = ((Process) parent).getId();
-                if (processId.equals(process.getId())) {
-                    return startEvent;
-                }
-            }
-        }
-        throw new ElementNotFoundException("No StartEvent found in given Process");
+        return findStartEvent(process, "No StartEvent found in given Process");
     }
 
     // Returns the first start event found in a subprocess
     public static StartEvent findStartEvent(SubProcess subProcess) {
-        BpmnModelInstance modelInstance = (BpmnModelInstance) subProcess.getModelInstance();
-        Collection<StartEvent> startEvents = modelInstance.getModelElementsByType(StartEvent.class);
-        if (startEvents.isEmpty()) {
-            throw new ElementNotFoundException("No StartEvent found in BpmnModelInstance");
-        }
-        for (StartEvent startEvent: startEvents) {
-            ModelElementInstance parent = startEvent.getParentElement();
-            if (parent instanceof SubProcess) {
-                String subProcessId = ((SubProcess) parent).getId();
-                if (subProcessId.equals(subProcess.getId())) {
-                    return startEvent;
-                }
-            }
-        }
-        throw new ElementNotFoundException("No StartEvent found in given SubProcess");
+        return findStartEvent(subProcess, "No StartEvent found in given SubProcess");
     }
 
     // Returns the first end event found in a model
@@ -64,94 +33,42 @@ public final class BpmnElementSearcher {
 
     // Returns the first end event found in a process
     public static EndEvent findEndEvent(Process process) {
-        BpmnModelInstance modelInstance = (BpmnModelInstance) process.getModelInstance();
-        Collection<EndEvent> endEvents = modelInstance.getModelElementsByType(EndEvent.class);
-        if (endEvents.isEmpty()) {
-            throw new ElementNotFoundException("No EndEvents found in BpmnModelInstance");
-        }
-        for (EndEvent endEvent: endEvents) {
-            ModelElementInstance parent = endEvent.getParentElement();
-            if (parent instanceof Process) {
-                String processId = ((Process) parent).getId();
-                if (processId.equals(process.getId())) {
-                    return endEvent;
-                }
-            }
-        }
-        throw new ElementNotFoundException("No EndEvent found in given Process");
+        return findEndEvent(process, "No EndEvent found in given Process");
     }
 
     // Returns the first end event found in a subprocess
     public static EndEvent findEndEvent(SubProcess subProcess) {
-        BpmnModelInstance modelInstance = (BpmnModelInstance) subProcess.getModelInstance();
-        Collection<EndEvent> endEvents = modelInstance.getModelElementsByType(EndEvent.class);
-        if (endEvents.isEmpty()) {
-            throw new ElementNotFoundException("No EndEvents found in BpmnModelInstance");
-        }
-        for (EndEvent endEvent: endEvents) {
-            ModelElementInstance parent = endEvent.getParentElement();
-            if (parent instanceof SubProcess) {
-                String subProcessId = ((SubProcess) parent).getId();
-                if (subProcessId.equals(subProcess.getId())) {
-                    return endEvent;
-                }
-            }
-        }
-        throw new ElementNotFoundException("No EndEvent found in given SubProcess");
+        return findEndEvent(subProcess, "No EndEvent found in given SubProcess");
     }
 
     // Returns the flow node connected to the start event of the first process of a model
     public static FlowNode findFlowNodeAfterStartEvent (BpmnModelInstance modelInstance) {
-        StartEvent startEvent = findStartEvent(modelInstance);
-        if (startEvent.getSucceedingNodes().count() == 0) {
-            throw new ElementNotFoundException("No FlowNode found after StartEvent");
-        }
-        return startEvent.getSucceedingNodes().singleResult();
+        return findFlowNodeAfter(findStartEvent(modelInstance));
     }
 
     // Returns the flow node connected to the start event of a process
     public static FlowNode findFlowNodeAfterStartEvent (Process process) {
-        StartEvent startEvent = findStartEvent(process);
-        if (startEvent.getSucceedingNodes().count() == 0) {
-            throw new ElementNotFoundException("No FlowNode found after StartEvent");
-        }
-        return startEvent.getSucceedingNodes().singleResult();
+        return findFlowNodeAfter(findStartEvent(process));
     }
 
     // Returns the flow node connected to the start event of a subprocess
     public static FlowNode findFlowNodeAfterStartEvent (SubProcess subProcess) {
-        StartEvent startEvent = findStartEvent(subProcess);
-        if (startEvent.getSucceedingNodes().count() == 0) {
-            throw new ElementNotFoundException("No FlowNode found after StartEvent");
-        }
-        return startEvent.getSucceedingNodes().singleResult();
+        return findFlowNodeAfter(findStartEvent(subProcess));
     }
 
     // Returns the flow node connected to the end event of the first process of a model
     public static FlowNode findFlowNodeBeforeEndEvent (BpmnModelInstance modelInstance) {
-        EndEvent endEvent = findEndEvent(modelInstance);
-        if (endEvent.getPreviousNodes().count() == 0) {
-            throw new ElementNotFoundException("No FlowNode found before EndEvent");
-        }
-        return endEvent.getPreviousNodes().singleResult();
+        return findFlowNodeBefore(findEndEvent(modelInstance));
     }
 
     // Returns the flow node connected to the end event of a process
     public static FlowNode findFlowNodeBeforeEndEvent (Process process) {
-        EndEvent endEvent = findEndEvent(process);
-        if (endEvent.getPreviousNodes().count() == 0) {
-            throw new ElementNotFoundException("No FlowNode found before EndEvent");
-        }
-        return endEvent.getPreviousNodes().singleResult();
+        return findFlowNodeBefore(findEndEvent(process));
     }
 
     // Returns the flow node connected to the end event of a subprocess
     public static FlowNode findFlowNodeBeforeEndEvent (SubProcess subProcess) {
-        EndEvent endEvent = findEndEvent(subProcess);
-        if (endEvent.getPreviousNodes().count() == 0) {
-            throw new ElementNotFoundException("No FlowNode found before EndEvent");
-        }
-        return endEvent.getPreviousNodes().singleResult();
+        return findFlowNodeBefore(findEndEvent(subProcess));
     }
 
     public static Process findFirstProcess(BpmnModelInstance modelInstance) {
@@ -159,11 +76,54 @@ public final class BpmnElementSearcher {
         BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
 
         // Check if there is at least one process
-        Collection<Process> processes = modelInstance.getModelElementsByType(Process.class);
-        if (processes.isEmpty()) {
+        Process process = ScopeIndex.of(modelInstance).getFirstProcess();
+        if (process == null) {
             throw new ElementNotFoundException("No Process found in BpmnModelInstance");
         }
 
-        return processes.iterator().next();
+        return process;
+    }
+
+    // Lookups backed by the ScopeIndex and FlowGraphIndex of the model
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private static StartEvent findStartEvent(ModelElementInstance scope, String notFoundMessage) {
+        ScopeIndex index = ScopeIndex.of((BpmnModelInstance) scope.getModelInstance());
+        StartEvent startEvent = index.getStartEvent(scope);
+        if (startEvent == null) {
+            if (!index.hasStartEvents()) {
+                throw new ElementNotFoundException("No StartEvent found in BpmnModelInstance");
+            }
+            throw new ElementNotFoundException(notFoundMessage);
+        }
+        return startEvent;
+    }
+
+    private static EndEvent findEndEvent(ModelElementInstance scope, String notFoundMessage) {
+        ScopeIndex index = ScopeIndex.of((BpmnModelInstance) scope.getModelInstance());
+        EndEvent endEvent = index.getEndEvent(scope);
+        if (endEvent == null) {
+            if (!index.hasEndEvents()) {
+                throw new ElementNotFoundException("No EndEvents found in BpmnModelInstance");
+            }
+            throw new ElementNotFoundException(notFoundMessage);
+        }
+        return endEvent;
+    }
+
+    private static FlowNode findFlowNodeAfter(StartEvent startEvent) {
+        FlowGraphIndex index = FlowGraphIndex.of(startEvent);
+        if (index.getSucceedingNodes(startEvent).isEmpty()) {
+            throw new ElementNotFoundException("No FlowNode found after StartEvent");
+        }
+        return index.getSucceedingNode(startEvent);
+    }
+
+    private static FlowNode findFlowNodeBefore(EndEvent endEvent) {
+        FlowGraphIndex index = FlowGraphIndex.of(endEvent);
+        if (index.getPreviousNodes(endEvent).isEmpty()) {
+            throw new ElementNotFoundException("No FlowNode found before EndEvent");
+        }
+        return index.getPreviousNode(endEvent);
     }
-}
\ No newline at end of file
+}
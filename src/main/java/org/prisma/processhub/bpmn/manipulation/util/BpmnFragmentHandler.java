@@ -1,11 +1,16 @@
 package org.prisma.processhub.bpmn.manipulation.util;
 
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.instance.*;
 import org.prisma.processhub.bpmn.manipulation.exception.IllegalFragmentException;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public final class BpmnFragmentHandler {
     private BpmnFragmentHandler() {}
@@ -25,47 +30,106 @@ public final class BpmnFragmentHandler {
             return flowNodes;
         }
 
-        // Call a recursive algorithm in the nodes following the first to cover all paths
-        Collection<SequenceFlow> sequenceFlows = startingNode.getOutgoing();
-        if (sequenceFlows.isEmpty()) {
+        FlowGraphIndex index = FlowGraphIndex.of(startingNode);
+        List<FlowNode> succeedingNodes = index.getSucceedingNodes(startingNode);
+        if (succeedingNodes.isEmpty()) {
             throw new IllegalFragmentException("First FlowNode in the fragment has no outgoing SequenceFlows");
         }
-        for (SequenceFlow sf: sequenceFlows) {
-            mapProcessFragment(flowNodes, sf.getTarget(), endingNode);
-        }
 
-        return flowNodes;
-    }
+        // Depth-first traversal of all paths following the first node, with an explicit stack so that
+        // long sequential fragments don't overflow the call stack
+        // Nodes are mapped in the same order as a recursive traversal would visit them
+        Set<String> visitedNodeIds = new HashSet<String>();
+        visitedNodeIds.add(startingNode.getId());
+        Deque<FlowNode> pendingNodes = new ArrayDeque<FlowNode>();
+        pushAll(pendingNodes, succeedingNodes);
 
-    // Recursive iteration from mapProcessFragment
-    private static void mapProcessFragment(Collection<FlowNode> flowNodes, FlowNode currentNode, FlowNode endingNode) {
+        while (!pendingNodes.isEmpty()) {
+            FlowNode currentNode = pendingNodes.pop();
 
-        // If node already created, return
-        for (FlowNode node: flowNodes) {
-            if (node.getId().equals(currentNode.getId())) {
-                return;
+            // If node already mapped, skip it
+            if (!visitedNodeIds.add(currentNode.getId())) {
+                continue;
             }
+
+            // End reached
+            if (currentNode.getId().equals(endingNode.getId())) {
+                flowNodes.add(endingNode);
+                continue;
+            }
+
+            // Check if node is start or end event
+            if (currentNode instanceof EndEvent) {
+                throw new IllegalFragmentException("The fragment contains an EndEvent");
+            } else if (currentNode instanceof StartEvent) {
+                throw new IllegalFragmentException("The fragment contains a StartEvent");
+            }
+
+            flowNodes.add(currentNode);
+
+            // Continue with the nodes following the current one
+            pushAll(pendingNodes, index.getSucceedingNodes(currentNode));
         }
 
-        // End reached
-        if (currentNode.getId().equals(endingNode.getId())) {
-            flowNodes.add(endingNode);
-            return;
+        return flowNodes;
+    }
+
+    // Push the given nodes so that the first one is popped first
+    private static void pushAll(Deque<FlowNode> pendingNodes, List<FlowNode> flowNodes) {
+        for (int i = flowNodes.size() - 1; i >= 0; i--) {
+            pendingNodes.push(flowNodes.get(i));
         }
+    }
 
-        // Check if node is start or end event
-        if (currentNode instanceof EndEvent) {
-            throw new IllegalFragmentException("The fragment contains an EndEvent");
-        } else if (currentNode instanceof StartEvent) {
-            throw new IllegalFragmentException("The fragment contains a StartEvent");
+    // Verifies that startingNode and endingNode delimit a single-entry/single-exit fragment:
+    // every path reaching endingNode goes through startingNode and every path leaving startingNode goes through endingNode,
+    // and the fragment is entered through a single sequence flow into startingNode and left through a single sequence
+    // flow out of endingNode. The latter rejects e.g. a divergent gateway ending the fragment while its convergent
+    // gateway is outside of it, as every node dominates and post-dominates itself.
+    public static void validateProcessFragment(FlowNode startingNode, FlowNode endingNode) {
+        BpmnHelper.checkNotNull(startingNode, "Argument startingNode must not be null");
+        BpmnHelper.checkNotNull(endingNode, "Argument endingNode must not be null");
+
+        SeseRegionIndex regions = SeseRegionIndex.of((BpmnModelInstance) startingNode.getModelInstance());
+        if (!regions.dominates(startingNode, endingNode)) {
+            throw new IllegalFragmentException("FlowNode with id \'" + endingNode.getId() + "\' can be reached " +
+                    "without passing through the first FlowNode of the fragment");
+        }
+        if (!regions.postDominates(endingNode, startingNode)) {
+            throw new IllegalFragmentException("The fragment can be left without passing through " +
+                    "FlowNode with id \'" + endingNode.getId() + "\'");
         }
 
-        flowNodes.add(currentNode);
+        // Nodes without incoming or outgoing sequence flows are entered or left once, from the virtual entry or exit
+        FlowGraphIndex index = FlowGraphIndex.of(startingNode);
+        int entryCount = 0;
+        for (FlowNode previousNode: index.getPreviousNodes(startingNode)) {
+            if (!regions.isInRegion(startingNode, endingNode, previousNode)) {
+                entryCount++;
+            }
+        }
+        if (entryCount > 1) {
+            if (startingNode instanceof Gateway && BpmnHelper.isGatewayConvergent((Gateway) startingNode)) {
+                throw new IllegalFragmentException("First FlowNode of the fragment is a convergent gateway whose " +
+                        "divergent gateway is not part of the fragment");
+            }
+            throw new IllegalFragmentException("The fragment is entered through more than one SequenceFlow " +
+                    "into FlowNode with id \'" + startingNode.getId() + "\'");
+        }
 
-        // Call the recursion in the nodes following the current one
-        Collection<SequenceFlow> sequenceFlows = currentNode.getOutgoing();
-        for (SequenceFlow sf: sequenceFlows) {
-            mapProcessFragment(flowNodes, sf.getTarget(), endingNode);
+        int exitCount = 0;
+        for (FlowNode succeedingNode: index.getSucceedingNodes(endingNode)) {
+            if (!regions.isInRegion(startingNode, endingNode, succeedingNode)) {
+                exitCount++;
+            }
+        }
+        if (exitCount > 1) {
+            if (endingNode instanceof Gateway && BpmnHelper.isGatewayDivergent((Gateway) endingNode)) {
+                throw new IllegalFragmentException("Last FlowNode of the fragment is a divergent gateway whose " +
+                        "convergent gateway is not part of the fragment");
+            }
+            throw new IllegalFragmentException("The fragment is left through more than one SequenceFlow " +
+                    "out of FlowNode with id \'" + endingNode.getId() + "\'");
         }
     }
 
@@ -105,13 +169,14 @@ public final class BpmnFragmentHandler {
         // must be part of the fragment
         Collection<FlowNode> succeedingNodes = gateways.get(0).getSucceedingNodes().list();
         Collection<FlowNode> previousNodes = gateways.get(gateways.size() - 1).getPreviousNodes().list();
+        Set<FlowNode> fragmentNodes = new HashSet<FlowNode>(fragment);
 
-        if (!fragment.containsAll(succeedingNodes)) {
+        if (!fragmentNodes.containsAll(succeedingNodes)) {
             throw new IllegalFragmentException("All nodes immediately after the first divergent gateway " +
                     "should be part of the fragment to be deleted");
         }
 
-        if (!fragment.containsAll(previousNodes)) {
+        if (!fragmentNodes.containsAll(previousNodes)) {
             throw new IllegalFragmentException("All nodes immediately before the last convergent gateway " +
                     "should be part of the fragment to be deleted");
         }
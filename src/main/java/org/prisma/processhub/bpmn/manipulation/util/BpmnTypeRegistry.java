@@ -0,0 +1,290 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.impl.instance.*;
+import org.camunda.bpm.model.bpmn.impl.instance.ExtensionImpl;
+import org.camunda.bpm.model.bpmn.impl.instance.ProcessImpl;
+import org.camunda.bpm.model.bpmn.impl.instance.bpmndi.*;
+import org.camunda.bpm.model.bpmn.impl.instance.camunda.*;
+import org.camunda.bpm.model.bpmn.impl.instance.dc.BoundsImpl;
+import org.camunda.bpm.model.bpmn.impl.instance.dc.FontImpl;
+import org.camunda.bpm.model.bpmn.impl.instance.dc.PointImpl;
+import org.camunda.bpm.model.bpmn.impl.instance.di.*;
+import org.camunda.bpm.model.xml.Model;
+import org.camunda.bpm.model.xml.ModelBuilder;
+import org.camunda.bpm.model.xml.ModelValidationException;
+import org.camunda.bpm.model.xml.impl.instance.ModelElementInstanceImpl;
+import org.camunda.bpm.model.xml.impl.util.ReflectUtil;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.net.URL;
+
+// BPMN type model and schema shared by the Bpmnt and TailorableBpmn facades and their parsers
+// Registering the element types and compiling BPMN20.xsd make up most of the startup time of a facade, so each is
+// done once, on first use, whichever facade comes first. Both are immutable once built and safe to share across threads.
+// Parses of one parser are serialized on its DocumentBuilderFactory, so the facades keep a parser per thread instead
+// of a shared one. Reading, creating, validating and writing models may therefore be called from several threads at
+// once; a model instance itself is not thread-safe and must not be changed by one thread while another one uses it.
+public final class BpmnTypeRegistry {
+
+    private BpmnTypeRegistry() {}
+
+    public static ModelBuilder getModelBuilder() {
+        return TypeModel.MODEL_BUILDER;
+    }
+
+    public static Model getModel() {
+        return TypeModel.MODEL;
+    }
+
+    public static Schema getSchema() {
+        return CompiledSchema.SCHEMA;
+    }
+
+    // Holders, initialized by the class loader on first access
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private static final class TypeModel {
+        static final ModelBuilder MODEL_BUILDER = ModelBuilder.createInstance("Tailorable BPMN Model");
+        static final Model MODEL;
+
+        static {
+            registerTypes(MODEL_BUILDER);
+            MODEL = MODEL_BUILDER.build();
+        }
+    }
+
+    private static final class CompiledSchema {
+        static final Schema SCHEMA = compileSchema();
+    }
+
+    private static Schema compileSchema() {
+        URL bpmnSchema = ReflectUtil.getResource("BPMN20.xsd", BpmnTypeRegistry.class.getClassLoader());
+        try {
+            return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(bpmnSchema);
+        } catch (SAXException e) {
+            throw new ModelValidationException("Unable to parse schema:" + bpmnSchema);
+        }
+    }
+
+    // Type registration
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private static void registerTypes(ModelBuilder bpmnModelBuilder) {
+        ActivationConditionImpl.registerType(bpmnModelBuilder);
+        ActivityImpl.registerType(bpmnModelBuilder);
+        ArtifactImpl.registerType(bpmnModelBuilder);
+        AssignmentImpl.registerType(bpmnModelBuilder);
+        AssociationImpl.registerType(bpmnModelBuilder);
+        AuditingImpl.registerType(bpmnModelBuilder);
+        BaseElementImpl.registerType(bpmnModelBuilder);
+        BoundaryEventImpl.registerType(bpmnModelBuilder);
+        BusinessRuleTaskImpl.registerType(bpmnModelBuilder);
+        CallableElementImpl.registerType(bpmnModelBuilder);
+        CallActivityImpl.registerType(bpmnModelBuilder);
+        CallConversationImpl.registerType(bpmnModelBuilder);
+        CancelEventDefinitionImpl.registerType(bpmnModelBuilder);
+        CatchEventImpl.registerType(bpmnModelBuilder);
+        CategoryValueImpl.registerType(bpmnModelBuilder);
+        CategoryValueRef.registerType(bpmnModelBuilder);
+        ChildLaneSet.registerType(bpmnModelBuilder);
+        CollaborationImpl.registerType(bpmnModelBuilder);
+        CompensateEventDefinitionImpl.registerType(bpmnModelBuilder);
+        ConditionImpl.registerType(bpmnModelBuilder);
+        ConditionalEventDefinitionImpl.registerType(bpmnModelBuilder);
+        CompletionConditionImpl.registerType(bpmnModelBuilder);
+        ComplexBehaviorDefinitionImpl.registerType(bpmnModelBuilder);
+        ComplexGatewayImpl.registerType(bpmnModelBuilder);
+        ConditionExpressionImpl.registerType(bpmnModelBuilder);
+        ConversationAssociationImpl.registerType(bpmnModelBuilder);
+        ConversationImpl.registerType(bpmnModelBuilder);
+        ConversationLinkImpl.registerType(bpmnModelBuilder);
+        ConversationNodeImpl.registerType(bpmnModelBuilder);
+        CorrelationKeyImpl.registerType(bpmnModelBuilder);
+        CorrelationPropertyBindingImpl.registerType(bpmnModelBuilder);
+        CorrelationPropertyImpl.registerType(bpmnModelBuilder);
+        CorrelationPropertyRef.registerType(bpmnModelBuilder);
+        CorrelationPropertyRetrievalExpressionImpl.registerType(bpmnModelBuilder);
+        CorrelationSubscriptionImpl.registerType(bpmnModelBuilder);
+        DataAssociationImpl.registerType(bpmnModelBuilder);
+        DataInputAssociationImpl.registerType(bpmnModelBuilder);
+        DataInputImpl.registerType(bpmnModelBuilder);
+        DataInputRefs.registerType(bpmnModelBuilder);
+        DataOutputAssociationImpl.registerType(bpmnModelBuilder);
+        DataOutputImpl.registerType(bpmnModelBuilder);
+        DataOutputRefs.registerType(bpmnModelBuilder);
+        DataPath.registerType(bpmnModelBuilder);
+        DataStateImpl.registerType(bpmnModelBuilder);
+        DataObjectImpl.registerType(bpmnModelBuilder);
+        DataObjectReferenceImpl.registerType(bpmnModelBuilder);
+        DefinitionsImpl.registerType(bpmnModelBuilder);
+        DocumentationImpl.registerType(bpmnModelBuilder);
+        EndEventImpl.registerType(bpmnModelBuilder);
+        EndPointImpl.registerType(bpmnModelBuilder);
+        EndPointRef.registerType(bpmnModelBuilder);
+        ErrorEventDefinitionImpl.registerType(bpmnModelBuilder);
+        ErrorImpl.registerType(bpmnModelBuilder);
+        ErrorRef.registerType(bpmnModelBuilder);
+        EscalationImpl.registerType(bpmnModelBuilder);
+        EscalationEventDefinitionImpl.registerType(bpmnModelBuilder);
+        EventBasedGatewayImpl.registerType(bpmnModelBuilder);
+        EventDefinitionImpl.registerType(bpmnModelBuilder);
+        EventDefinitionRef.registerType(bpmnModelBuilder);
+        EventImpl.registerType(bpmnModelBuilder);
+        ExclusiveGatewayImpl.registerType(bpmnModelBuilder);
+        ExpressionImpl.registerType(bpmnModelBuilder);
+        ExtensionElementsImpl.registerType(bpmnModelBuilder);
+        ExtensionImpl.registerType(bpmnModelBuilder);
+        FlowElementImpl.registerType(bpmnModelBuilder);
+        FlowNodeImpl.registerType(bpmnModelBuilder);
+        FlowNodeRef.registerType(bpmnModelBuilder);
+        FormalExpressionImpl.registerType(bpmnModelBuilder);
+        From.registerType(bpmnModelBuilder);
+        GatewayImpl.registerType(bpmnModelBuilder);
+        GlobalConversationImpl.registerType(bpmnModelBuilder);
+        HumanPerformerImpl.registerType(bpmnModelBuilder);
+        ImportImpl.registerType(bpmnModelBuilder);
+        InclusiveGatewayImpl.registerType(bpmnModelBuilder);
+        Incoming.registerType(bpmnModelBuilder);
+        InMessageRef.registerType(bpmnModelBuilder);
+        InnerParticipantRef.registerType(bpmnModelBuilder);
+        InputDataItemImpl.registerType(bpmnModelBuilder);
+        InputSetImpl.registerType(bpmnModelBuilder);
+        InputSetRefs.registerType(bpmnModelBuilder);
+        InteractionNodeImpl.registerType(bpmnModelBuilder);
+        InterfaceImpl.registerType(bpmnModelBuilder);
+        InterfaceRef.registerType(bpmnModelBuilder);
+        IntermediateCatchEventImpl.registerType(bpmnModelBuilder);
+        IntermediateThrowEventImpl.registerType(bpmnModelBuilder);
+        IoBindingImpl.registerType(bpmnModelBuilder);
+        IoSpecificationImpl.registerType(bpmnModelBuilder);
+        ItemAwareElementImpl.registerType(bpmnModelBuilder);
+        ItemDefinitionImpl.registerType(bpmnModelBuilder);
+        LaneImpl.registerType(bpmnModelBuilder);
+        LaneSetImpl.registerType(bpmnModelBuilder);
+        LinkEventDefinitionImpl.registerType(bpmnModelBuilder);
+        LoopCardinalityImpl.registerType(bpmnModelBuilder);
+        LoopCharacteristicsImpl.registerType(bpmnModelBuilder);
+        LoopDataInputRef.registerType(bpmnModelBuilder);
+        LoopDataOutputRef.registerType(bpmnModelBuilder);
+        ManualTaskImpl.registerType(bpmnModelBuilder);
+        MessageEventDefinitionImpl.registerType(bpmnModelBuilder);
+        MessageFlowAssociationImpl.registerType(bpmnModelBuilder);
+        MessageFlowImpl.registerType(bpmnModelBuilder);
+        MessageFlowRef.registerType(bpmnModelBuilder);
+        MessageImpl.registerType(bpmnModelBuilder);
+        MessagePath.registerType(bpmnModelBuilder);
+        ModelElementInstanceImpl.registerType(bpmnModelBuilder);
+        MonitoringImpl.registerType(bpmnModelBuilder);
+        MultiInstanceLoopCharacteristicsImpl.registerType(bpmnModelBuilder);
+        OperationImpl.registerType(bpmnModelBuilder);
+        OperationRef.registerType(bpmnModelBuilder);
+        OptionalInputRefs.registerType(bpmnModelBuilder);
+        OptionalOutputRefs.registerType(bpmnModelBuilder);
+        OuterParticipantRef.registerType(bpmnModelBuilder);
+        OutMessageRef.registerType(bpmnModelBuilder);
+        Outgoing.registerType(bpmnModelBuilder);
+        OutputDataItemImpl.registerType(bpmnModelBuilder);
+        OutputSetImpl.registerType(bpmnModelBuilder);
+        OutputSetRefs.registerType(bpmnModelBuilder);
+        ParallelGatewayImpl.registerType(bpmnModelBuilder);
+        ParticipantAssociationImpl.registerType(bpmnModelBuilder);
+        ParticipantImpl.registerType(bpmnModelBuilder);
+        ParticipantMultiplicityImpl.registerType(bpmnModelBuilder);
+        ParticipantRef.registerType(bpmnModelBuilder);
+        PartitionElement.registerType(bpmnModelBuilder);
+        PerformerImpl.registerType(bpmnModelBuilder);
+        PotentialOwnerImpl.registerType(bpmnModelBuilder);
+        ProcessImpl.registerType(bpmnModelBuilder);
+        PropertyImpl.registerType(bpmnModelBuilder);
+        ReceiveTaskImpl.registerType(bpmnModelBuilder);
+        RelationshipImpl.registerType(bpmnModelBuilder);
+        RenderingImpl.registerType(bpmnModelBuilder);
+        ResourceAssignmentExpressionImpl.registerType(bpmnModelBuilder);
+        ResourceImpl.registerType(bpmnModelBuilder);
+        ResourceParameterBindingImpl.registerType(bpmnModelBuilder);
+        ResourceParameterImpl.registerType(bpmnModelBuilder);
+        ResourceRef.registerType(bpmnModelBuilder);
+        ResourceRoleImpl.registerType(bpmnModelBuilder);
+        RootElementImpl.registerType(bpmnModelBuilder);
+        ScriptImpl.registerType(bpmnModelBuilder);
+        ScriptTaskImpl.registerType(bpmnModelBuilder);
+        SendTaskImpl.registerType(bpmnModelBuilder);
+        SequenceFlowImpl.registerType(bpmnModelBuilder);
+        ServiceTaskImpl.registerType(bpmnModelBuilder);
+        SignalEventDefinitionImpl.registerType(bpmnModelBuilder);
+        SignalImpl.registerType(bpmnModelBuilder);
+        Source.registerType(bpmnModelBuilder);
+        SourceRef.registerType(bpmnModelBuilder);
+        StartEventImpl.registerType(bpmnModelBuilder);
+        SubConversationImpl.registerType(bpmnModelBuilder);
+        SubProcessImpl.registerType(bpmnModelBuilder);
+        SupportedInterfaceRef.registerType(bpmnModelBuilder);
+        Supports.registerType(bpmnModelBuilder);
+        Target.registerType(bpmnModelBuilder);
+        TargetRef.registerType(bpmnModelBuilder);
+        TaskImpl.registerType(bpmnModelBuilder);
+        TerminateEventDefinitionImpl.registerType(bpmnModelBuilder);
+        TextImpl.registerType(bpmnModelBuilder);
+        TextAnnotationImpl.registerType(bpmnModelBuilder);
+        ThrowEventImpl.registerType(bpmnModelBuilder);
+        TimeCycleImpl.registerType(bpmnModelBuilder);
+        TimeDateImpl.registerType(bpmnModelBuilder);
+        TimeDurationImpl.registerType(bpmnModelBuilder);
+        TimerEventDefinitionImpl.registerType(bpmnModelBuilder);
+        To.registerType(bpmnModelBuilder);
+        Transformation.registerType(bpmnModelBuilder);
+        UserTaskImpl.registerType(bpmnModelBuilder);
+        WhileExecutingInputRefs.registerType(bpmnModelBuilder);
+        WhileExecutingOutputRefs.registerType(bpmnModelBuilder);
+        FontImpl.registerType(bpmnModelBuilder);
+        PointImpl.registerType(bpmnModelBuilder);
+        BoundsImpl.registerType(bpmnModelBuilder);
+        DiagramImpl.registerType(bpmnModelBuilder);
+        DiagramElementImpl.registerType(bpmnModelBuilder);
+        EdgeImpl.registerType(bpmnModelBuilder);
+        org.camunda.bpm.model.bpmn.impl.instance.di.ExtensionImpl.registerType(bpmnModelBuilder);
+        LabelImpl.registerType(bpmnModelBuilder);
+        LabeledEdgeImpl.registerType(bpmnModelBuilder);
+        LabeledShapeImpl.registerType(bpmnModelBuilder);
+        NodeImpl.registerType(bpmnModelBuilder);
+        PlaneImpl.registerType(bpmnModelBuilder);
+        ShapeImpl.registerType(bpmnModelBuilder);
+        StyleImpl.registerType(bpmnModelBuilder);
+        WaypointImpl.registerType(bpmnModelBuilder);
+        BpmnDiagramImpl.registerType(bpmnModelBuilder);
+        BpmnEdgeImpl.registerType(bpmnModelBuilder);
+        BpmnLabelImpl.registerType(bpmnModelBuilder);
+        BpmnLabelStyleImpl.registerType(bpmnModelBuilder);
+        BpmnPlaneImpl.registerType(bpmnModelBuilder);
+        BpmnShapeImpl.registerType(bpmnModelBuilder);
+        CamundaConnectorImpl.registerType(bpmnModelBuilder);
+        CamundaConnectorIdImpl.registerType(bpmnModelBuilder);
+        CamundaConstraintImpl.registerType(bpmnModelBuilder);
+        CamundaEntryImpl.registerType(bpmnModelBuilder);
+        CamundaExecutionListenerImpl.registerType(bpmnModelBuilder);
+        CamundaExpressionImpl.registerType(bpmnModelBuilder);
+        CamundaFailedJobRetryTimeCycleImpl.registerType(bpmnModelBuilder);
+        CamundaFieldImpl.registerType(bpmnModelBuilder);
+        CamundaFormDataImpl.registerType(bpmnModelBuilder);
+        CamundaFormFieldImpl.registerType(bpmnModelBuilder);
+        CamundaFormPropertyImpl.registerType(bpmnModelBuilder);
+        CamundaInImpl.registerType(bpmnModelBuilder);
+        CamundaInputOutputImpl.registerType(bpmnModelBuilder);
+        CamundaInputParameterImpl.registerType(bpmnModelBuilder);
+        CamundaListImpl.registerType(bpmnModelBuilder);
+        CamundaMapImpl.registerType(bpmnModelBuilder);
+        CamundaOutputParameterImpl.registerType(bpmnModelBuilder);
+        CamundaOutImpl.registerType(bpmnModelBuilder);
+        CamundaPotentialStarterImpl.registerType(bpmnModelBuilder);
+        CamundaPropertiesImpl.registerType(bpmnModelBuilder);
+        CamundaPropertyImpl.registerType(bpmnModelBuilder);
+        CamundaScriptImpl.registerType(bpmnModelBuilder);
+        CamundaStringImpl.registerType(bpmnModelBuilder);
+        CamundaTaskListenerImpl.registerType(bpmnModelBuilder);
+        CamundaValidationImpl.registerType(bpmnModelBuilder);
+        CamundaValueImpl.registerType(bpmnModelBuilder);
+    }
+}
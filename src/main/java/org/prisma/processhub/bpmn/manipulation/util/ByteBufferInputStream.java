@@ -0,0 +1,45 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// Input stream over the remaining bytes of a buffer, e.g. a file mapped in memory, read without copying them first
+// The stream reads a duplicate, so the position and limit of the given buffer are left untouched.
+public final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        BpmnHelper.checkNotNull(buffer, "Argument buffer must not be null");
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long count) {
+        int skipped = (int) Math.max(0, Math.min(count, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
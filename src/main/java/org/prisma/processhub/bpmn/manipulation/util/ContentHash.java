@@ -0,0 +1,125 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+// 64-bit content hash of XML trees
+// Element names, attributes (in any order) and non-blank text are hashed in document order,
+// so two trees get the same hash when they serialize to the same XML up to attribute order and whitespace.
+public final class ContentHash {
+    private ContentHash() {}
+
+    static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private static final char ELEMENT_START = '<';
+    private static final char ELEMENT_END = '>';
+    private static final char ATTRIBUTE = '@';
+    private static final char TEXT = '#';
+
+    // Marks the end of the element pushed right before it
+    private static final Object END_OF_ELEMENT = new Object();
+
+    // Hash of the whole document of a model
+    public static long of(BpmnModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        return of(modelInstance.getDocument().getDomSource().getNode());
+    }
+
+    public static long of(Node node) {
+        long hash = OFFSET_BASIS;
+        Deque<Object> pending = new ArrayDeque<Object>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Object entry = pending.pop();
+            if (entry == END_OF_ELEMENT) {
+                hash = mix(hash, ELEMENT_END);
+                continue;
+            }
+            Node current = (Node) entry;
+            switch (current.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    hash = mix(hash, ELEMENT_START);
+                    hash = mix(hash, current.getNamespaceURI());
+                    hash = mix(hash, localName(current));
+                    hash = mixAttributes(hash, current.getAttributes());
+                    pending.push(END_OF_ELEMENT);
+                    pushChildren(pending, current);
+                    break;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    String text = current.getNodeValue().trim();
+                    if (!text.isEmpty()) {
+                        hash = mix(hash, TEXT);
+                        hash = mix(hash, text);
+                    }
+                    break;
+                case Node.DOCUMENT_NODE:
+                    pushChildren(pending, current);
+                    break;
+                default:
+                    // Comments and processing instructions don't change the model
+                    break;
+            }
+        }
+        return hash;
+    }
+
+    // Combine hashes in order, e.g. to hash a sequence of operations incrementally
+    public static long combine(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ ((value >>> (i * 8)) & 0xff)) * PRIME;
+        }
+        return hash;
+    }
+
+    private static void pushChildren(Deque<Object> pending, Node node) {
+        // Pushed from last to first so that children are hashed in document order
+        for (Node child = node.getLastChild(); child != null; child = child.getPreviousSibling()) {
+            pending.push(child);
+        }
+    }
+
+    private static long mixAttributes(long hash, NamedNodeMap attributes) {
+        if (attributes == null || attributes.getLength() == 0) {
+            return hash;
+        }
+        String[] keys = new String[attributes.getLength()];
+        for (int i = 0; i < keys.length; i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            keys[i] = attribute.getNamespaceURI() + "|" + localName(attribute) + "=" + attribute.getValue();
+        }
+        Arrays.sort(keys);
+        for (String key: keys) {
+            hash = mix(hash, ATTRIBUTE);
+            hash = mix(hash, key);
+        }
+        return hash;
+    }
+
+    private static String localName(Node node) {
+        return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+    }
+
+    private static long mix(long hash, char c) {
+        hash = (hash ^ (c & 0xff)) * PRIME;
+        return (hash ^ (c >>> 8)) * PRIME;
+    }
+
+    static long mix(long hash, String s) {
+        if (s == null) {
+            return mix(hash, '\u0000');
+        }
+        for (int i = 0; i < s.length(); i++) {
+            hash = mix(hash, s.charAt(i));
+        }
+        // Terminate strings so that adjacent ones can't be confused
+        return mix(hash, '\u0000');
+    }
+}
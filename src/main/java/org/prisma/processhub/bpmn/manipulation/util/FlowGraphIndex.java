@@ -0,0 +1,429 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.BpmnModelException;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.*;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.w3c.dom.events.MutationEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Index over the sequence flow graph of a BpmnModelInstance
+// Node ids are mapped to dense ints and incoming/outgoing neighbours are kept in primitive arrays,
+// so that operators don't need to walk the DOM every time they look at the nodes around a node.
+// The index is attached to the model DOM document and kept up to date by BpmnElementHandler. Other changes to the
+// flow graph, e.g. sequence flows added or retargeted through the Camunda API, are counted by a DOM mutation listener
+// and make the next lookup rebuild the index. The listener also counts any other change of the document, which
+// BpmnElementHandler didn't report to the ModelFingerprint either, so the fingerprint is then invalidated.
+public final class FlowGraphIndex {
+
+    private static final String USER_DATA_KEY = FlowGraphIndex.class.getName();
+    private static final String BPMN_NAMESPACE = "http://www.omg.org/spec/BPMN/20100524/MODEL";
+    private static final int[] NO_NEIGHBOURS = new int[0];
+    private static final String[] NO_FLOWS = new String[0];
+
+    // Elements whose children are flow elements, or processes for the definitions
+    private static final Set<String> FLOW_CONTAINERS = new HashSet<String>(Arrays.asList(
+            "definitions", "process", "subProcess", "transaction", "adHocSubProcess"));
+    private static final Set<String> FLOW_GRAPH_ATTRIBUTES = new HashSet<String>(Arrays.asList(
+            "id", "sourceRef", "targetRef"));
+
+    private final BpmnModelInstance modelInstance;
+    private final Map<String, Integer> nodeIndexes = new HashMap<String, Integer>();
+    private final Map<String, int[]> flowEndpoints = new HashMap<String, int[]>();
+
+    private FlowNode[] nodes = new FlowNode[16];
+    // Neighbours of each slot, and the ids of the sequence flows leading to them at the same positions
+    private int[][] outgoing = new int[16][];
+    private String[][] outgoingFlows = new String[16][];
+    private int[] outgoingSize = new int[16];
+    private int[][] incoming = new int[16][];
+    private String[][] incomingFlows = new String[16][];
+    private int[] incomingSize = new int[16];
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private int slotCount;
+
+    private long version;
+    // Changes of the flow graph seen in the DOM, and how many of them the index reflects
+    private long domChanges;
+    private long syncedChanges;
+    // Changes of any kind seen in the DOM, and how many of them were reported by BpmnElementHandler
+    private long contentChanges;
+    private long syncedContentChanges;
+
+    private FlowGraphIndex(BpmnModelInstance modelInstance) {
+        this.modelInstance = modelInstance;
+    }
+
+    // Registry operations
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Get the index of a model, building it in a single pass over its processes if needed
+    public static FlowGraphIndex of(BpmnModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        FlowGraphIndex index = peek(modelInstance);
+        if (index == null) {
+            Document document = getDocument(modelInstance);
+            index = new FlowGraphIndex(modelInstance);
+            index.rebuild();
+            index.listenTo(document);
+            document.setUserData(USER_DATA_KEY, index, null);
+        }
+        return index;
+    }
+
+    // Get the index of the model a flow node belongs to
+    public static FlowGraphIndex of(FlowNode node) {
+        return of((BpmnModelInstance) node.getModelInstance());
+    }
+
+    // Get the index of a model only if it was already built
+    // BpmnElementHandler peeks before changing the DOM and reports its change after, so the index stays in sync.
+    static FlowGraphIndex peek(BpmnModelInstance modelInstance) {
+        FlowGraphIndex index = (FlowGraphIndex) getDocument(modelInstance).getUserData(USER_DATA_KEY);
+        if (index != null) {
+            index.synchronize();
+        }
+        return index;
+    }
+
+    // Resynchronize the index of a model with its DOM, if the index was already built
+    // The ScopeIndex and ModelFingerprint of the model are invalidated as well
+    public static void invalidate(BpmnModelInstance modelInstance) {
+        FlowGraphIndex index = peek(modelInstance);
+        if (index != null) {
+            index.rebuild();
+        }
+        ScopeIndex.invalidate(modelInstance);
+        ModelFingerprint.invalidate(modelInstance);
+    }
+
+    private static Document getDocument(BpmnModelInstance modelInstance) {
+        return (Document) modelInstance.getDocument().getDomSource().getNode();
+    }
+
+    // Count every DOM change, and among them the ones that may reshape the flow graph: flow elements inserted or
+    // removed, and changed ids or sequence flow endpoints. DOM implementations without mutation events are only
+    // resynchronized by invalidate.
+    private void listenTo(Document document) {
+        if (!(document instanceof EventTarget)) {
+            return;
+        }
+        EventListener listener = new EventListener() {
+            @Override
+            public void handleEvent(Event event) {
+                String attributeName = event instanceof MutationEvent ? ((MutationEvent) event).getAttrName() : null;
+                if (isNamespaceDeclaration(attributeName)) {
+                    // Declared lazily by Camunda while reading attributes, the content is unchanged
+                    return;
+                }
+                contentChanges++;
+                if ("DOMCharacterDataModified".equals(event.getType())) {
+                    return;
+                }
+                Node target = (Node) event.getTarget();
+                if ("DOMAttrModified".equals(event.getType()) && !FLOW_GRAPH_ATTRIBUTES.contains(attributeName)) {
+                    return;
+                }
+                if (target.getNodeType() == Node.ELEMENT_NODE && isFlowContainer(target.getParentNode())) {
+                    domChanges++;
+                }
+            }
+        };
+        EventTarget eventTarget = (EventTarget) document;
+        eventTarget.addEventListener("DOMNodeInserted", listener, true);
+        eventTarget.addEventListener("DOMNodeRemoved", listener, true);
+        eventTarget.addEventListener("DOMAttrModified", listener, true);
+        eventTarget.addEventListener("DOMCharacterDataModified", listener, true);
+    }
+
+    private static boolean isNamespaceDeclaration(String attributeName) {
+        return attributeName != null && (attributeName.equals("xmlns") || attributeName.startsWith("xmlns:"));
+    }
+
+    private static boolean isFlowContainer(Node node) {
+        return node instanceof Element && BPMN_NAMESPACE.equals(node.getNamespaceURI())
+                && FLOW_CONTAINERS.contains(node.getLocalName());
+    }
+
+    // Rebuild the index if the flow graph was changed without it
+    // Such changes weren't reported to the ScopeIndex and ModelFingerprint either, so they are invalidated as well.
+    private void synchronize() {
+        if (domChanges != syncedChanges) {
+            rebuild();
+            ScopeIndex.invalidate(modelInstance);
+            ModelFingerprint.invalidate(modelInstance);
+        }
+        else if (contentChanges != syncedContentChanges) {
+            ModelFingerprint.invalidate(modelInstance);
+            syncedContentChanges = contentChanges;
+        }
+    }
+
+    // Neighbour queries
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Nodes with a sequence flow targeting the given node
+    public List<FlowNode> getPreviousNodes(FlowNode node) {
+        int slot = slotOf(node);
+        return resolve(incoming[slot], incomingSize[slot]);
+    }
+
+    // Nodes targeted by a sequence flow leaving the given node
+    public List<FlowNode> getSucceedingNodes(FlowNode node) {
+        int slot = slotOf(node);
+        return resolve(outgoing[slot], outgoingSize[slot]);
+    }
+
+    // Same contract as getPreviousNodes().singleResult() of the Camunda API
+    public FlowNode getPreviousNode(FlowNode node) {
+        return singleResult(getPreviousNodes(node));
+    }
+
+    // Same contract as getSucceedingNodes().singleResult() of the Camunda API
+    public FlowNode getSucceedingNode(FlowNode node) {
+        return singleResult(getSucceedingNodes(node));
+    }
+
+    // Get an indexed flow node by id, or null if there's none
+    public FlowNode getFlowNode(String nodeId) {
+        synchronize();
+        Integer slot = nodeIndexes.get(nodeId);
+        return slot == null ? null : nodes[slot];
+    }
+
+    public int getNodeCount() {
+        synchronize();
+        return nodeIndexes.size();
+    }
+
+    public int getFlowCount() {
+        synchronize();
+        return flowEndpoints.size();
+    }
+
+    // Incremented on every change of the indexed graph
+    public long getVersion() {
+        synchronize();
+        return version;
+    }
+
+    // Incremental updates
+    // Each reports a DOM change of BpmnElementHandler, which is then reflected by the index
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    void addNode(FlowNode node) {
+        syncedChanges = domChanges;
+        if (nodeIndexes.containsKey(node.getId())) {
+            return;
+        }
+        int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : nextSlot();
+        nodes[slot] = node;
+        outgoing[slot] = NO_NEIGHBOURS;
+        outgoingFlows[slot] = NO_FLOWS;
+        outgoingSize[slot] = 0;
+        incoming[slot] = NO_NEIGHBOURS;
+        incomingFlows[slot] = NO_FLOWS;
+        incomingSize[slot] = 0;
+        nodeIndexes.put(node.getId(), slot);
+        version++;
+    }
+
+    void removeNode(FlowNode node) {
+        syncedChanges = domChanges;
+        Integer slot = nodeIndexes.remove(node.getId());
+        if (slot == null) {
+            return;
+        }
+        // Forget flows still attached to the node
+        for (String sequenceFlowId: Arrays.copyOf(outgoingFlows[slot], outgoingSize[slot])) {
+            removeFlow(sequenceFlowId);
+        }
+        for (String sequenceFlowId: Arrays.copyOf(incomingFlows[slot], incomingSize[slot])) {
+            removeFlow(sequenceFlowId);
+        }
+        nodes[slot] = null;
+        outgoing[slot] = null;
+        outgoingFlows[slot] = null;
+        incoming[slot] = null;
+        incomingFlows[slot] = null;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+        version++;
+    }
+
+    void addFlow(SequenceFlow sequenceFlow) {
+        syncedChanges = domChanges;
+        addFlow(sequenceFlow.getId(), sequenceFlow.getSource().getId(), sequenceFlow.getTarget().getId());
+    }
+
+    // Reports a DOM change of BpmnElementHandler that was reported to the ModelFingerprint as well
+    void contentChanged() {
+        syncedContentChanges = contentChanges;
+    }
+
+    void removeFlow(String sequenceFlowId) {
+        syncedChanges = domChanges;
+        int[] endpoints = flowEndpoints.remove(sequenceFlowId);
+        if (endpoints == null) {
+            return;
+        }
+        outgoingSize[endpoints[0]] = removeNeighbour(outgoing[endpoints[0]], outgoingFlows[endpoints[0]], outgoingSize[endpoints[0]], sequenceFlowId);
+        incomingSize[endpoints[1]] = removeNeighbour(incoming[endpoints[1]], incomingFlows[endpoints[1]], incomingSize[endpoints[1]], sequenceFlowId);
+        version++;
+    }
+
+    // Rebuild the whole index from the model, walking each process tree once
+    void rebuild() {
+        nodeIndexes.clear();
+        flowEndpoints.clear();
+        Arrays.fill(nodes, null);
+        slotCount = 0;
+        freeSlotCount = 0;
+
+        List<SequenceFlow> sequenceFlows = new ArrayList<SequenceFlow>();
+        // A model without definitions has no processes
+        Definitions definitions = modelInstance.getDefinitions();
+        if (definitions != null) {
+            for (Process process: definitions.getChildElementsByType(Process.class)) {
+                collect(process.getFlowElements(), sequenceFlows);
+            }
+        }
+        for (SequenceFlow sequenceFlow: sequenceFlows) {
+            addFlow(sequenceFlow.getId(),
+                    sequenceFlow.getAttributeValue("sourceRef"),
+                    sequenceFlow.getAttributeValue("targetRef"));
+        }
+        syncedChanges = domChanges;
+        syncedContentChanges = contentChanges;
+        version++;
+    }
+
+    private void collect(Iterable<FlowElement> flowElements, List<SequenceFlow> sequenceFlows) {
+        for (FlowElement flowElement: flowElements) {
+            if (flowElement instanceof SequenceFlow) {
+                sequenceFlows.add((SequenceFlow) flowElement);
+            }
+            else if (flowElement instanceof FlowNode) {
+                addNode((FlowNode) flowElement);
+                if (flowElement instanceof SubProcess) {
+                    collect(((SubProcess) flowElement).getFlowElements(), sequenceFlows);
+                }
+            }
+        }
+    }
+
+    private void addFlow(String sequenceFlowId, String sourceId, String targetId) {
+        Integer source = nodeIndexes.get(sourceId);
+        Integer target = nodeIndexes.get(targetId);
+        // Dangling sequence flows are not part of the graph
+        if (source == null || target == null || flowEndpoints.containsKey(sequenceFlowId)) {
+            return;
+        }
+        flowEndpoints.put(sequenceFlowId, new int[] {source, target});
+        outgoingFlows[source] = addFlowId(outgoingFlows[source], outgoingSize[source], sequenceFlowId);
+        outgoing[source] = addNeighbour(outgoing[source], outgoingSize[source]++, target);
+        incomingFlows[target] = addFlowId(incomingFlows[target], incomingSize[target], sequenceFlowId);
+        incoming[target] = addNeighbour(incoming[target], incomingSize[target]++, source);
+        version++;
+    }
+
+    // Internal helpers
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private int nextSlot() {
+        if (slotCount == nodes.length) {
+            int capacity = slotCount * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            outgoing = Arrays.copyOf(outgoing, capacity);
+            outgoingFlows = Arrays.copyOf(outgoingFlows, capacity);
+            outgoingSize = Arrays.copyOf(outgoingSize, capacity);
+            incoming = Arrays.copyOf(incoming, capacity);
+            incomingFlows = Arrays.copyOf(incomingFlows, capacity);
+            incomingSize = Arrays.copyOf(incomingSize, capacity);
+        }
+        return slotCount++;
+    }
+
+    // Resolve the slot of a node, rebuilding the index if it went out of sync with the model
+    private int slotOf(FlowNode node) {
+        synchronize();
+        Integer slot = nodeIndexes.get(node.getId());
+        if (slot == null || nodes[slot].getParentElement() == null) {
+            rebuild();
+            slot = nodeIndexes.get(node.getId());
+            BpmnHelper.checkElementPresent(slot != null,
+                    "FlowNode with id \'" + node.getId() + "\' is not part of given BpmnModelInstance");
+        }
+        return slot;
+    }
+
+    // Resolve neighbour slots to distinct flow nodes, as the Camunda API does
+    private List<FlowNode> resolve(int[] neighbours, int size) {
+        List<FlowNode> result = new ArrayList<FlowNode>(size);
+        for (int i = 0; i < size; i++) {
+            boolean duplicate = false;
+            for (int j = 0; j < i; j++) {
+                if (neighbours[j] == neighbours[i]) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                result.add(nodes[neighbours[i]]);
+            }
+        }
+        return result;
+    }
+
+    private static FlowNode singleResult(List<FlowNode> flowNodes) {
+        if (flowNodes.size() != 1) {
+            throw new BpmnModelException("Collection expected to have <1> entry but has <" + flowNodes.size() + ">");
+        }
+        return flowNodes.get(0);
+    }
+
+    private static int[] addNeighbour(int[] neighbours, int size, int neighbour) {
+        if (size == neighbours.length) {
+            neighbours = Arrays.copyOf(neighbours, Math.max(2, size * 2));
+        }
+        neighbours[size] = neighbour;
+        return neighbours;
+    }
+
+    private static String[] addFlowId(String[] flowIds, int size, String flowId) {
+        if (size == flowIds.length) {
+            flowIds = Arrays.copyOf(flowIds, Math.max(2, size * 2));
+        }
+        flowIds[size] = flowId;
+        return flowIds;
+    }
+
+    // Remove the neighbour reached through the given sequence flow
+    private static int removeNeighbour(int[] neighbours, String[] flowIds, int size, String flowId) {
+        for (int i = 0; i < size; i++) {
+            if (flowIds[i].equals(flowId)) {
+                System.arraycopy(neighbours, i + 1, neighbours, i, size - i - 1);
+                System.arraycopy(flowIds, i + 1, flowIds, i, size - i - 1);
+                flowIds[size - 1] = null;
+                return size - 1;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,105 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Source of the unique tokens that make up generated id prefixes, such as "fe-<token>-"
+// Tokens never repeat within an allocator and are made of letters, digits and underscores only.
+// The atomic and striped allocators also start with a token of the running JVM, so ids generated by different runs
+// don't clash either; a seeded allocator yields the same tokens for the same seed and sequence of calls, so that
+// replays of a BPMNt log generate the same ids.
+public abstract class IdAllocator {
+
+    // Random rather than time-based, as JVMs started at the same time would otherwise share it
+    private static final String RUN_TOKEN = newRunToken();
+
+    private static volatile IdAllocator defaultAllocator = atomic();
+
+    // Allocator used by the operations that generate ids
+    public static IdAllocator getDefault() {
+        return defaultAllocator;
+    }
+
+    public static void setDefault(IdAllocator allocator) {
+        BpmnHelper.checkNotNull(allocator, "Argument allocator must not be null");
+        defaultAllocator = allocator;
+    }
+
+    public abstract String nextToken();
+
+    // Prefix of generated ids, in the format BpmnElementHandler recognizes when it renames an id again
+    public String nextPrefix() {
+        return "fe-" + nextToken() + "-";
+    }
+
+    // Id of a new element of the given type, such as "parallelGateway_<token>"
+    public String nextId(String typeName) {
+        return typeName + "_" + nextToken();
+    }
+
+    // 96 random bits, as letters and digits
+    private static String newRunToken() {
+        byte[] bytes = new byte[12];
+        new SecureRandom().nextBytes(bytes);
+        return new BigInteger(1, bytes).toString(36);
+    }
+
+    // Allocators
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Single counter shared by all threads
+    public static IdAllocator atomic() {
+        return new AtomicIdAllocator(RUN_TOKEN);
+    }
+
+    // Counter per thread, so that threads allocating many ids don't contend on a shared counter
+    public static IdAllocator striped() {
+        return new StripedIdAllocator();
+    }
+
+    // Deterministic counter for a given seed
+    public static IdAllocator seeded(long seed) {
+        return new AtomicIdAllocator("seed" + Long.toHexString(seed));
+    }
+
+    private static final class AtomicIdAllocator extends IdAllocator {
+        private final String base;
+        private final AtomicLong counter = new AtomicLong();
+
+        AtomicIdAllocator(String base) {
+            this.base = base;
+        }
+
+        @Override
+        public String nextToken() {
+            return base + "_" + Long.toString(counter.getAndIncrement(), 36);
+        }
+    }
+
+    private static final class StripedIdAllocator extends IdAllocator {
+        private final AtomicInteger stripeCounter = new AtomicInteger();
+        private final ThreadLocal<Stripe> stripes = new ThreadLocal<Stripe>() {
+            @Override
+            protected Stripe initialValue() {
+                return new Stripe(RUN_TOKEN + "_" + Integer.toString(stripeCounter.getAndIncrement(), 36));
+            }
+        };
+
+        @Override
+        public String nextToken() {
+            Stripe stripe = stripes.get();
+            return stripe.base + "_" + Long.toString(stripe.counter++, 36);
+        }
+    }
+
+    private static final class Stripe {
+        private final String base;
+        private long counter;
+
+        Stripe(String base) {
+            this.base = base;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.*;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.camunda.bpm.model.xml.instance.ModelElementInstance;
+import org.camunda.bpm.model.xml.type.ModelElementType;
+import org.camunda.bpm.model.xml.type.attribute.Attribute;
+import org.w3c.dom.Document;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Order-independent structural fingerprint of a BpmnModelInstance
+// Every flow element contributes a hash of its type, attributes and enclosing subprocess; sequence flows are hashed
+// by their endpoints instead of their generated ids. Contributions are summed, so the fingerprint doesn't depend
+// on the order of the elements in the XML and is updated in O(1) per element added, removed or changed.
+// BpmnElementHandler reports its changes to the fingerprint attached to the model DOM document; other changes,
+// e.g. through the Camunda API, are noticed by the FlowGraphIndex of the model, which invalidates the fingerprint.
+public final class ModelFingerprint {
+
+    private static final String USER_DATA_KEY = ModelFingerprint.class.getName();
+
+    private final BpmnModelInstance modelInstance;
+    private final Map<FlowElement, Long> contributions = new HashMap<FlowElement, Long>();
+    private final Set<FlowElement> changedElements = new LinkedHashSet<FlowElement>();
+
+    private long sum;
+    private boolean stale = true;
+
+    private ModelFingerprint(BpmnModelInstance modelInstance) {
+        this.modelInstance = modelInstance;
+    }
+
+    // Fingerprint queries
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Fingerprint of the processes of a model
+    public static long of(BpmnModelInstance modelInstance) {
+        BpmnHelper.checkNotNull(modelInstance, "Argument modelInstance must not be null");
+        // Invalidates this fingerprint if the model was changed through the Camunda API since the last lookup
+        FlowGraphIndex.of(modelInstance);
+        Document document = getDocument(modelInstance);
+        ModelFingerprint fingerprint = (ModelFingerprint) document.getUserData(USER_DATA_KEY);
+        if (fingerprint == null) {
+            fingerprint = new ModelFingerprint(modelInstance);
+            document.setUserData(USER_DATA_KEY, fingerprint, null);
+        }
+        return fingerprint.getValue();
+    }
+
+    // Two models with different fingerprints are structurally different; equal fingerprints mean they are
+    // structurally identical up to the odds of a 64-bit hash collision
+    public static boolean haveSameStructure(BpmnModelInstance modelInstance1, BpmnModelInstance modelInstance2) {
+        return of(modelInstance1) == of(modelInstance2);
+    }
+
+    // Recompute the fingerprint of a model on next lookup, if it was already computed
+    public static void invalidate(BpmnModelInstance modelInstance) {
+        ModelFingerprint fingerprint = peek(modelInstance);
+        if (fingerprint != null) {
+            fingerprint.stale = true;
+        }
+    }
+
+    // Get the fingerprint of a model only if it was already computed
+    static ModelFingerprint peek(BpmnModelInstance modelInstance) {
+        return (ModelFingerprint) getDocument(modelInstance).getUserData(USER_DATA_KEY);
+    }
+
+    private static Document getDocument(BpmnModelInstance modelInstance) {
+        return (Document) modelInstance.getDocument().getDomSource().getNode();
+    }
+
+    private long getValue() {
+        if (stale) {
+            rebuild();
+        }
+        else {
+            for (FlowElement element: changedElements) {
+                Long contribution = contributions.remove(element);
+                if (contribution != null) {
+                    sum -= contribution;
+                }
+                if (element.getParentElement() != null) {
+                    add(element);
+                }
+            }
+        }
+        changedElements.clear();
+        return sum;
+    }
+
+    // Incremental maintenance
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Added or changed elements are rehashed lazily, so attributes set right after adding them are accounted for
+    void elementChanged(FlowElement element) {
+        changedElements.add(element);
+    }
+
+    void elementRemoved(FlowElement element) {
+        changedElements.remove(element);
+        Long contribution = contributions.remove(element);
+        if (contribution != null) {
+            sum -= contribution;
+        }
+    }
+
+    private void rebuild() {
+        contributions.clear();
+        sum = 0;
+        // A model without definitions has no processes
+        Definitions definitions = modelInstance.getDefinitions();
+        if (definitions != null) {
+            for (Process process: definitions.getChildElementsByType(Process.class)) {
+                collect(process.getFlowElements());
+            }
+        }
+        stale = false;
+    }
+
+    private void collect(Iterable<FlowElement> flowElements) {
+        for (FlowElement flowElement: flowElements) {
+            add(flowElement);
+            if (flowElement instanceof SubProcess) {
+                collect(((SubProcess) flowElement).getFlowElements());
+            }
+        }
+    }
+
+    private void add(FlowElement element) {
+        long contribution = hash(element);
+        contributions.put(element, contribution);
+        sum += contribution;
+    }
+
+    // Element hashing
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private static long hash(FlowElement element) {
+        long hash = ContentHash.OFFSET_BASIS;
+        hash = ContentHash.mix(hash, element.getElementType().getTypeName());
+
+        // Nodes are identified by their ids; sequence flows by their endpoints, as their ids are generated
+        boolean isSequenceFlow = element instanceof SequenceFlow;
+        for (ModelElementType type = element.getElementType(); type != null; type = type.getBaseType()) {
+            for (Attribute<?> attribute: type.getAttributes()) {
+                if (isSequenceFlow && attribute.isIdAttribute()) {
+                    continue;
+                }
+                Object value = attribute.getValue(element);
+                hash = ContentHash.mix(hash, attribute.getAttributeName());
+                hash = ContentHash.mix(hash, value == null ? null : value.toString());
+            }
+        }
+        if (isSequenceFlow) {
+            ConditionExpression condition = ((SequenceFlow) element).getConditionExpression();
+            hash = ContentHash.mix(hash, condition == null ? null : condition.getTextContent());
+        }
+
+        // Nesting is part of the structure
+        ModelElementInstance parentElement = element.getParentElement();
+        hash = ContentHash.mix(hash, parentElement instanceof SubProcess ? ((SubProcess) parentElement).getId() : null);
+
+        return finalizeHash(hash);
+    }
+
+    // Spread the bits of an element hash so that sums of similar elements don't cancel out (MurmurHash3 finalizer)
+    private static long finalizeHash(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,155 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.*;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.camunda.bpm.model.xml.instance.ModelElementInstance;
+import org.w3c.dom.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Index mapping each Process and SubProcess scope of a BpmnModelInstance to its first start and end events
+// It is built in a single pass over the process trees and attached to the model DOM document, next to the FlowGraphIndex.
+// BpmnElementHandler invalidates it whenever a start event, end event or subprocess is added or removed, and the
+// FlowGraphIndex does on other changes it notices in the DOM; scopes and events that went out of sync with the model
+// trigger a rebuild on lookup. Every scope is kept in the maps,
+// mapped to null when it has no such event, so that a scope without start or end event is told apart from a new one.
+final class ScopeIndex {
+
+    private static final String USER_DATA_KEY = ScopeIndex.class.getName();
+
+    private final BpmnModelInstance modelInstance;
+    private final Map<ModelElementInstance, StartEvent> startEvents = new HashMap<ModelElementInstance, StartEvent>();
+    private final Map<ModelElementInstance, EndEvent> endEvents = new HashMap<ModelElementInstance, EndEvent>();
+
+    private Process firstProcess;
+    private boolean hasStartEvents;
+    private boolean hasEndEvents;
+    private boolean stale = true;
+
+    private ScopeIndex(BpmnModelInstance modelInstance) {
+        this.modelInstance = modelInstance;
+    }
+
+    // Registry operations
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    static ScopeIndex of(BpmnModelInstance modelInstance) {
+        // Invalidates this index if the model was changed through the Camunda API since the last lookup
+        FlowGraphIndex.of(modelInstance);
+        Document document = getDocument(modelInstance);
+        ScopeIndex index = (ScopeIndex) document.getUserData(USER_DATA_KEY);
+        if (index == null) {
+            index = new ScopeIndex(modelInstance);
+            document.setUserData(USER_DATA_KEY, index, null);
+        }
+        return index;
+    }
+
+    // Mark the index of a model for rebuild on next lookup, if the index was already built
+    static void invalidate(BpmnModelInstance modelInstance) {
+        ScopeIndex index = (ScopeIndex) getDocument(modelInstance).getUserData(USER_DATA_KEY);
+        if (index != null) {
+            index.stale = true;
+        }
+    }
+
+    private static Document getDocument(BpmnModelInstance modelInstance) {
+        return (Document) modelInstance.getDocument().getDomSource().getNode();
+    }
+
+    // Scope queries
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // First process of the model, or null if there's none
+    Process getFirstProcess() {
+        if (stale || (firstProcess != null && firstProcess.getParentElement() == null)) {
+            rebuild();
+        }
+        return firstProcess;
+    }
+
+    // First start event directly contained in the given scope, or null if there's none
+    StartEvent getStartEvent(ModelElementInstance scope) {
+        if (stale || !startEvents.containsKey(scope)) {
+            rebuild();
+        }
+        StartEvent startEvent = startEvents.get(scope);
+        if (startEvent != null && startEvent.getParentElement() == null) {
+            rebuild();
+            startEvent = startEvents.get(scope);
+        }
+        return startEvent;
+    }
+
+    // First end event directly contained in the given scope, or null if there's none
+    EndEvent getEndEvent(ModelElementInstance scope) {
+        if (stale || !endEvents.containsKey(scope)) {
+            rebuild();
+        }
+        EndEvent endEvent = endEvents.get(scope);
+        if (endEvent != null && endEvent.getParentElement() == null) {
+            rebuild();
+            endEvent = endEvents.get(scope);
+        }
+        return endEvent;
+    }
+
+    boolean hasStartEvents() {
+        if (stale) {
+            rebuild();
+        }
+        return hasStartEvents;
+    }
+
+    boolean hasEndEvents() {
+        if (stale) {
+            rebuild();
+        }
+        return hasEndEvents;
+    }
+
+    // Rebuild the whole index from the model, walking each process tree once
+    private void rebuild() {
+        startEvents.clear();
+        endEvents.clear();
+        firstProcess = null;
+        hasStartEvents = false;
+        hasEndEvents = false;
+
+        // A model without definitions has no processes
+        Definitions definitions = modelInstance.getDefinitions();
+        if (definitions != null) {
+            for (Process process: definitions.getChildElementsByType(Process.class)) {
+                if (firstProcess == null) {
+                    firstProcess = process;
+                }
+                collect(process, process.getFlowElements());
+            }
+        }
+        stale = false;
+    }
+
+    private void collect(ModelElementInstance scope, Iterable<FlowElement> flowElements) {
+        startEvents.put(scope, null);
+        endEvents.put(scope, null);
+        for (FlowElement flowElement: flowElements) {
+            if (flowElement instanceof StartEvent) {
+                hasStartEvents = true;
+                if (startEvents.get(scope) == null) {
+                    startEvents.put(scope, (StartEvent) flowElement);
+                }
+            }
+            else if (flowElement instanceof EndEvent) {
+                hasEndEvents = true;
+                if (endEvents.get(scope) == null) {
+                    endEvents.put(scope, (EndEvent) flowElement);
+                }
+            }
+            else if (flowElement instanceof SubProcess) {
+                collect(flowElement, ((SubProcess) flowElement).getFlowElements());
+            }
+        }
+    }
+}
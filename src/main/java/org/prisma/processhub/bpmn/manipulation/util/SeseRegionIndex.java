@@ -0,0 +1,287 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.*;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.w3c.dom.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Single-entry/single-exit region index of a BpmnModelInstance
+// The dominator and post-dominator trees of the flow graph are computed once in linear time
+// (Cooper, Harvey and Kennedy's iterative algorithm) and numbered by interval, so that checking
+// whether two nodes delimit a SESE region is O(1). Every node without incoming sequence flows
+// hangs from a virtual entry and every node without outgoing sequence flows leads to a virtual exit,
+// which keeps the graphs of subprocesses apart from the graph of their parent scope.
+// The index is attached to the model DOM document and rebuilt whenever the FlowGraphIndex version changes.
+final class SeseRegionIndex {
+
+    private static final String USER_DATA_KEY = SeseRegionIndex.class.getName();
+    private static final int UNREACHABLE = -1;
+
+    private final long version;
+    private final Map<String, Integer> nodeIndexes = new HashMap<String, Integer>();
+
+    private int[] dominatorPre;
+    private int[] dominatorPost;
+    private int[] postDominatorPre;
+    private int[] postDominatorPost;
+
+    private SeseRegionIndex(long version) {
+        this.version = version;
+    }
+
+    // Registry operations
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    static SeseRegionIndex of(BpmnModelInstance modelInstance) {
+        Document document = (Document) modelInstance.getDocument().getDomSource().getNode();
+        FlowGraphIndex graph = FlowGraphIndex.of(modelInstance);
+        SeseRegionIndex index = (SeseRegionIndex) document.getUserData(USER_DATA_KEY);
+        if (index == null || index.version != graph.getVersion()) {
+            index = new SeseRegionIndex(graph.getVersion());
+            index.build(modelInstance, graph);
+            document.setUserData(USER_DATA_KEY, index, null);
+        }
+        return index;
+    }
+
+    // Region queries
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    // Every path reaching node goes through dominator
+    boolean dominates(FlowNode dominator, FlowNode node) {
+        Integer a = nodeIndexes.get(dominator.getId());
+        Integer b = nodeIndexes.get(node.getId());
+        return a != null && b != null && isAncestor(dominatorPre, dominatorPost, a, b);
+    }
+
+    // Every path leaving node goes through postDominator
+    boolean postDominates(FlowNode postDominator, FlowNode node) {
+        Integer a = nodeIndexes.get(postDominator.getId());
+        Integer b = nodeIndexes.get(node.getId());
+        return a != null && b != null && isAncestor(postDominatorPre, postDominatorPost, a, b);
+    }
+
+    // The nodes from entry to exit form a single-entry/single-exit region
+    boolean isRegion(FlowNode entry, FlowNode exit) {
+        return dominates(entry, exit) && postDominates(exit, entry);
+    }
+
+    // The node lies in the region from entry to exit
+    boolean isInRegion(FlowNode entry, FlowNode exit, FlowNode node) {
+        return dominates(entry, node) && postDominates(exit, node);
+    }
+
+    private static boolean isAncestor(int[] pre, int[] post, int ancestor, int descendant) {
+        return pre[ancestor] != UNREACHABLE && pre[descendant] != UNREACHABLE
+                && pre[ancestor] <= pre[descendant] && post[descendant] <= post[ancestor];
+    }
+
+    // Construction
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    private void build(BpmnModelInstance modelInstance, FlowGraphIndex graph) {
+        List<FlowNode> flowNodes = new ArrayList<FlowNode>(graph.getNodeCount());
+        for (Process process: modelInstance.getDefinitions().getChildElementsByType(Process.class)) {
+            collect(process.getFlowElements(), flowNodes);
+        }
+
+        // Nodes are numbered 0..n-1, followed by the virtual entry and exit
+        int n = flowNodes.size();
+        int entry = n;
+        int exit = n + 1;
+        for (int i = 0; i < n; i++) {
+            nodeIndexes.put(flowNodes.get(i).getId(), i);
+        }
+
+        int[][] successors = new int[n + 2][];
+        int[] predecessorCount = new int[n + 2];
+        for (int i = 0; i < n; i++) {
+            List<FlowNode> succeedingNodes = graph.getSucceedingNodes(flowNodes.get(i));
+            int[] targets = new int[succeedingNodes.size()];
+            int size = 0;
+            for (FlowNode succeedingNode: succeedingNodes) {
+                Integer target = nodeIndexes.get(succeedingNode.getId());
+                if (target != null) {
+                    targets[size++] = target;
+                    predecessorCount[target]++;
+                }
+            }
+            successors[i] = size == targets.length ? targets : Arrays.copyOf(targets, size);
+        }
+
+        // Connect the virtual entry and exit
+        int[] entrySuccessors = new int[n];
+        int entrySize = 0;
+        for (int i = 0; i < n; i++) {
+            if (predecessorCount[i] == 0) {
+                entrySuccessors[entrySize++] = i;
+                predecessorCount[i]++;
+            }
+            if (successors[i].length == 0) {
+                successors[i] = new int[] {exit};
+                predecessorCount[exit]++;
+            }
+        }
+        successors[entry] = Arrays.copyOf(entrySuccessors, entrySize);
+        successors[exit] = new int[0];
+
+        int[][] predecessors = invert(successors, predecessorCount);
+
+        int[] dominators = computeImmediateDominators(successors, predecessors, entry);
+        dominatorPre = new int[n + 2];
+        dominatorPost = new int[n + 2];
+        numberTree(dominators, entry, dominatorPre, dominatorPost);
+
+        int[] postDominators = computeImmediateDominators(predecessors, successors, exit);
+        postDominatorPre = new int[n + 2];
+        postDominatorPost = new int[n + 2];
+        numberTree(postDominators, exit, postDominatorPre, postDominatorPost);
+    }
+
+    private static void collect(Iterable<FlowElement> flowElements, List<FlowNode> flowNodes) {
+        for (FlowElement flowElement: flowElements) {
+            if (flowElement instanceof FlowNode) {
+                flowNodes.add((FlowNode) flowElement);
+                if (flowElement instanceof SubProcess) {
+                    collect(((SubProcess) flowElement).getFlowElements(), flowNodes);
+                }
+            }
+        }
+    }
+
+    private static int[][] invert(int[][] successors, int[] predecessorCount) {
+        int[][] predecessors = new int[successors.length][];
+        int[] size = new int[successors.length];
+        for (int i = 0; i < successors.length; i++) {
+            predecessors[i] = new int[predecessorCount[i]];
+        }
+        for (int i = 0; i < successors.length; i++) {
+            for (int target: successors[i]) {
+                predecessors[target][size[target]++] = i;
+            }
+        }
+        return predecessors;
+    }
+
+    // Immediate dominator of each node in the graph rooted at root, UNREACHABLE for nodes out of reach
+    private static int[] computeImmediateDominators(int[][] successors, int[][] predecessors, int root) {
+        int size = successors.length;
+
+        // Depth-first postorder numbering of the nodes reachable from root
+        int[] postorder = new int[size];
+        Arrays.fill(postorder, UNREACHABLE);
+        int[] reversePostorder = new int[size];
+        int reachable = 0;
+
+        boolean[] visited = new boolean[size];
+        int[] stack = new int[size];
+        int[] edge = new int[size];
+        int top = 0;
+        stack[0] = root;
+        visited[root] = true;
+        while (top >= 0) {
+            int node = stack[top];
+            if (edge[top] < successors[node].length) {
+                int next = successors[node][edge[top]++];
+                if (!visited[next]) {
+                    visited[next] = true;
+                    stack[++top] = next;
+                    edge[top] = 0;
+                }
+            }
+            else {
+                postorder[node] = reachable;
+                reversePostorder[size - 1 - reachable] = node;
+                reachable++;
+                top--;
+            }
+        }
+
+        int[] idom = new int[size];
+        Arrays.fill(idom, UNREACHABLE);
+        idom[root] = root;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = size - reachable; i < size; i++) {
+                int node = reversePostorder[i];
+                if (node == root) {
+                    continue;
+                }
+                int newIdom = UNREACHABLE;
+                for (int predecessor: predecessors[node]) {
+                    if (idom[predecessor] == UNREACHABLE) {
+                        continue;
+                    }
+                    newIdom = newIdom == UNREACHABLE ? predecessor : intersect(idom, postorder, predecessor, newIdom);
+                }
+                if (idom[node] != newIdom) {
+                    idom[node] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        return idom;
+    }
+
+    private static int intersect(int[] idom, int[] postorder, int a, int b) {
+        while (a != b) {
+            while (postorder[a] < postorder[b]) {
+                a = idom[a];
+            }
+            while (postorder[b] < postorder[a]) {
+                b = idom[b];
+            }
+        }
+        return a;
+    }
+
+    // Preorder/postorder interval numbering of the tree given by idom, so that ancestry is an interval check
+    private static void numberTree(int[] idom, int root, int[] pre, int[] post) {
+        int size = idom.length;
+        int[] childCount = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (i != root && idom[i] != UNREACHABLE) {
+                childCount[idom[i]]++;
+            }
+        }
+        int[][] children = new int[size][];
+        for (int i = 0; i < size; i++) {
+            children[i] = new int[childCount[i]];
+            childCount[i] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            if (i != root && idom[i] != UNREACHABLE) {
+                children[idom[i]][childCount[idom[i]]++] = i;
+            }
+        }
+
+        Arrays.fill(pre, UNREACHABLE);
+        Arrays.fill(post, UNREACHABLE);
+        int[] stack = new int[size];
+        int[] edge = new int[size];
+        int top = 0;
+        int counter = 0;
+        stack[0] = root;
+        pre[root] = counter++;
+        while (top >= 0) {
+            int node = stack[top];
+            if (edge[top] < children[node].length) {
+                int child = children[node][edge[top]++];
+                pre[child] = counter++;
+                stack[++top] = child;
+                edge[top] = 0;
+            }
+            else {
+                post[node] = counter++;
+                top--;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.w3c.dom.Document;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// State of an open validation batch of a BpmnModelInstance
+// While a batch is open, model validations requested by the operators are deferred and run once when it is committed.
+// Batches can be nested, only the outermost commit validates the model. Validations deferred in an inner batch are
+// carried over to the outer one, unless the inner batch is committed without validation.
+// The state is attached to the model DOM document, so copies of the model don't inherit an open batch.
+final class ValidationBatch {
+
+    private static final String USER_DATA_KEY = ValidationBatch.class.getName();
+
+    // Whether a validation was deferred in each enclosing batch, and in the innermost one
+    private final Deque<Boolean> outerValidationsPending = new ArrayDeque<Boolean>();
+    private boolean validationPending;
+
+    private ValidationBatch() {}
+
+    // Get the open batch of a model, or null if there's none
+    static ValidationBatch peek(BpmnModelInstance modelInstance) {
+        return (ValidationBatch) getDocument(modelInstance).getUserData(USER_DATA_KEY);
+    }
+
+    static void begin(BpmnModelInstance modelInstance) {
+        ValidationBatch batch = peek(modelInstance);
+        if (batch == null) {
+            batch = new ValidationBatch();
+            getDocument(modelInstance).setUserData(USER_DATA_KEY, batch, null);
+        }
+        batch.outerValidationsPending.push(batch.validationPending);
+        batch.validationPending = false;
+    }
+
+    // Close the innermost batch, returning true if it was the outermost one and a validation is due
+    // The validations deferred in the innermost batch are dropped if validate is false.
+    static boolean end(BpmnModelInstance modelInstance, boolean validate) {
+        ValidationBatch batch = peek(modelInstance);
+        if (batch == null) {
+            throw new IllegalStateException("There is no open batch in given BpmnModelInstance");
+        }
+        batch.validationPending = batch.outerValidationsPending.pop() || (batch.validationPending && validate);
+        if (!batch.outerValidationsPending.isEmpty()) {
+            return false;
+        }
+        getDocument(modelInstance).setUserData(USER_DATA_KEY, null, null);
+        return batch.validationPending;
+    }
+
+    void deferValidation() {
+        validationPending = true;
+    }
+
+    private static Document getDocument(BpmnModelInstance modelInstance) {
+        return (Document) modelInstance.getDocument().getDomSource().getNode();
+    }
+}
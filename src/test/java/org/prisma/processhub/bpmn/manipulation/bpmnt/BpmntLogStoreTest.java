@@ -0,0 +1,113 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.FlowNode;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.*;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnElementSearcher;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BpmntLogStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File snapshotFile;
+    private File logFile;
+    private List<BpmntOperation> operations;
+
+    @Before
+    public void createOperations() {
+        snapshotFile = new File(folder.getRoot(), "variant.bpmnt");
+        logFile = new File(folder.getRoot(), "variant.bpmnt.log");
+
+        BpmnModelInstance simpleModel = Bpmn.readModelFromStream(BpmntLogStoreTest.class.getClassLoader().getResourceAsStream("simple_diagram.bpmn"));
+        FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+
+        operations = new ArrayList<BpmntOperation>();
+        operations.add(new Extend(BpmnElementSearcher.findFirstProcess(simpleModel).getId()));
+        operations.add(new Rename(firstNode.getId(), "Renamed"));
+        operations.add(new InsertNode(BpmnElementSearcher.findStartEvent(simpleModel).getId(), firstNode.getId(), lastNode));
+        operations.add(new DeleteNode(lastNode.getId()));
+        for (int i = 0; i < operations.size(); i++) {
+            operations.get(i).setExecutionOrder(i + 1);
+        }
+    }
+
+    // Tests naming convention: methodName_StateUnderTest_ExpectedBehavior
+
+    @Test
+    public void append_StoreReopened_OperationsReloaded() throws Exception {
+        BpmntLogStore store = BpmntLogStore.open(snapshotFile, logFile);
+        for (BpmntOperation operation: operations) {
+            store.append(operation);
+        }
+        store.close();
+
+        store = BpmntLogStore.open(snapshotFile, logFile);
+        assertSameOperations(operations, store.getOperations());
+        assertEquals(operations.size(), store.getRecordCount());
+        store.close();
+    }
+
+    @Test
+    public void open_PartialLastRecord_RecordTruncated() throws Exception {
+        BpmntLogStore store = BpmntLogStore.open(snapshotFile, logFile);
+        for (BpmntOperation operation: operations) {
+            store.append(operation);
+        }
+        store.close();
+
+        // Cut the last record short, as a crash while appending would
+        RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+        file.setLength(file.length() - 10);
+        file.close();
+
+        store = BpmntLogStore.open(snapshotFile, logFile);
+        assertSameOperations(operations.subList(0, operations.size() - 1), store.getOperations());
+        store.append(operations.get(operations.size() - 1));
+        store.close();
+
+        store = BpmntLogStore.open(snapshotFile, logFile);
+        assertSameOperations(operations, store.getOperations());
+        store.close();
+    }
+
+    @Test
+    public void compact_AppendedOperations_SnapshotWrittenAndLogEmptied() throws Exception {
+        BpmntLogStore store = BpmntLogStore.open(snapshotFile, logFile);
+        for (BpmntOperation operation: operations.subList(0, 3)) {
+            store.append(operation);
+        }
+        store.compact();
+        assertEquals(0, store.getRecordCount());
+        store.append(operations.get(3));
+        store.close();
+
+        store = BpmntLogStore.open(snapshotFile, logFile);
+        assertTrue(snapshotFile.exists());
+        assertEquals(1, store.getRecordCount());
+        assertSameOperations(operations, store.getOperations());
+        store.close();
+    }
+
+    private static void assertSameOperations(List<BpmntOperation> expected, List<BpmntOperation> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), actual.get(i).getName());
+            assertEquals(expected.get(i).getExecutionOrder(), actual.get(i).getExecutionOrder());
+            assertEquals(expected.get(i).getSignature(), actual.get(i).getSignature());
+        }
+    }
+}
@@ -1,26 +1,56 @@
 package org.prisma.processhub.bpmn.manipulation.bpmnt;
 
 import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelException;
 import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.instance.EndEvent;
+import org.camunda.bpm.model.bpmn.instance.FlowElement;
 import org.camunda.bpm.model.bpmn.instance.FlowNode;
 import org.camunda.bpm.model.bpmn.instance.Process;
+import org.camunda.bpm.model.bpmn.instance.SequenceFlow;
 import org.camunda.bpm.model.bpmn.instance.StartEvent;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntOperationCodec.ExtensionAttributes;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.*;
+import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmn;
+import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmnModelInstance;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnElementSearcher;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnTypeRegistry;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class BpmntTest {
 
     @Rule
     public final ExpectedException exception = ExpectedException.none();
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     private BpmntModelInstance simpleModel;
     private BpmntModelInstance simpleModel2;
     private BpmntModelInstance parallelModel;
@@ -66,4 +96,263 @@ public class BpmntTest {
         System.out.println(Bpmn.convertToString(Bpmnt.convertBpmntFromListToModel(bpmntOperations)));
     }
 
+
+    @Test
+    public void readModelFromStream_BothFacades_TypeModelShared() {
+        TailorableBpmnModelInstance tailorableModel = TailorableBpmn.readModelFromStream(
+                BpmntTest.class.getClassLoader().getResourceAsStream("simple_diagram.bpmn"));
+
+        assertSame(BpmnTypeRegistry.getModel(), simpleModel.getModel());
+        assertSame(BpmnTypeRegistry.getModel(), tailorableModel.getModel());
+        assertEquals(BpmnElementSearcher.findStartEvent(simpleModel).getId(),
+                BpmnElementSearcher.findStartEvent(tailorableModel).getId());
+    }
+
+    @Test
+    public void readModelFromStream_SeveralThreads_ModelsRead() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<BpmntModelInstance>> futures = new ArrayList<Future<BpmntModelInstance>>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(new Callable<BpmntModelInstance>() {
+                    @Override
+                    public BpmntModelInstance call() {
+                        return Bpmnt.readModelFromStream(BpmntTest.class.getClassLoader().getResourceAsStream("parallel_diagram.bpmn"));
+                    }
+                }));
+            }
+
+            for (Future<BpmntModelInstance> future: futures) {
+                BpmntModelInstance modelInstance = future.get();
+                assertEquals(BpmnElementSearcher.findStartEvent(parallelModel).getId(), BpmnElementSearcher.findStartEvent(modelInstance).getId());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void readModelFromStream_WithoutValidation_ElementsFoundById() throws Exception {
+        BpmntModelInstance modelInstance = Bpmnt.readModelFromStream(
+                BpmntTest.class.getClassLoader().getResourceAsStream("parallel_diagram.bpmn"), false);
+        String startEventId = BpmnElementSearcher.findStartEvent(parallelModel).getId();
+
+        assertNotNull(modelInstance.getModelElementById(startEventId));
+        assertEquals(parallelModel.getModelElementsByType(FlowNode.class).size(), modelInstance.getModelElementsByType(FlowNode.class).size());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Bpmnt.validateModelInBackground(modelInstance, executor).get();
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void convertBpmntFromStreamToList_ValidBpmntLog_SameOperationsAsFromModel() {
+        Process baseProcess = BpmnElementSearcher.findFirstProcess(simpleModel);
+        StartEvent startEvent = BpmnElementSearcher.findStartEvent(simpleModel);
+        EndEvent endEvent = BpmnElementSearcher.findEndEvent(simpleModel);
+        FlowNode task1 = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode task2 = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+
+        List<BpmntOperation> bpmntOperations = new ArrayList<BpmntOperation>();
+        bpmntOperations.add(new Extend(baseProcess.getId()));
+        bpmntOperations.add(new Rename(task1.getId(), "Renamed"));
+        bpmntOperations.add(new InsertNode(startEvent.getId(), task1.getId(), task2));
+        bpmntOperations.add(new DeleteFragment(task1.getId(), endEvent.getId()));
+        bpmntOperations.add(new Contribute(task1));
+        for (int i = 0; i < bpmntOperations.size(); i++) {
+            bpmntOperations.get(i).setExecutionOrder(i + 1);
+        }
+        String bpmntXml = Bpmn.convertToString(Bpmnt.convertBpmntFromListToModel(bpmntOperations));
+
+        List<BpmntOperation> fromModel = Bpmnt.convertBpmntFromModelToList(
+                Bpmn.readModelFromStream(new ByteArrayInputStream(bpmntXml.getBytes(StandardCharsets.UTF_8))));
+        List<BpmntOperation> fromStream = Bpmnt.convertBpmntFromStreamToList(
+                new ByteArrayInputStream(bpmntXml.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(bpmntOperations.size(), fromStream.size());
+        for (int i = 0; i < fromStream.size(); i++) {
+            assertEquals(fromModel.get(i).getName(), fromStream.get(i).getName());
+            assertEquals(fromModel.get(i).getExecutionOrder(), fromStream.get(i).getExecutionOrder());
+            assertEquals(fromModel.get(i).getSignature(), fromStream.get(i).getSignature());
+        }
+        // Process extensions come before the subprocess containers
+        assertEquals(task2.getId(), ((InsertNode) fromStream.get(3)).getFlowNodeToInsert().getId());
+    }
+
+    @Test
+    public void convertBpmntFromStreamToList_EncodeOnlyOperation_OperationSkipped() {
+        List<BpmntOperation> bpmntOperations = new ArrayList<BpmntOperation>();
+        bpmntOperations.add(new Extend(BpmnElementSearcher.findFirstProcess(simpleModel).getId()));
+        bpmntOperations.add(new Split(BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel).getId(), simpleModel2));
+        bpmntOperations.add(new Rename(BpmnElementSearcher.findStartEvent(simpleModel).getId(), "Renamed"));
+        for (int i = 0; i < bpmntOperations.size(); i++) {
+            bpmntOperations.get(i).setExecutionOrder(i + 1);
+        }
+        String bpmntXml = Bpmn.convertToString(Bpmnt.convertBpmntFromListToModel(bpmntOperations));
+
+        // Split is only encoded, so it's left out of the decoded logs
+        List<BpmntOperation> fromModel = Bpmnt.convertBpmntFromModelToList(
+                Bpmn.readModelFromStream(new ByteArrayInputStream(bpmntXml.getBytes(StandardCharsets.UTF_8))));
+        List<BpmntOperation> fromStream = Bpmnt.convertBpmntFromStreamToList(
+                new ByteArrayInputStream(bpmntXml.getBytes(StandardCharsets.UTF_8)));
+
+        for (List<BpmntOperation> decoded: Arrays.asList(fromModel, fromStream)) {
+            assertEquals(2, decoded.size());
+            assertEquals(Extend.class.getSimpleName(), decoded.get(0).getName());
+            assertEquals(Rename.class.getSimpleName(), decoded.get(1).getName());
+        }
+    }
+
+    @Test
+    public void convertBpmntFromStreamToList_RegisteredCodec_OperationDecodedByCodec() {
+        final BpmntOperationCodec renameCodec = BpmntOperationCodecs.get(Rename.class.getSimpleName());
+        BpmntOperationCodecs.register(new BpmntOperationCodec() {
+            @Override
+            public String getOperationName() {
+                return renameCodec.getOperationName();
+            }
+
+            @Override
+            public boolean isContainerExtension() {
+                return false;
+            }
+
+            @Override
+            public void encode(BpmntOperation operation, Process process) {
+                renameCodec.encode(operation, process);
+            }
+
+            @Override
+            public BpmntOperation decode(ExtensionAttributes attributes, FlowElement element) {
+                return new Rename(attributes.get("elementId"), attributes.get("newName").toUpperCase());
+            }
+        });
+
+        try {
+            List<BpmntOperation> bpmntOperations = new ArrayList<BpmntOperation>();
+            bpmntOperations.add(new Extend(BpmnElementSearcher.findFirstProcess(simpleModel).getId()));
+            bpmntOperations.add(new Rename(BpmnElementSearcher.findStartEvent(simpleModel).getId(), "Renamed"));
+            String bpmntXml = Bpmn.convertToString(Bpmnt.convertBpmntFromListToModel(bpmntOperations));
+
+            List<BpmntOperation> decoded = Bpmnt.convertBpmntFromStreamToList(
+                    new ByteArrayInputStream(bpmntXml.getBytes(StandardCharsets.UTF_8)));
+
+            assertEquals("RENAMED", ((Rename) decoded.get(1)).getNewName());
+        }
+        finally {
+            BpmntOperationCodecs.register(renameCodec);
+        }
+    }
+
+    @Test
+    public void readModelAndBpmntFromBinaryStream_WrittenModel_ModelAndLogRestored() {
+        Process process = BpmnElementSearcher.findFirstProcess(parallelModel);
+        FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(parallelModel);
+        parallelModel.init(new Extend(process.getId()));
+        parallelModel.rename(firstNode.getId(), "Renamed");
+        // Stored as a subprocess container in the log
+        parallelModel.insert(BpmnElementSearcher.findStartEvent(parallelModel), firstNode,
+                BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        Bpmnt.writeModelAndBpmntToBinaryStream(binary, parallelModel);
+        BpmntModelInstance restoredModel = Bpmnt.readModelAndBpmntFromBinaryStream(new ByteArrayInputStream(binary.toByteArray()));
+
+        assertEquals("Renamed", ((FlowNode) restoredModel.getModelElementById(firstNode.getId())).getName());
+        assertEquals(parallelModel.getModelElementsByType(SequenceFlow.class).size(), restoredModel.getModelElementsByType(SequenceFlow.class).size());
+        for (SequenceFlow flow: restoredModel.getModelElementsByType(SequenceFlow.class)) {
+            SequenceFlow originalFlow = parallelModel.getModelElementById(flow.getId());
+            assertEquals(originalFlow.getSource().getId(), flow.getSource().getId());
+            assertEquals(originalFlow.getTarget().getId(), flow.getTarget().getId());
+        }
+        assertEquals(parallelModel.getBpmntLog().size(), restoredModel.getBpmntLog().size());
+        for (int i = 0; i < parallelModel.getBpmntLog().size(); i++) {
+            assertEquals(parallelModel.getBpmntLog().get(i).getSignature(), restoredModel.getBpmntLog().get(i).getSignature());
+        }
+        Bpmnt.validateModel(restoredModel);
+        assertTrue(binary.size() < Bpmnt.convertToString(parallelModel).length());
+    }
+
+    @Test
+    public void readModelAndBpmntFromBinaryStream_ImplausibleStringLength_ThrowsBpmnModelException() {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        Bpmnt.writeModelAndBpmntToBinaryStream(binary, simpleModel);
+        byte[] bytes = binary.toByteArray();
+
+        // Magic number, version 1 and a single string of 2^31 - 1 bytes, with nothing after its length
+        byte[] corruptBytes = { bytes[0], bytes[1], bytes[2], bytes[3], 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 };
+
+        exception.expect(BpmnModelException.class);
+        exception.expectMessage("Corrupt binary BPMNt model");
+        Bpmnt.readModelAndBpmntFromBinaryStream(new ByteArrayInputStream(corruptBytes));
+    }
+
+    @Test
+    public void readModelAndBpmntFromBinaryStream_NegativeStringCount_ThrowsBpmnModelException() {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        Bpmnt.writeModelAndBpmntToBinaryStream(binary, simpleModel);
+        byte[] bytes = binary.toByteArray();
+
+        byte[] corruptBytes = { bytes[0], bytes[1], bytes[2], bytes[3], 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F };
+
+        exception.expect(BpmnModelException.class);
+        exception.expectMessage("Corrupt binary BPMNt model");
+        Bpmnt.readModelAndBpmntFromBinaryStream(new ByteArrayInputStream(corruptBytes));
+    }
+
+    @Test
+    public void readModelFromReader_ModelWithoutSchemaDefaults_SameModelAsFromStream() throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get(BpmntTest.class.getClassLoader().getResource("simple_diagram.bpmn").toURI()));
+        String xml = new String(bytes, StandardCharsets.UTF_8);
+        String expectedXml = Bpmnt.convertToString(Bpmnt.readModelFromStream(new ByteArrayInputStream(bytes)));
+
+        // Characters are parsed as bytes are, the default values of the schema included
+        assertEquals(expectedXml, Bpmnt.convertToString(Bpmnt.readModelFromReader(new StringReader(xml))));
+        List<BpmntOperation> bpmntOperations = new ArrayList<BpmntOperation>();
+        bpmntOperations.add(new Extend(BpmnElementSearcher.findFirstProcess(simpleModel).getId()));
+        String bpmntXml = Bpmn.convertToString(Bpmnt.convertBpmntFromListToModel(bpmntOperations));
+        assertEquals(expectedXml, Bpmnt.convertToString(Bpmnt.readModelAndBpmntFromStrings(xml, bpmntXml)));
+    }
+
+    @Test
+    public void readModelFromFile_LargeFile_SameModelAsFromStream() throws Exception {
+        // Padded with a comment to be read through a mapping
+        StringBuilder padding = new StringBuilder("<!--");
+        while (padding.length() < 2 << 20) {
+            padding.append("padding ");
+        }
+        padding.append("-->");
+        String xml = Bpmnt.convertToString(parallelModel).replaceFirst("(<bpmn:process[^>]*>)", "$1" + padding);
+        Path path = folder.getRoot().toPath().resolve("large.bpmn");
+        Files.write(path, xml.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Bpmnt.convertToString(Bpmnt.readModelFromStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))),
+                Bpmnt.convertToString(Bpmnt.readModelFromFile(path)));
+    }
+
+    @Test
+    public void readModelFromFile_WrittenToPath_SameModelFromFileChannelAndBuffer() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("parallel.bpmn");
+        Bpmnt.writeModelToFile(path, parallelModel);
+        byte[] bytes = Files.readAllBytes(path);
+
+        List<BpmntModelInstance> readModels = new ArrayList<BpmntModelInstance>();
+        readModels.add(Bpmnt.readModelFromFile(path));
+        readModels.add(Bpmnt.readModelFromChannel(Channels.newChannel(new ByteArrayInputStream(bytes))));
+        readModels.add(Bpmnt.readModelFromBuffer(ByteBuffer.wrap(bytes)));
+
+        String expectedXml = Bpmnt.convertToString(Bpmnt.readModelFromStream(new ByteArrayInputStream(bytes)));
+        for (BpmntModelInstance readModel: readModels) {
+            assertEquals(expectedXml, Bpmnt.convertToString(readModel));
+        }
+
+        ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+        Bpmnt.writeModelToChannel(Channels.newChannel(channelBytes), parallelModel);
+        assertEquals(new String(bytes, StandardCharsets.UTF_8), new String(channelBytes.toByteArray(), StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,102 @@
+package org.prisma.processhub.bpmn.manipulation.bpmnt;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.FlowElement;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.Extend;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.Rename;
+import org.prisma.processhub.bpmn.manipulation.util.BpmnElementSearcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VariantCacheTest {
+
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    private BpmnModelInstance simpleModel;
+    private String processId;
+    private String firstNodeId;
+    private String lastNodeId;
+
+    // Load diagrams before each test
+    @Before
+    public void loadDiagrams() {
+        simpleModel = Bpmn.readModelFromStream(VariantCacheTest.class.getClassLoader().getResourceAsStream("simple_diagram.bpmn"));
+        processId = BpmnElementSearcher.findFirstProcess(simpleModel).getId();
+        firstNodeId = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel).getId();
+        lastNodeId = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel).getId();
+    }
+
+    // Tests naming convention: methodName_StateUnderTest_ExpectedBehavior
+
+    @Test
+    public void materialize_SameAndExtendedLogs_ServedFromCache() {
+        VariantCache cache = new VariantCache();
+
+        BpmntModelInstance variant1 = cache.materialize(simpleModel, createLog("First"));
+        BpmntModelInstance variant2 = cache.materialize(simpleModel, createLog("First"));
+        BpmntModelInstance variant3 = cache.materialize(simpleModel, createLog("First", "Last"));
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getPartialHitCount());
+        assertEquals(2, cache.size());
+
+        // Every request gets its own model and the base model is left untouched
+        assertNotSame(variant1, variant2);
+        assertEquals("First", ((FlowElement) variant2.getModelElementById(firstNodeId)).getName());
+        assertEquals("Last", ((FlowElement) variant3.getModelElementById(lastNodeId)).getName());
+        assertEquals(3, variant3.getBpmntLog().size());
+        assertEquals(processId, BpmnElementSearcher.findFirstProcess(simpleModel).getId());
+        Bpmnt.validateModel(variant3);
+    }
+
+    @Test
+    public void materialize_MoreVariantsThanEntries_LeastRecentlyUsedEvicted() {
+        VariantCache cache = new VariantCache(2);
+
+        cache.materialize(simpleModel, createLog("A"));
+        cache.materialize(simpleModel, createLog("B"));
+        cache.materialize(simpleModel, createLog("A"));
+        cache.materialize(simpleModel, createLog("C"));
+        cache.materialize(simpleModel, createLog("A"));
+        cache.materialize(simpleModel, createLog("B"));
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void materialize_DuplicateExecutionOrders_ThrowsIllegalArgumentException() {
+        VariantCache cache = new VariantCache();
+        List<BpmntOperation> log = createLog("First", "Last");
+        log.get(2).setExecutionOrder(2);
+
+        exception.expect(IllegalArgumentException.class);
+        cache.materialize(simpleModel, log);
+    }
+
+    private List<BpmntOperation> createLog(String... names) {
+        List<BpmntOperation> log = new ArrayList<BpmntOperation>();
+        log.add(new Extend(processId));
+        log.add(new Rename(firstNodeId, names[0]));
+        if (names.length > 1) {
+            log.add(new Rename(lastNodeId, names[1]));
+        }
+        for (int i = 0; i < log.size(); i++) {
+            log.get(i).setExecutionOrder(i + 1);
+        }
+        return log;
+    }
+}
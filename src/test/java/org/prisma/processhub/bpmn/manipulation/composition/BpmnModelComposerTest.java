@@ -7,9 +7,22 @@ import org.camunda.bpm.model.bpmn.Bpmn;
 import org.camunda.bpm.model.bpmn.BpmnModelInstance;
 import org.camunda.bpm.model.bpmn.instance.*;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnElementSearcher;
+import org.prisma.processhub.bpmn.manipulation.util.FlowGraphIndex;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.prisma.processhub.bpmn.manipulation.composition.CompositionExpression.*;
 
 
 
@@ -110,6 +123,271 @@ public class BpmnModelComposerTest extends TestCase
 
     }
 
+    public void testSerialProcessComposition_ManyModels() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+
+        int numberModels = 500;
+        List<BpmnModelInstance> modelInstances = new ArrayList<BpmnModelInstance>();
+        for (int i = 0; i < numberModels; i++) {
+            modelInstances.add(createChainModel("m" + i, 2));
+        }
+        String firstModelXml = Bpmn.convertToString(modelInstances.get(0));
+
+        BpmnModelInstance resultModel = bpmnModelComposer.joinModelsInSeries(modelInstances);
+
+        // Walk the composed chain from the start event to the end event
+        FlowGraphIndex index = FlowGraphIndex.of(resultModel);
+        FlowNode currentNode = BpmnElementSearcher.findStartEvent(resultModel);
+        for (int i = 0; i < numberModels; i++) {
+            currentNode = index.getSucceedingNode(currentNode);
+            assertEquals("m" + i + "_task0", currentNode.getId());
+            currentNode = index.getSucceedingNode(currentNode);
+            assertEquals("m" + i + "_task1", currentNode.getId());
+        }
+        assertEquals(BpmnElementSearcher.findEndEvent(resultModel), index.getSucceedingNode(currentNode));
+        assertEquals(2 * numberModels + 2, resultModel.getModelElementsByType(FlowNode.class).size());
+
+        // The composed model must survive a round trip and the input models must be left untouched
+        Bpmn.validateModel(resultModel);
+        Bpmn.readModelFromStream(new ByteArrayInputStream(Bpmn.convertToString(resultModel).getBytes(StandardCharsets.UTF_8)));
+        assertEquals(firstModelXml, Bpmn.convertToString(modelInstances.get(0)));
+    }
+
+    public void testSerialProcessComposition_SameModelTwice() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+        BpmnModelInstance modelInstance = Bpmn.readModelFromStream(getClass().getClassLoader().getResourceAsStream("simple_diagram.bpmn"));
+        String modelXml = Bpmn.convertToString(modelInstance);
+        int numberFlowNodes = modelInstance.getModelElementsByType(FlowNode.class).size();
+
+        BpmnModelInstance resultModel = bpmnModelComposer.joinModelsInSeries(modelInstance, modelInstance);
+
+        // Both copies of the process are kept, with a single start and end event
+        assertNotNull(resultModel);
+        assertEquals(2 * numberFlowNodes - 2, resultModel.getModelElementsByType(FlowNode.class).size());
+        assertEquals(1, resultModel.getModelElementsByType(StartEvent.class).size());
+        assertEquals(1, resultModel.getModelElementsByType(EndEvent.class).size());
+        Bpmn.validateModel(resultModel);
+        assertEquals(modelXml, Bpmn.convertToString(modelInstance));
+    }
+
+    public void testSerialProcessComposition_ModelStreams() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+
+        int numberModels = 50;
+        BpmnModelInstance resultModel = bpmnModelComposer.joinModelStreamsInSeries(createChainModelStreams(numberModels));
+
+        FlowGraphIndex index = FlowGraphIndex.of(resultModel);
+        FlowNode currentNode = BpmnElementSearcher.findStartEvent(resultModel);
+        for (int i = 0; i < numberModels; i++) {
+            currentNode = index.getSucceedingNode(currentNode);
+            assertEquals("m" + i + "_task0", currentNode.getId());
+            currentNode = index.getSucceedingNode(currentNode);
+            assertEquals("m" + i + "_task1", currentNode.getId());
+        }
+        assertEquals(BpmnElementSearcher.findEndEvent(resultModel), index.getSucceedingNode(currentNode));
+        Bpmn.validateModel(resultModel);
+    }
+
+    public void testParallelProcessComposition_ModelStreams() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+
+        int numberModels = 50;
+        BpmnModelInstance resultModel = bpmnModelComposer.joinModelStreamsInParallel(createChainModelStreams(numberModels));
+
+        FlowGraphIndex index = FlowGraphIndex.of(resultModel);
+        FlowNode divergentGateway = index.getSucceedingNode(BpmnElementSearcher.findStartEvent(resultModel));
+        assertTrue(divergentGateway instanceof ParallelGateway);
+        assertEquals(numberModels, index.getSucceedingNodes(divergentGateway).size());
+        assertEquals(2 + 2 + 2 * numberModels, resultModel.getModelElementsByType(FlowNode.class).size());
+        Bpmn.validateModel(resultModel);
+    }
+
+    public void testSerialProcessComposition_RejectedModelStream_ReadStreamsClosed() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+
+        // The second model has no end event, so the composition stops before reading the last ones
+        final List<Boolean> closed = new ArrayList<Boolean>();
+        List<InputStream> streams = new ArrayList<InputStream>();
+        BpmnModelInstance[] models = { createChainModel("m0", 2), Bpmn.createProcess().startEvent().done(),
+                                       createChainModel("m2", 2), createChainModel("m3", 2) };
+        for (BpmnModelInstance mi: models) {
+            final int position = closed.size();
+            closed.add(false);
+            streams.add(new ByteArrayInputStream(Bpmn.convertToString(mi).getBytes(StandardCharsets.UTF_8)) {
+                @Override
+                public void close() {
+                    closed.set(position, true);
+                }
+            });
+        }
+
+        // The streams read are closed, the others are neither taken from the source nor closed
+        Iterator<InputStream> source = streams.iterator();
+        assertNull(bpmnModelComposer.joinModelStreamsInSeries(source));
+        assertEquals(Arrays.asList(true, true, false, false), closed);
+        assertSame(streams.get(2), source.next());
+    }
+
+    public void testParallelProcessComposition_SharedModels() throws Exception {
+        final BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+
+        // The same models are composed several times, by several threads at once
+        BpmnModelInstance simpleModel = Bpmn.readModelFromStream(getClass().getClassLoader().getResourceAsStream("simple_diagram.bpmn"));
+        BpmnModelInstance parallelModel = Bpmn.readModelFromStream(getClass().getClassLoader().getResourceAsStream("parallel_diagram.bpmn"));
+        String simpleModelXml = Bpmn.convertToString(simpleModel);
+        final List<BpmnModelInstance> modelsToJoin = new ArrayList<BpmnModelInstance>();
+        modelsToJoin.add(simpleModel);
+        modelsToJoin.add(simpleModel);
+        modelsToJoin.add(parallelModel);
+        modelsToJoin.add(simpleModel);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<BpmnModelInstance>> results = new ArrayList<Future<BpmnModelInstance>>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(new Callable<BpmnModelInstance>() {
+                @Override
+                public BpmnModelInstance call() {
+                    return bpmnModelComposer.joinModelsInParallelPreservingInputs(modelsToJoin);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        int numberNodesFromSimpleModel = simpleModel.getModelElementsByType(FlowNode.class).size();
+        String firstNodeId = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel).getId();
+        for (Future<BpmnModelInstance> result: results) {
+            BpmnModelInstance resultModel = result.get();
+            FlowGraphIndex index = FlowGraphIndex.of(resultModel);
+            FlowNode divergentGateway = index.getSucceedingNode(BpmnElementSearcher.findStartEvent(resultModel));
+            assertEquals(5, index.getSucceedingNodes(divergentGateway).size());
+            assertEquals(3 * (numberNodesFromSimpleModel - 2) + 2 + 4, resultModel.getModelElementsByType(FlowNode.class).size());
+
+            // Only the clashing ids of the later inputs are namespaced
+            assertNotNull(resultModel.getModelElementById(firstNodeId));
+            assertNotNull(resultModel.getModelElementById("in1_" + firstNodeId));
+            assertNotNull(resultModel.getModelElementById("in3_" + firstNodeId));
+            assertNotNull(resultModel.getModelElementById(BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel).getId()));
+            Bpmn.validateModel(resultModel);
+        }
+        assertEquals(simpleModelXml, Bpmn.convertToString(simpleModel));
+    }
+
+    public void testParallelProcessComposition_SharedModelWithDataObject() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+
+        BpmnModelInstance modelInstance = Bpmn.createProcess().startEvent().userTask("task").endEvent().done();
+        org.camunda.bpm.model.bpmn.instance.Process process = BpmnElementSearcher.findFirstProcess(modelInstance);
+        DataObject dataObject = modelInstance.newInstance(DataObject.class);
+        dataObject.setId("dataObject");
+        process.addChildElement(dataObject);
+        DataObjectReference dataObjectReference = modelInstance.newInstance(DataObjectReference.class);
+        dataObjectReference.setId("dataObjectReference");
+        dataObjectReference.setDataObject(dataObject);
+        process.addChildElement(dataObjectReference);
+
+        List<BpmnModelInstance> modelsToJoin = new ArrayList<BpmnModelInstance>();
+        modelsToJoin.add(modelInstance);
+        modelsToJoin.add(modelInstance);
+        BpmnModelInstance resultModel = bpmnModelComposer.joinModelsInParallelPreservingInputs(modelsToJoin);
+
+        // The namespaced data object reference points to the namespaced data object
+        DataObjectReference namespacedReference = resultModel.getModelElementById("in1_dataObjectReference");
+        assertNotNull(namespacedReference);
+        assertEquals("in1_dataObject", namespacedReference.getDataObject().getId());
+        assertEquals("dataObject", resultModel.<DataObjectReference>getModelElementById("dataObjectReference").getDataObject().getId());
+        Bpmn.validateModel(resultModel);
+    }
+
+    public void testExpressionComposition() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+
+        BpmnModelInstance parallelModel = Bpmn.readModelFromStream(getClass().getClassLoader().getResourceAsStream("parallel_diagram.bpmn"));
+        BpmnModelInstance modelA = createChainModel("a", 2);
+        String modelAXml = Bpmn.convertToString(modelA);
+
+        // series(a, parallel(b, parallel_diagram, series(d, e)), f, parallel(g, h))
+        CompositionExpression expression = series(
+                model(modelA),
+                parallel(model(createChainModel("b", 2)), model(parallelModel),
+                         series(model(createChainModel("d", 2)), model(createChainModel("e", 2)))),
+                model(createChainModel("f", 2)),
+                parallel(model(createChainModel("g", 2)), model(createChainModel("h", 2))));
+
+        CompositionPlan plan = bpmnModelComposer.plan(expression);
+        BpmnModelInstance resultModel = plan.execute();
+        assertEquals(plan.getNodeCount(), resultModel.getModelElementsByType(FlowNode.class).size());
+        assertEquals(plan.getFlowCount(), resultModel.getModelElementsByType(SequenceFlow.class).size());
+
+        // The branches of the parallel model are merged with the other ones of its composition
+        FlowGraphIndex index = FlowGraphIndex.of(resultModel);
+        FlowNode divergentGateway = index.getSucceedingNode(resultModel.<FlowNode>getModelElementById("a_task1"));
+        assertTrue(divergentGateway instanceof ParallelGateway);
+        assertEquals(4, index.getSucceedingNodes(divergentGateway).size());
+        FlowNode convergentGateway = index.getPreviousNode(findNodeByIdSuffix(resultModel, "f_task0"));
+        assertTrue(convergentGateway instanceof ParallelGateway);
+        assertTrue(index.getPreviousNodes(convergentGateway).contains(findNodeByIdSuffix(resultModel, "e_task1")));
+        assertTrue(index.getSucceedingNode(findNodeByIdSuffix(resultModel, "d_task1")).getId().endsWith("e_task0"));
+        assertTrue(index.getPreviousNode(BpmnElementSearcher.findEndEvent(resultModel)) instanceof ParallelGateway);
+
+        Bpmn.validateModel(resultModel);
+        Bpmn.readModelFromStream(new ByteArrayInputStream(Bpmn.convertToString(resultModel).getBytes(StandardCharsets.UTF_8)));
+        assertEquals(modelAXml, Bpmn.convertToString(modelA));
+    }
+
+    private static FlowNode findNodeByIdSuffix(BpmnModelInstance modelInstance, String idSuffix) {
+        for (FlowNode flowNode: modelInstance.getModelElementsByType(FlowNode.class)) {
+            if (flowNode.getId().endsWith(idSuffix)) {
+                return flowNode;
+            }
+        }
+        return null;
+    }
+
+    // Streams of chain models, each one serialized only when requested
+    private static Iterator<InputStream> createChainModelStreams(final int numberModels) {
+        return new Iterator<InputStream>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < numberModels;
+            }
+
+            @Override
+            public InputStream next() {
+                String xml = Bpmn.convertToString(createChainModel("m" + next++, 2));
+                return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static BpmnModelInstance createChainModel(String prefix, int numberTasks) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<bpmn:definitions xmlns:bpmn=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" targetNamespace=\"test\">");
+        xml.append("<bpmn:process id=\"").append(prefix).append("\"><bpmn:startEvent id=\"").append(prefix).append("_start\"/>");
+        String previousId = prefix + "_start";
+        for (int i = 0; i < numberTasks; i++) {
+            String taskId = prefix + "_task" + i;
+            xml.append("<bpmn:task id=\"").append(taskId).append("\"/>");
+            appendSequenceFlow(xml, previousId, taskId);
+            previousId = taskId;
+        }
+        xml.append("<bpmn:endEvent id=\"").append(prefix).append("_end\"/>");
+        appendSequenceFlow(xml, previousId, prefix + "_end");
+        xml.append("</bpmn:process></bpmn:definitions>");
+        return Bpmn.readModelFromStream(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void appendSequenceFlow(StringBuilder xml, String sourceId, String targetId) {
+        xml.append("<bpmn:sequenceFlow id=\"").append(sourceId).append("_").append(targetId)
+           .append("\" sourceRef=\"").append(sourceId).append("\" targetRef=\"").append(targetId).append("\"/>");
+    }
+
     public void testParallelProcessComposition_TwoModels () {
         BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
 
@@ -257,4 +535,48 @@ public class BpmnModelComposerTest extends TestCase
 
         assertEquals(numberNodesFromModel1 + numberNodesFromModel2 + numberNodesFromModel3 - 2, resultModel.getModelElementsByType(FlowNode.class).size());
     }
+
+    public void testParallelProcessComposition_ManyModelsConcurrently() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+
+        int numberModels = 200;
+        List<BpmnModelInstance> modelInstances = new ArrayList<BpmnModelInstance>();
+        for (int i = 0; i < numberModels; i++) {
+            modelInstances.add(createChainModel("m" + i, 2));
+        }
+        // A model starting and ending with parallel gateways adds its branches to the composed ones,
+        // and a model composed twice gets two separate branches
+        modelInstances.add(Bpmn.readModelFromStream(getClass().getClassLoader().getResourceAsStream("parallel_diagram.bpmn")));
+        modelInstances.add(modelInstances.get(1));
+        String secondModelXml = Bpmn.convertToString(modelInstances.get(1));
+
+        BpmnModelInstance resultModel = bpmnModelComposer.joinModelsInParallelConcurrently(modelInstances, new ForkJoinPool(4));
+
+        // A single pair of gateways opens and closes every branch
+        FlowGraphIndex index = FlowGraphIndex.of(resultModel);
+        FlowNode divergentGateway = index.getSucceedingNode(BpmnElementSearcher.findStartEvent(resultModel));
+        FlowNode convergentGateway = index.getPreviousNode(BpmnElementSearcher.findEndEvent(resultModel));
+        assertTrue(divergentGateway instanceof ParallelGateway);
+        assertTrue(convergentGateway instanceof ParallelGateway);
+        assertEquals(numberModels + 3, index.getSucceedingNodes(divergentGateway).size());
+        assertEquals(numberModels + 3, index.getPreviousNodes(convergentGateway).size());
+        assertEquals(2 + 2 + 2 * (numberModels + 1) + 2, resultModel.getModelElementsByType(FlowNode.class).size());
+
+        // The base model keeps its ids
+        assertEquals(divergentGateway, index.getPreviousNode(resultModel.<FlowNode>getModelElementById("m0_task0")));
+
+        Bpmn.validateModel(resultModel);
+        Bpmn.readModelFromStream(new ByteArrayInputStream(Bpmn.convertToString(resultModel).getBytes(StandardCharsets.UTF_8)));
+        assertEquals(secondModelXml, Bpmn.convertToString(modelInstances.get(1)));
+    }
+
+    public void testParallelProcessComposition_NoModelsPreservingInputs() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+        assertNull(bpmnModelComposer.joinModelsInParallelPreservingInputs(new ArrayList<BpmnModelInstance>()));
+    }
+
+    public void testParallelProcessComposition_NoModelsConcurrently() {
+        BpmnModelComposer bpmnModelComposer = new BpmnModelComposer();
+        assertNull(bpmnModelComposer.joinModelsInParallelConcurrently(new ArrayList<BpmnModelInstance>()));
+    }
 }
@@ -10,6 +10,8 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.Bpmnt;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntModelInstance;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntReplayReport;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntSnapshotStorage;
 import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.*;
 import org.prisma.processhub.bpmn.manipulation.exception.ElementNotFoundException;
 import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmn;
@@ -17,10 +19,14 @@ import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmnModelInst
 import org.prisma.processhub.bpmn.manipulation.util.BpmnElementSearcher;
 import org.prisma.processhub.bpmn.manipulation.util.BpmnFragmentHandler;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class BpmntModelInstanceImplTest {
 
@@ -1428,4 +1434,98 @@ public class BpmntModelInstanceImplTest {
     }
 
 
+    // Test cases for the log replay
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void executeOwnBpmnt_LogOutOfOrder_OperationsReplayedInExecutionOrder() {
+        BpmntModelInstance bpmntModel = tailorableSimpleModel.extend();
+        FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(bpmntModel);
+        bpmntModel.rename(firstNode, "Renamed node");
+        bpmntModel.delete(firstNode);
+
+        List<BpmntOperation> log = new ArrayList<BpmntOperation>(bpmntModel.getBpmntLog());
+        Collections.reverse(log);
+        simpleModel.setBpmntLog(log);
+        BpmntReplayReport report = simpleModel.executeOwnBpmnt();
+
+        assertEquals(3, report.getNumberOperations());
+        for (int i = 0; i < report.getNumberOperations(); i++) {
+            assertEquals(i + 1, report.getOperations().get(i).getExecutionOrder());
+            assertTrue(report.getDurationNanos(i) >= 0);
+        }
+        assertEquals(null, simpleModel.getModelElementById(firstNode.getId()));
+        assertEquals(BpmnElementSearcher.findFirstProcess(bpmntModel).getId(), BpmnElementSearcher.findFirstProcess(simpleModel).getId());
+        assertEquals(bpmntModel.getModelElementsByType(FlowNode.class).size(), simpleModel.getModelElementsByType(FlowNode.class).size());
+    }
+
+    @Test
+    public void execute_DuplicateExecutionOrder_ExceptionThrown() {
+        Rename rename1 = new Rename(BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel).getId(), "First");
+        rename1.setExecutionOrder(1);
+        Rename rename2 = new Rename(BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel).getId(), "Second");
+        rename2.setExecutionOrder(1);
+        List<BpmntOperation> operations = new ArrayList<BpmntOperation>();
+        operations.add(rename1);
+        operations.add(rename2);
+
+        exception.expect(IllegalArgumentException.class);
+        simpleModel.execute(operations);
+    }
+
+    @Test
+    public void executeOwnBpmnt_FromOrder_TailReplayedFromSnapshot() {
+        assertTailReplayedFromSnapshot(BpmntSnapshotStorage.IN_MEMORY);
+    }
+
+    @Test
+    public void executeOwnBpmnt_FromOrderCompressedSnapshots_TailReplayedFromSnapshot() {
+        assertTailReplayedFromSnapshot(BpmntSnapshotStorage.COMPRESSED);
+    }
+
+    @Test
+    public void rename_LiveEdits_NoSnapshotTaken() {
+        String firstNodeId = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel).getId();
+        simpleModel.setCheckpointInterval(1);
+        simpleModel.init(new Extend(BpmnElementSearcher.findFirstProcess(simpleModel).getId()));
+        simpleModel.rename(firstNodeId, "First 1");
+        simpleModel.rename(firstNodeId, "First 2");
+
+        assertEquals(0, simpleModel.getNumberCheckpoints());
+    }
+
+    private void assertTailReplayedFromSnapshot(BpmntSnapshotStorage storage) {
+        String processId = BpmnElementSearcher.findFirstProcess(simpleModel).getId();
+        String firstNodeId = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel).getId();
+        String lastNodeId = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel).getId();
+
+        List<BpmntOperation> log = new ArrayList<BpmntOperation>();
+        log.add(new Extend(processId));
+        log.add(new Rename(firstNodeId, "First 1"));
+        log.add(new Rename(lastNodeId, "Last 1"));
+        log.add(new Rename(firstNodeId, "First 2"));
+        for (int i = 0; i < log.size(); i++) {
+            log.get(i).setExecutionOrder(i + 1);
+        }
+
+        simpleModel.setCheckpointStorage(storage);
+        simpleModel.setCheckpointInterval(2);
+        simpleModel.setBpmntLog(log);
+        simpleModel.executeOwnBpmnt();
+        assertEquals(3, simpleModel.getNumberCheckpoints());
+
+        // Change the last operation and replay only from it
+        Rename changedRename = new Rename(firstNodeId, "First 3");
+        changedRename.setExecutionOrder(4);
+        log.set(3, changedRename);
+        BpmntReplayReport report = simpleModel.executeOwnBpmnt(4);
+
+        // The snapshot taken after the second operation is the nearest one
+        assertEquals(2, report.getNumberOperations());
+        assertEquals("First 3", ((FlowElement) simpleModel.getModelElementById(firstNodeId)).getName());
+        assertEquals("Last 1", ((FlowElement) simpleModel.getModelElementById(lastNodeId)).getName());
+        assertEquals("BPMNt_" + processId, BpmnElementSearcher.findFirstProcess(simpleModel).getId());
+        Bpmnt.validateModel(simpleModel);
+    }
+
 }
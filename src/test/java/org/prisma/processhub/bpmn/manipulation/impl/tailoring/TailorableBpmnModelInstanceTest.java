@@ -355,6 +355,54 @@ public class TailorableBpmnModelInstanceTest {
 
     }
 
+    @Test
+    public void delete_InBatch_ValidationDeferredUntilCommit() {
+        FlowNode flowNodeToDelete = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode otherFlowNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+
+        simpleModel.beginBatch();
+        assertTrue(simpleModel.isInBatch());
+
+        // The model is left invalid on purpose, delete must not validate it while the batch is open
+        simpleModel.modify(otherFlowNode, "id", "1 invalid id");
+        simpleModel.delete(flowNodeToDelete);
+        assertNull(simpleModel.getModelElementById(flowNodeToDelete.getId()));
+
+        exception.expect(ModelValidationException.class);
+        try {
+            simpleModel.commitBatch();
+        }
+        finally {
+            assertFalse(simpleModel.isInBatch());
+        }
+    }
+
+    @Test
+    public void delete_ValidationSkipped_InvalidModelAccepted() {
+        FlowNode flowNodeToDelete = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode otherFlowNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+
+        simpleModel.modify(otherFlowNode, "id", "1 invalid id");
+        simpleModel.delete(flowNodeToDelete, false);
+
+        assertNull(simpleModel.getModelElementById(flowNodeToDelete.getId()));
+        assertFalse(simpleModel.isInBatch());
+    }
+
+    @Test
+    public void delete_ValidationSkippedInBatch_InvalidModelAcceptedOnCommit() {
+        FlowNode flowNodeToDelete = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode otherFlowNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+
+        simpleModel.beginBatch();
+        simpleModel.modify(otherFlowNode, "id", "1 invalid id");
+        simpleModel.delete(flowNodeToDelete, false);
+        simpleModel.commitBatch();
+
+        assertNull(simpleModel.getModelElementById(flowNodeToDelete.getId()));
+        assertFalse(simpleModel.isInBatch());
+    }
+
     @Test
     public void testReplaceNodeWithNode() {
         System.out.println("Testing replace (node for node)");
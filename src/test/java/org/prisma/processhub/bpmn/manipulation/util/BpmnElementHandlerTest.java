@@ -0,0 +1,391 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.*;
+import org.camunda.bpm.model.bpmn.instance.Process;
+import org.camunda.bpm.model.bpmn.instance.bpmndi.BpmnShape;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.BpmntModelInstance;
+import org.prisma.processhub.bpmn.manipulation.bpmnt.operation.BpmntOperation;
+import org.prisma.processhub.bpmn.manipulation.exception.ElementNotFoundException;
+import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmn;
+import org.prisma.processhub.bpmn.manipulation.tailoring.TailorableBpmnModelInstance;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class BpmnElementHandlerTest {
+
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    private TailorableBpmnModelInstance simpleModel;
+    private TailorableBpmnModelInstance parallelModel;
+
+    // Load diagrams before each test
+    @Before
+    public void loadDiagrams() {
+        simpleModel = TailorableBpmn.readModelFromStream(BpmnElementHandlerTest.class.getClassLoader().getResourceAsStream("simple_diagram.bpmn"));
+        parallelModel = TailorableBpmn.readModelFromStream(BpmnElementHandlerTest.class.getClassLoader().getResourceAsStream("parallel_diagram.bpmn"));
+    }
+
+    // Tests naming convention: methodName_StateUnderTest_ExpectedBehavior
+
+    // Test cases for the 'copyModelInstance' method
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void copyModelInstance_TailorableModel_IdenticalIndependentCopy() {
+        TailorableBpmnModelInstance copiedModel = BpmnElementHandler.copyModelInstance(parallelModel);
+
+        // Every element must be resolvable by id in the copy
+        for (FlowElement fe: parallelModel.getModelElementsByType(FlowElement.class)) {
+            FlowElement copiedElement = copiedModel.getModelElementById(fe.getId());
+            assertNotNull(copiedElement);
+            assertEquals(fe.getElementType(), copiedElement.getElementType());
+        }
+        assertEquals(TailorableBpmn.convertToString(parallelModel), TailorableBpmn.convertToString(copiedModel));
+
+        // Changes on the copy must not affect the original model
+        FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(copiedModel);
+        copiedModel.suppress(lastNode);
+        assertNull(copiedModel.getModelElementById(lastNode.getId()));
+        assertNotNull(parallelModel.getModelElementById(lastNode.getId()));
+    }
+
+    @Test
+    public void copyModelInstance_BpmnModel_ValidCopy() {
+        BpmnModelInstance copiedModel = BpmnElementHandler.copyModelInstance((BpmnModelInstance) simpleModel);
+        Bpmn.validateModel(copiedModel);
+        assertEquals(simpleModel.getModelElementsByType(FlowElement.class).size(),
+                copiedModel.getModelElementsByType(FlowElement.class).size());
+    }
+
+    @Test
+    public void copyModelInstance_BpmntModel_LogCopied() {
+        BpmntModelInstance bpmntModel = simpleModel.extend();
+        bpmntModel.suppress(BpmnElementSearcher.findFlowNodeAfterStartEvent(bpmntModel).getOutgoing().iterator().next());
+
+        BpmntModelInstance copiedModel = BpmnElementHandler.copyModelInstance(bpmntModel);
+        assertNotSame(bpmntModel.getBpmntLog(), copiedModel.getBpmntLog());
+        assertEquals(bpmntModel.getBpmntLog().size(), copiedModel.getBpmntLog().size());
+        for (int i = 0; i < bpmntModel.getBpmntLog().size(); i++) {
+            BpmntOperation operation = bpmntModel.getBpmntLog().get(i);
+            BpmntOperation copiedOperation = copiedModel.getBpmntLog().get(i);
+            assertNotSame(operation, copiedOperation);
+            assertEquals(operation.getClass(), copiedOperation.getClass());
+            assertEquals(operation.getExecutionOrder(), copiedOperation.getExecutionOrder());
+            assertEquals(operation.getSignature(), copiedOperation.getSignature());
+        }
+
+        // Renumbering the operations of the copy leaves the original log alone
+        copiedModel.getBpmntLog().get(1).setExecutionOrder(7);
+        assertEquals(2, bpmntModel.getBpmntLog().get(1).getExecutionOrder());
+    }
+
+
+    // Test cases for the BpmnElementFactory
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void newParallelGateway_InsertedBetweenNodes_GatewayAddedToModel() {
+        // Enough elements to go through several scratch models
+        Set<String> gatewayIds = new HashSet<String>();
+        for (int i = 0; i < 3000; i++) {
+            gatewayIds.add(BpmnElementFactory.newParallelGateway().getId());
+        }
+        assertEquals(3000, gatewayIds.size());
+
+        FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+        ParallelGateway gateway = BpmnElementFactory.newParallelGateway();
+        BpmnElementHandler.insertFlowNodeBetweenFlowNodes(simpleModel, gateway, firstNode.getId(), lastNode.getId());
+
+        FlowNode addedGateway = simpleModel.getModelElementById(gateway.getId());
+        assertTrue(addedGateway instanceof ParallelGateway);
+        assertEquals(addedGateway, FlowGraphIndex.of(simpleModel).getSucceedingNode(firstNode));
+        assertIndexConsistent(simpleModel, FlowGraphIndex.of(simpleModel));
+        Bpmn.validateModel(simpleModel);
+    }
+
+    @Test
+    public void split_NewSubProcessModel_CopiedIntoSubProcessAndLeftUntouched() {
+        TailorableBpmnModelInstance newSubProcessModel = TailorableBpmn.readModelFromStream(BpmnElementHandlerTest.class.getClassLoader().getResourceAsStream("simple_diagram2.bpmn"));
+        String newSubProcessModelXml = Bpmn.convertToString(newSubProcessModel);
+        int numberFlowNodes = newSubProcessModel.getModelElementsByType(FlowNode.class).size();
+
+        Task task = (Task) BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        BpmnElementHandler.split(simpleModel, task, newSubProcessModel);
+
+        SubProcess subProcess = simpleModel.getModelElementById(task.getId());
+        assertEquals(numberFlowNodes, subProcess.getChildElementsByType(FlowNode.class).size());
+        assertEquals(newSubProcessModelXml, Bpmn.convertToString(newSubProcessModel));
+    }
+
+    // Test cases for the generated ids
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void generateUniqueIds_RenamedTwice_ElementsAndReferencesRenamed() {
+        String taskId = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel).getId();
+        BpmnElementHandler.generateUniqueIds(simpleModel);
+        BpmnElementHandler.generateUniqueIds(simpleModel);
+
+        // Generated prefixes are replaced rather than stacked
+        FlowNode task = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        assertTrue(task.getId().startsWith("fe-"));
+        assertTrue(task.getId().endsWith("-" + taskId));
+        assertEquals(1, task.getId().split("-").length - 2);
+        assertNull(simpleModel.getModelElementById(taskId));
+
+        // Sequence flow and diagram references follow the new ids
+        assertIndexConsistent(simpleModel, FlowGraphIndex.of(simpleModel));
+        Bpmn.validateModel(simpleModel);
+        TailorableBpmnModelInstance parsedModel = TailorableBpmn.readModelFromStream(
+                new ByteArrayInputStream(TailorableBpmn.convertToString(simpleModel).getBytes(StandardCharsets.UTF_8)));
+        for (BpmnShape shape: parsedModel.getModelElementsByType(BpmnShape.class)) {
+            assertNotNull(shape.getBpmnElement());
+        }
+    }
+
+    @Test
+    public void idAllocator_SeveralThreads_UniqueTokens() throws Exception {
+        for (final IdAllocator allocator: Arrays.asList(IdAllocator.atomic(), IdAllocator.striped())) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        List<String> tokens = new ArrayList<String>();
+                        for (int j = 0; j < 1000; j++) {
+                            tokens.add(allocator.nextToken());
+                        }
+                        return tokens;
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            Set<String> tokens = new HashSet<String>();
+            for (Future<List<String>> result: results) {
+                tokens.addAll(result.get());
+            }
+            assertEquals(4000, tokens.size());
+        }
+
+        // Seeded allocators are reproducible
+        IdAllocator allocator1 = IdAllocator.seeded(42);
+        IdAllocator allocator2 = IdAllocator.seeded(42);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(allocator1.nextPrefix(), allocator2.nextPrefix());
+        }
+        assertNotEquals(IdAllocator.seeded(42).nextToken(), IdAllocator.seeded(43).nextToken());
+    }
+
+    @Test
+    public void idAllocator_SeededDefault_ReproducibleElementIds() {
+        try {
+            List<String> ids = new ArrayList<String>();
+            for (int i = 0; i < 2; i++) {
+                IdAllocator.setDefault(IdAllocator.seeded(7));
+                TailorableBpmnModelInstance modelInstance = BpmnElementHandler.copyModelInstance(simpleModel);
+                FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(modelInstance);
+                FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(modelInstance);
+                ParallelGateway gateway = BpmnElementFactory.newParallelGateway();
+                BpmnElementHandler.insertFlowNodeBetweenFlowNodes(modelInstance, gateway, firstNode.getId(), lastNode.getId());
+
+                // The gateway and the sequence flows connecting it get the same ids again
+                StringBuilder modelIds = new StringBuilder(gateway.getId());
+                for (SequenceFlow sequenceFlow: modelInstance.getModelElementsByType(SequenceFlow.class)) {
+                    modelIds.append(' ').append(sequenceFlow.getId());
+                }
+                ids.add(modelIds.toString());
+            }
+            assertEquals(ids.get(0), ids.get(1));
+            assertTrue(ids.get(0).startsWith("parallelGateway_seed7_"));
+        }
+        finally {
+            IdAllocator.setDefault(IdAllocator.atomic());
+        }
+    }
+
+    // Test cases for the FlowGraphIndex maintained by the operators
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void flowGraphIndex_AfterOperations_ConsistentWithModel() {
+        FlowGraphIndex index = FlowGraphIndex.of(simpleModel);
+        long version = index.getVersion();
+
+        FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+        simpleModel.parallelize(firstNode, lastNode);
+        simpleModel.insert(firstNode, null, loadFirstTaskOfSimpleModel2());
+        simpleModel.delete(lastNode);
+
+        assertTrue(index.getVersion() > version);
+        assertSame(index, FlowGraphIndex.of(simpleModel));
+        assertIndexConsistent(simpleModel, index);
+    }
+
+    @Test
+    public void flowGraphIndex_FlowRetargetedThroughCamundaApi_IndexResynchronized() {
+        FlowGraphIndex index = FlowGraphIndex.of(simpleModel);
+        StartEvent startEvent = BpmnElementSearcher.findStartEvent(simpleModel);
+        FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+
+        SequenceFlow sequenceFlow = startEvent.getOutgoing().iterator().next();
+        sequenceFlow.setTarget(lastNode);
+
+        assertEquals(lastNode, index.getSucceedingNode(startEvent));
+        assertTrue(index.getPreviousNodes(firstNode).isEmpty());
+    }
+
+    // Test cases for the scope lookups of BpmnElementSearcher
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void findStartEvent_AfterSplit_EventsOfNewSubProcessFound() {
+        // Warm up the scope index before the model changes
+        StartEvent processStartEvent = BpmnElementSearcher.findStartEvent(simpleModel);
+        EndEvent processEndEvent = BpmnElementSearcher.findEndEvent(simpleModel);
+
+        Task task = (Task) BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        simpleModel.split(task, TailorableBpmn.readModelFromStream(BpmnElementHandlerTest.class.getClassLoader().getResourceAsStream("simple_diagram2.bpmn")));
+        SubProcess subProcess = simpleModel.getModelElementById(task.getId());
+
+        StartEvent subProcessStartEvent = BpmnElementSearcher.findStartEvent(subProcess);
+        EndEvent subProcessEndEvent = BpmnElementSearcher.findEndEvent(subProcess);
+        assertEquals(subProcess, subProcessStartEvent.getParentElement());
+        assertEquals(subProcess, subProcessEndEvent.getParentElement());
+        assertEquals(subProcessStartEvent.getSucceedingNodes().singleResult(), BpmnElementSearcher.findFlowNodeAfterStartEvent(subProcess));
+        assertEquals(subProcessEndEvent.getPreviousNodes().singleResult(), BpmnElementSearcher.findFlowNodeBeforeEndEvent(subProcess));
+
+        assertSame(processStartEvent, BpmnElementSearcher.findStartEvent(simpleModel));
+        assertSame(processEndEvent, BpmnElementSearcher.findEndEvent(simpleModel));
+        assertEquals(subProcess, BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel));
+    }
+
+    @Test
+    public void findEndEvent_EndEventSuppressed_ThrowsElementNotFoundException() {
+        Process process = BpmnElementSearcher.findFirstProcess(simpleModel);
+        simpleModel.suppress(BpmnElementSearcher.findEndEvent(process));
+
+        exception.expect(ElementNotFoundException.class);
+        BpmnElementSearcher.findEndEvent(process);
+    }
+
+    @Test
+    public void findStartEvent_StartEventAddedThroughCamundaApi_NewStartEventFound() {
+        Task task = (Task) BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        simpleModel.split(task, TailorableBpmn.readModelFromStream(BpmnElementHandlerTest.class.getClassLoader().getResourceAsStream("simple_diagram2.bpmn")));
+        SubProcess subProcess = simpleModel.getModelElementById(task.getId());
+        simpleModel.suppress(BpmnElementSearcher.findStartEvent(subProcess));
+        try {
+            BpmnElementSearcher.findStartEvent(subProcess);
+            fail("The subprocess has no start event left");
+        }
+        catch (ElementNotFoundException e) {
+            // The scope is now cached without start event
+        }
+
+        StartEvent startEvent = simpleModel.newInstance(StartEvent.class);
+        startEvent.setId("NewStartEvent");
+        subProcess.addChildElement(startEvent);
+
+        assertEquals(startEvent, BpmnElementSearcher.findStartEvent(subProcess));
+    }
+
+    @Test
+    public void findFirstProcess_ModelWithoutDefinitions_ThrowsElementNotFoundException() {
+        exception.expect(ElementNotFoundException.class);
+        exception.expectMessage("No Process found in BpmnModelInstance");
+        BpmnElementSearcher.findFirstProcess(Bpmn.createEmptyModel());
+    }
+
+    // Test cases for the ModelFingerprint
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void modelFingerprint_AfterOperations_SameAsRecomputed() {
+        long fingerprint = ModelFingerprint.of(simpleModel);
+
+        FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        FlowNode lastNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(simpleModel);
+        simpleModel.parallelize(firstNode, lastNode);
+        simpleModel.insert(firstNode, null, loadFirstTaskOfSimpleModel2());
+        simpleModel.rename(lastNode.getId(), "Renamed");
+        simpleModel.delete(firstNode);
+
+        // A copy has no fingerprint yet, so it's computed from scratch
+        assertNotEquals(fingerprint, ModelFingerprint.of(simpleModel));
+        assertEquals(ModelFingerprint.of(BpmnElementHandler.copyModelInstance(simpleModel)), ModelFingerprint.of(simpleModel));
+    }
+
+    @Test
+    public void modelFingerprint_RenamedThroughCamundaApi_SameAsRecomputed() {
+        long fingerprint = ModelFingerprint.of(simpleModel);
+
+        // Neither the flow graph nor the scopes change, only an attribute the fingerprint covers
+        FlowNode firstNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel);
+        firstNode.setName("Renamed");
+
+        assertNotEquals(fingerprint, ModelFingerprint.of(simpleModel));
+        assertEquals(ModelFingerprint.of(BpmnElementHandler.copyModelInstance(simpleModel)), ModelFingerprint.of(simpleModel));
+    }
+
+    @Test
+    public void haveSameStructure_ReorderedAndRenamedElements_OnlyRenamingDetected() {
+        TailorableBpmnModelInstance copiedModel = BpmnElementHandler.copyModelInstance(parallelModel);
+
+        // Move the start event to the end of the process in the XML
+        StartEvent startEvent = BpmnElementSearcher.findStartEvent(copiedModel);
+        Document document = (Document) copiedModel.getDocument().getDomSource().getNode();
+        Node startEventNode = document.getElementsByTagNameNS("*", "startEvent").item(0);
+        startEventNode.getParentNode().appendChild(startEventNode);
+        FlowGraphIndex.invalidate(copiedModel);
+        assertNotEquals(TailorableBpmn.convertToString(parallelModel), TailorableBpmn.convertToString(copiedModel));
+        assertTrue(ModelFingerprint.haveSameStructure(parallelModel, copiedModel));
+
+        copiedModel.rename(startEvent.getId(), "Renamed");
+        assertFalse(ModelFingerprint.haveSameStructure(parallelModel, copiedModel));
+    }
+
+    private FlowNode loadFirstTaskOfSimpleModel2() {
+        TailorableBpmnModelInstance simpleModel2 = TailorableBpmn.readModelFromStream(BpmnElementHandlerTest.class.getClassLoader().getResourceAsStream("simple_diagram2.bpmn"));
+        return BpmnElementSearcher.findFlowNodeAfterStartEvent(simpleModel2);
+    }
+
+    // Compare the neighbours kept by the index with the ones computed by the Camunda API
+    private static void assertIndexConsistent(BpmnModelInstance modelInstance, FlowGraphIndex index) {
+        Collection<FlowNode> flowNodes = modelInstance.getModelElementsByType(FlowNode.class);
+        assertEquals(flowNodes.size(), index.getNodeCount());
+        assertEquals(modelInstance.getModelElementsByType(SequenceFlow.class).size(), index.getFlowCount());
+        for (FlowNode flowNode: flowNodes) {
+            assertEquals(new HashSet<FlowNode>(flowNode.getPreviousNodes().list()),
+                    new HashSet<FlowNode>(index.getPreviousNodes(flowNode)));
+            assertEquals(new HashSet<FlowNode>(flowNode.getSucceedingNodes().list()),
+                    new HashSet<FlowNode>(index.getSucceedingNodes(flowNode)));
+        }
+    }
+}
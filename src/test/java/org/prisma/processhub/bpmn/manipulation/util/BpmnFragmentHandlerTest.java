@@ -0,0 +1,142 @@
+package org.prisma.processhub.bpmn.manipulation.util;
+
+import org.camunda.bpm.model.bpmn.Bpmn;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.FlowNode;
+import org.camunda.bpm.model.bpmn.instance.UserTask;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.prisma.processhub.bpmn.manipulation.exception.IllegalFragmentException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BpmnFragmentHandlerTest {
+
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    private BpmnModelInstance parallelModel;
+
+    // Load diagrams before each test
+    @Before
+    public void loadDiagrams() {
+        parallelModel = Bpmn.readModelFromStream(BpmnFragmentHandlerTest.class.getClassLoader().getResourceAsStream("parallel_diagram.bpmn"));
+    }
+
+    // Tests naming convention: methodName_StateUnderTest_ExpectedBehavior
+
+    // Test cases for the 'mapProcessFragment' method
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void mapProcessFragment_LongSequentialChain_AllNodesMappedInOrder() {
+        BpmnModelInstance chainModel = createChainModel(100000);
+
+        FlowNode startingNode = chainModel.getModelElementById("task0");
+        FlowNode endingNode = chainModel.getModelElementById("task99999");
+        List<FlowNode> fragment = new ArrayList<FlowNode>(BpmnFragmentHandler.mapProcessFragment(startingNode, endingNode));
+
+        assertEquals(100000, fragment.size());
+        for (int i = 0; i < fragment.size(); i++) {
+            assertEquals("task" + i, fragment.get(i).getId());
+        }
+    }
+
+    @Test
+    public void mapProcessFragment_WholeParallelProcess_EachNodeMappedOnce() {
+        FlowNode startingNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(parallelModel);
+        FlowNode endingNode = BpmnElementSearcher.findFlowNodeBeforeEndEvent(parallelModel);
+        Collection<FlowNode> fragment = BpmnFragmentHandler.mapProcessFragment(startingNode, endingNode);
+
+        // Every flow node but the start and end events is part of the fragment
+        assertEquals(parallelModel.getModelElementsByType(FlowNode.class).size() - 2, fragment.size());
+        assertEquals(startingNode, fragment.iterator().next());
+    }
+
+    @Test
+    public void mapProcessFragment_FragmentReachesEndEvent_ThrowsIllegalFragmentException() {
+        FlowNode startingNode = BpmnElementSearcher.findFlowNodeAfterStartEvent(parallelModel);
+        FlowNode endingNode = parallelModel.newInstance(UserTask.class);
+        endingNode.setId("notInModel");
+
+        exception.expect(IllegalFragmentException.class);
+        BpmnFragmentHandler.mapProcessFragment(startingNode, endingNode);
+    }
+
+    // Test cases for the 'validateProcessFragment' method
+    /* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+    @Test
+    public void validateProcessFragment_WholeParallelBlock_Valid() {
+        FlowNode divergentGateway = parallelModel.getModelElementById("ParallelGateway_1c6p3yf");
+        FlowNode convergentGateway = parallelModel.getModelElementById("ParallelGateway_07aj32a");
+        BpmnFragmentHandler.validateProcessFragment(divergentGateway, convergentGateway);
+
+        FlowNode parallelTask = parallelModel.getModelElementById("Task_1liqzit");
+        BpmnFragmentHandler.validateProcessFragment(parallelTask, parallelTask);
+    }
+
+    @Test
+    public void validateProcessFragment_FragmentEndsInsideBranch_ThrowsIllegalFragmentException() {
+        FlowNode divergentGateway = parallelModel.getModelElementById("ParallelGateway_1c6p3yf");
+        FlowNode parallelTask = parallelModel.getModelElementById("Task_1liqzit");
+
+        exception.expect(IllegalFragmentException.class);
+        BpmnFragmentHandler.validateProcessFragment(divergentGateway, parallelTask);
+    }
+
+    @Test
+    public void validateProcessFragment_FragmentStartsInsideBranch_ThrowsIllegalFragmentException() {
+        FlowNode parallelTask = parallelModel.getModelElementById("Task_0dae65c");
+        FlowNode convergentGateway = parallelModel.getModelElementById("ParallelGateway_07aj32a");
+
+        exception.expect(IllegalFragmentException.class);
+        BpmnFragmentHandler.validateProcessFragment(parallelTask, convergentGateway);
+    }
+
+    @Test
+    public void delete_DivergentGatewayAlone_ThrowsIllegalFragmentException() {
+        FlowNode divergentGateway = parallelModel.getModelElementById("ParallelGateway_1c6p3yf");
+
+        exception.expect(IllegalFragmentException.class);
+        BpmnElementHandler.delete(parallelModel, divergentGateway, divergentGateway);
+    }
+
+    @Test
+    public void delete_ConvergentGatewayAlone_ThrowsIllegalFragmentException() {
+        FlowNode convergentGateway = parallelModel.getModelElementById("ParallelGateway_07aj32a");
+
+        exception.expect(IllegalFragmentException.class);
+        BpmnElementHandler.delete(parallelModel, convergentGateway, convergentGateway);
+    }
+
+    // Process with a start event, the given number of sequential tasks and an end event
+    private static BpmnModelInstance createChainModel(int numberTasks) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" targetNamespace=\"test\">");
+        xml.append("<process id=\"chain\"><startEvent id=\"start\"/>");
+        String previousId = "start";
+        for (int i = 0; i < numberTasks; i++) {
+            xml.append("<task id=\"task").append(i).append("\"/>");
+            appendSequenceFlow(xml, previousId, "task" + i);
+            previousId = "task" + i;
+        }
+        xml.append("<endEvent id=\"end\"/>");
+        appendSequenceFlow(xml, previousId, "end");
+        xml.append("</process></definitions>");
+        return Bpmn.readModelFromStream(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void appendSequenceFlow(StringBuilder xml, String sourceId, String targetId) {
+        xml.append("<sequenceFlow id=\"").append(sourceId).append("_").append(targetId)
+           .append("\" sourceRef=\"").append(sourceId).append("\" targetRef=\"").append(targetId).append("\"/>");
+    }
+}